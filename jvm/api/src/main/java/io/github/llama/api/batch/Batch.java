@@ -20,6 +20,35 @@ public interface Batch extends AutoCloseable {
      */
     Batch addTokens(int[] tokenIds);
 
+    /**
+     * Adds a token at an explicit position to one or more sequences.
+     * <p>
+     * Tokens added with {@link #addToken(int)} or {@link #addTokens(int[])} continue the default sequence
+     * and only the last one produces logits. This method gives full control instead, so that several
+     * independent sequences can share one evaluation and logits are only computed where they are needed.
+     *
+     * @param tokenId Token ID
+     * @param position Position of the token in its sequences
+     * @param seqIds IDs of the sequences the token belongs to
+     * @param wantLogits Whether logits should be computed for the token
+     * @return This batch for chaining
+     */
+    Batch add(int tokenId, int position, int[] seqIds, boolean wantLogits);
+
+    /**
+     * Adds a token at an explicit position to a single sequence.
+     *
+     * @param tokenId Token ID
+     * @param position Position of the token in its sequence
+     * @param seqId ID of the sequence the token belongs to
+     * @param wantLogits Whether logits should be computed for the token
+     * @return This batch for chaining
+     * @see #add(int, int, int[], boolean)
+     */
+    default Batch add(int tokenId, int position, int seqId, boolean wantLogits) {
+        return add(tokenId, position, new int[]{seqId}, wantLogits);
+    }
+
     /**
      * Gets the number of tokens in the batch.
      *
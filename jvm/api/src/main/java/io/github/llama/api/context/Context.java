@@ -6,6 +6,9 @@ import io.github.llama.api.batch.BatchResult;
 import io.github.llama.api.sampling.Sampler;
 import io.github.llama.api.sampling.SamplerParams;
 
+import java.nio.FloatBuffer;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface representing a context for inference.
  */
@@ -33,6 +36,24 @@ public interface Context extends AutoCloseable {
      */
     BatchResult process(Batch batch);
 
+    /**
+     * Processes a batch of tokens asynchronously.
+     * Batches submitted to the same context are processed in submission order. The batch must not be
+     * modified until the returned future completes.
+     * <p>
+     * The default implementation processes the batch on the calling thread.
+     *
+     * @param batch The batch to process
+     * @return Future completed with the result of processing the batch
+     */
+    default CompletableFuture<BatchResult> processAsync(Batch batch) {
+        try {
+            return CompletableFuture.completedFuture(process(batch));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Gets the logits from the last processed batch.
      *
@@ -40,6 +61,41 @@ public interface Context extends AutoCloseable {
      */
     float[] getLogits();
 
+    /**
+     * Gets a read-only view over the logits from the last processed batch.
+     * Unlike {@link #getLogits()}, implementations may expose the logits in place without copying them.
+     * The view is only valid until the next call to {@link #process(Batch)}.
+     *
+     * @return Read-only buffer of logits
+     */
+    default FloatBuffer getLogitsView() {
+        return FloatBuffer.wrap(getLogits()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets the KV cache of this context.
+     * <p>
+     * The default implementation throws {@link UnsupportedOperationException}.
+     *
+     * @return The KV cache
+     * @throws UnsupportedOperationException if the context does not expose its KV cache
+     */
+    default KvCache getKvCache() {
+        throw new UnsupportedOperationException("KV cache operations are not supported by this context");
+    }
+
+    /**
+     * Gets the sequence state of this context, to save and restore single sequences.
+     * <p>
+     * The default implementation throws {@link UnsupportedOperationException}.
+     *
+     * @return The sequence state
+     * @throws UnsupportedOperationException if the context cannot save and restore sequences
+     */
+    default SessionState getSessionState() {
+        throw new UnsupportedOperationException("Sequence state is not supported by this context");
+    }
+
     /**
      * Creates a sampler for generating tokens.
      *
@@ -1,5 +1,8 @@
 package io.github.llama.api.context;
 
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
 /**
  * Class representing parameters for context creation.
  */
@@ -8,6 +11,9 @@ public class ContextParams {
     private int batchSize = 512;
     private int threadCount = 4;
     private boolean logitsAll = false;
+    private int maxSequences = 1;
+    private boolean dedicatedNativeThread = false;
+    private Executor asyncExecutor = null;
 
     /**
      * Gets the context size.
@@ -81,6 +87,102 @@ public class ContextParams {
         this.logitsAll = logitsAll;
     }
 
+    /**
+     * Gets the maximum number of sequences that can share the context.
+     *
+     * @return Maximum number of sequences
+     */
+    public int getMaxSequences() {
+        return maxSequences;
+    }
+
+    /**
+     * Sets the maximum number of sequences that can share the context.
+     *
+     * @param maxSequences Maximum number of sequences
+     */
+    public void setMaxSequences(int maxSequences) {
+        this.maxSequences = maxSequences;
+    }
+
+    /**
+     * Gets whether native calls of the context run on a dedicated platform thread.
+     * Callers, including virtual threads, then wait for the result without pinning their carrier thread.
+     *
+     * @return Whether native calls run on a dedicated thread
+     */
+    public boolean isDedicatedNativeThread() {
+        return dedicatedNativeThread;
+    }
+
+    /**
+     * Sets whether native calls of the context run on a dedicated platform thread.
+     *
+     * @param dedicatedNativeThread Whether native calls run on a dedicated thread
+     */
+    public void setDedicatedNativeThread(boolean dedicatedNativeThread) {
+        this.dedicatedNativeThread = dedicatedNativeThread;
+    }
+
+    /**
+     * Gets the executor that runs asynchronous operations of the context.
+     *
+     * @return Executor for asynchronous operations, or null to use the implementation's default
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Sets the executor that runs asynchronous operations of the context.
+     *
+     * @param asyncExecutor Executor for asynchronous operations, or null to use the implementation's default
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Creates a copy of these parameters.
+     *
+     * @return A copy of these parameters
+     */
+    public ContextParams copy() {
+        ContextParams copy = new ContextParams();
+        copy.setContextSize(contextSize);
+        copy.setBatchSize(batchSize);
+        copy.setThreadCount(threadCount);
+        copy.setLogitsAll(logitsAll);
+        copy.setMaxSequences(maxSequences);
+        copy.setDedicatedNativeThread(dedicatedNativeThread);
+        copy.setAsyncExecutor(asyncExecutor);
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ContextParams)) {
+            return false;
+        }
+        ContextParams other = (ContextParams) o;
+        return contextSize == other.contextSize
+                && batchSize == other.batchSize
+                && threadCount == other.threadCount
+                && logitsAll == other.logitsAll
+                && maxSequences == other.maxSequences
+                && dedicatedNativeThread == other.dedicatedNativeThread
+                && asyncExecutor == other.asyncExecutor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(contextSize, batchSize, threadCount, logitsAll, maxSequences, dedicatedNativeThread,
+                System.identityHashCode(asyncExecutor));
+    }
+
     /**
      * Creates a new builder for ContextParams.
      *
@@ -140,6 +242,39 @@ public class ContextParams {
             return this;
         }
 
+        /**
+         * Sets the maximum number of sequences that can share the context.
+         *
+         * @param maxSequences Maximum number of sequences
+         * @return This builder for chaining
+         */
+        public Builder maxSequences(int maxSequences) {
+            params.setMaxSequences(maxSequences);
+            return this;
+        }
+
+        /**
+         * Sets whether native calls of the context run on a dedicated platform thread.
+         *
+         * @param dedicatedNativeThread Whether native calls run on a dedicated thread
+         * @return This builder for chaining
+         */
+        public Builder dedicatedNativeThread(boolean dedicatedNativeThread) {
+            params.setDedicatedNativeThread(dedicatedNativeThread);
+            return this;
+        }
+
+        /**
+         * Sets the executor that runs asynchronous operations of the context.
+         *
+         * @param asyncExecutor Executor for asynchronous operations
+         * @return This builder for chaining
+         */
+        public Builder asyncExecutor(Executor asyncExecutor) {
+            params.setAsyncExecutor(asyncExecutor);
+            return this;
+        }
+
         /**
          * Builds the ContextParams.
          *
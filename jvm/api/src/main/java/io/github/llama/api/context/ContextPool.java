@@ -0,0 +1,476 @@
+package io.github.llama.api.context;
+
+import io.github.llama.api.LLM;
+import io.github.llama.api.batch.Batch;
+import io.github.llama.api.batch.BatchResult;
+import io.github.llama.api.sampling.Sampler;
+import io.github.llama.api.sampling.SamplerParams;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of warm contexts of a model, kept per {@link ContextParams}.
+ * <p>
+ * Creating a context allocates its KV cache and compute buffers, which is slow and takes a lot of memory.
+ * The pool keeps returned contexts instead of closing them, and clears their KV cache so the next borrower
+ * starts from an empty context. Contexts borrowed from the pool are returned by closing them.
+ * <p>
+ * At most a fixed number of contexts exist per set of parameters; borrowers wait for one to be returned,
+ * up to a timeout. Contexts that stay idle longer than a maximum idle time are closed by
+ * {@link #evictIdle()}, which runs whenever a context is borrowed or returned and can also be scheduled by
+ * the owner of the pool. Instances are thread-safe.
+ */
+public class ContextPool implements AutoCloseable {
+
+    private final LLM model;
+    private final int maxContexts;
+    private final long maxIdleNanos;
+    private final Map<ContextParams, Pool> pools = new HashMap<>();
+    private volatile boolean closed = false;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Contexts of one set of parameters.
+     */
+    private static final class Pool {
+        private final ContextParams params;
+        private final Semaphore permits;
+        // Idle contexts, the least recently returned first
+        private final ArrayDeque<IdleContext> idle = new ArrayDeque<>();
+        private int borrowed = 0;
+
+        private Pool(ContextParams params, int maxContexts) {
+            this.params = params;
+            this.permits = new Semaphore(maxContexts, true);
+        }
+    }
+
+    /**
+     * A context waiting in the pool.
+     */
+    private static final class IdleContext {
+        private final Context context;
+        private final long idleSince;
+
+        private IdleContext(Context context, long idleSince) {
+            this.context = context;
+            this.idleSince = idleSince;
+        }
+    }
+
+    /**
+     * Creates a new context pool.
+     *
+     * @param model The model to create contexts with
+     * @param maxContexts Maximum number of contexts per set of parameters
+     * @param maxIdle Time after which an idle context is closed
+     * @param unit Unit of the idle time
+     */
+    public ContextPool(LLM model, int maxContexts, long maxIdle, TimeUnit unit) {
+        if (model == null) {
+            throw new IllegalArgumentException("Model cannot be null");
+        }
+        if (maxContexts <= 0) {
+            throw new IllegalArgumentException("Maximum number of contexts must be positive");
+        }
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("Maximum idle time cannot be negative");
+        }
+        this.model = model;
+        this.maxContexts = maxContexts;
+        this.maxIdleNanos = unit.toNanos(maxIdle);
+    }
+
+    /**
+     * Creates idle contexts ahead of time, so that the first borrowers do not wait for them to be created.
+     *
+     * @param params Context parameters
+     * @param count Number of contexts to have ready, at most the maximum number of contexts
+     * @return Number of contexts created
+     */
+    public int prewarm(ContextParams params, int count) {
+        Pool pool = pool(params);
+        int created = 0;
+        while (pool.permits.tryAcquire()) {
+            try {
+                synchronized (pool) {
+                    if (closed || pool.idle.size() + pool.borrowed >= Math.min(count, maxContexts)) {
+                        break;
+                    }
+                    // Count the context being created, so that concurrent calls do not create too many
+                    pool.borrowed++;
+                }
+                Context context = null;
+                try {
+                    context = model.createContext(pool.params.copy());
+                    createdCount.incrementAndGet();
+                    created++;
+                } finally {
+                    boolean kept;
+                    synchronized (pool) {
+                        pool.borrowed--;
+                        // A pool closed in the meantime no longer takes idle contexts
+                        kept = context != null && !closed;
+                        if (kept) {
+                            pool.idle.addLast(new IdleContext(context, System.nanoTime()));
+                        }
+                    }
+                    if (context != null && !kept) {
+                        context.close();
+                    }
+                }
+            } finally {
+                pool.permits.release();
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Borrows a context, waiting as long as needed for one to be available.
+     *
+     * @param params Context parameters
+     * @return A context with an empty KV cache; closing it returns it to the pool
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public Context borrow(ContextParams params) throws InterruptedException {
+        Pool pool = pool(params);
+        long start = System.nanoTime();
+        pool.permits.acquire();
+        return take(pool, start);
+    }
+
+    /**
+     * Borrows a context, waiting at most a timeout for one to be available.
+     *
+     * @param params Context parameters
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return A context with an empty KV cache; closing it returns it to the pool
+     * @throws InterruptedException If the thread is interrupted while waiting
+     * @throws TimeoutException If no context became available in time
+     */
+    public Context borrow(ContextParams params, long timeout, TimeUnit unit)
+            throws InterruptedException, TimeoutException {
+        Pool pool = pool(params);
+        long start = System.nanoTime();
+        if (!pool.permits.tryAcquire(timeout, unit)) {
+            timeoutCount.incrementAndGet();
+            throw new TimeoutException("No context available within " + timeout + " " + unit.toString().toLowerCase());
+        }
+        return take(pool, start);
+    }
+
+    /**
+     * Closes the contexts that have been idle longer than the maximum idle time.
+     *
+     * @return Number of closed contexts
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        List<Context> expired = new ArrayList<>();
+        for (Pool pool : pools()) {
+            synchronized (pool) {
+                Iterator<IdleContext> iterator = pool.idle.iterator();
+                while (iterator.hasNext()) {
+                    IdleContext idle = iterator.next();
+                    if (now - idle.idleSince < maxIdleNanos) {
+                        break;
+                    }
+                    iterator.remove();
+                    expired.add(idle.context);
+                }
+            }
+        }
+        for (Context context : expired) {
+            context.close();
+        }
+        evictionCount.addAndGet(expired.size());
+        return expired.size();
+    }
+
+    /**
+     * Gets the number of contexts borrowed so far.
+     *
+     * @return Number of borrows
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Gets the number of borrows that timed out.
+     *
+     * @return Number of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Gets the number of contexts created by the pool.
+     *
+     * @return Number of created contexts
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * Gets the number of idle contexts closed after the maximum idle time.
+     *
+     * @return Number of evicted contexts
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gets the average time borrowers waited for a context, including the time to create it.
+     *
+     * @param unit Unit of the result
+     * @return Average wait time, or 0 if nothing was borrowed
+     */
+    public long getAverageWaitTime(TimeUnit unit) {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : unit.convert(waitNanos.get() / borrows, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the number of contexts currently borrowed.
+     *
+     * @return Number of borrowed contexts
+     */
+    public int getBorrowedCount() {
+        int count = 0;
+        for (Pool pool : pools()) {
+            synchronized (pool) {
+                count += pool.borrowed;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of contexts waiting in the pool.
+     *
+     * @return Number of idle contexts
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (Pool pool : pools()) {
+            synchronized (pool) {
+                count += pool.idle.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the fraction of the existing contexts that are borrowed.
+     *
+     * @return Utilization between 0 and 1, or 0 if no context exists
+     */
+    public double getUtilization() {
+        int borrowed = 0;
+        int total = 0;
+        for (Pool pool : pools()) {
+            synchronized (pool) {
+                borrowed += pool.borrowed;
+                total += pool.borrowed + pool.idle.size();
+            }
+        }
+        return total == 0 ? 0.0 : (double) borrowed / total;
+    }
+
+    /**
+     * Closes the idle contexts. Borrowed contexts are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<Context> idle = new ArrayList<>();
+        for (Pool pool : pools()) {
+            synchronized (pool) {
+                for (IdleContext context : pool.idle) {
+                    idle.add(context.context);
+                }
+                pool.idle.clear();
+            }
+        }
+        for (Context context : idle) {
+            context.close();
+        }
+    }
+
+    private Pool pool(ContextParams params) {
+        if (params == null) {
+            throw new IllegalArgumentException("Context parameters cannot be null");
+        }
+        if (closed) {
+            throw new IllegalStateException("Context pool is closed");
+        }
+        synchronized (pools) {
+            // Parameters are mutable, so the pool keeps its own copy as the key
+            return pools.computeIfAbsent(params.copy(), key -> new Pool(key, maxContexts));
+        }
+    }
+
+    private List<Pool> pools() {
+        synchronized (pools) {
+            return new ArrayList<>(pools.values());
+        }
+    }
+
+    /**
+     * Takes an idle context or creates a new one, after a permit was acquired.
+     * The pool may have been closed while the caller waited for the permit, in which case the permit is given back.
+     */
+    private Context take(Pool pool, long start) {
+        Context context;
+        synchronized (pool) {
+            if (closed) {
+                pool.permits.release();
+                throw new IllegalStateException("Context pool is closed");
+            }
+            // The most recently returned context is the least likely to be evicted
+            IdleContext idle = pool.idle.pollLast();
+            context = idle != null ? idle.context : null;
+            pool.borrowed++;
+        }
+
+        if (context == null) {
+            try {
+                context = model.createContext(pool.params.copy());
+                createdCount.incrementAndGet();
+            } catch (RuntimeException e) {
+                synchronized (pool) {
+                    pool.borrowed--;
+                }
+                pool.permits.release();
+                throw e;
+            }
+        }
+
+        borrowCount.incrementAndGet();
+        waitNanos.addAndGet(System.nanoTime() - start);
+        evictIdle();
+        return new PooledContext(pool, context);
+    }
+
+    /**
+     * Puts a returned context back into the pool, or closes it if its KV cache cannot be cleared.
+     */
+    private void giveBack(Pool pool, Context context) {
+        boolean reusable = !closed;
+        if (reusable) {
+            try {
+                context.getKvCache().clear();
+            } catch (RuntimeException e) {
+                reusable = false;
+            }
+        }
+
+        synchronized (pool) {
+            pool.borrowed--;
+            if (reusable) {
+                pool.idle.addLast(new IdleContext(context, System.nanoTime()));
+            }
+        }
+        if (!reusable) {
+            context.close();
+        }
+        pool.permits.release();
+        evictIdle();
+    }
+
+    /**
+     * Context handed out by the pool. Closing it returns the wrapped context to the pool.
+     */
+    private final class PooledContext implements Context {
+        private final Pool pool;
+        private final Context delegate;
+        private boolean returned = false;
+
+        private PooledContext(Pool pool, Context delegate) {
+            this.pool = pool;
+            this.delegate = delegate;
+        }
+
+        private Context delegate() {
+            if (returned) {
+                throw new IllegalStateException("Context has been returned to the pool");
+            }
+            return delegate;
+        }
+
+        @Override
+        public LLM getModel() {
+            return delegate().getModel();
+        }
+
+        @Override
+        public Batch createBatch(int maxTokens) {
+            return delegate().createBatch(maxTokens);
+        }
+
+        @Override
+        public BatchResult process(Batch batch) {
+            return delegate().process(batch);
+        }
+
+        @Override
+        public CompletableFuture<BatchResult> processAsync(Batch batch) {
+            return delegate().processAsync(batch);
+        }
+
+        @Override
+        public float[] getLogits() {
+            return delegate().getLogits();
+        }
+
+        @Override
+        public FloatBuffer getLogitsView() {
+            return delegate().getLogitsView();
+        }
+
+        @Override
+        public KvCache getKvCache() {
+            return delegate().getKvCache();
+        }
+
+        @Override
+        public SessionState getSessionState() {
+            return delegate().getSessionState();
+        }
+
+        @Override
+        public Sampler createSampler(SamplerParams params) {
+            return delegate().createSampler(params);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!returned) {
+                returned = true;
+                giveBack(pool, delegate);
+            }
+        }
+    }
+}
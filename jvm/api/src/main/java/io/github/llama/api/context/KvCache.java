@@ -0,0 +1,106 @@
+package io.github.llama.api.context;
+
+/**
+ * Interface for managing the KV cache of a {@link Context}.
+ * <p>
+ * The KV cache holds the keys and values of every evaluated token, tagged with a sequence id and a position.
+ * Keeping the cache between batches lets a conversation evaluate only the tokens of a new turn, and copying
+ * a sequence lets several sequences share a common prefix without evaluating it again.
+ * <p>
+ * Position ranges are half-open: {@code p0} is included and {@code p1} is not. A negative {@code p0} starts
+ * the range at the first position, and a negative {@code p1} extends it to the last one.
+ */
+public interface KvCache {
+
+    /**
+     * Removes all tokens of all sequences from the cache.
+     * The cells are marked as free without zeroing the memory behind them.
+     */
+    void clear();
+
+    /**
+     * Removes the tokens of a sequence in a range of positions.
+     *
+     * @param seqId Sequence id, or a negative value to match every sequence
+     * @param p0 First position to remove
+     * @param p1 Position after the last one to remove
+     * @return false if only part of a sequence was to be removed and the cache does not support that
+     */
+    boolean remove(int seqId, int p0, int p1);
+
+    /**
+     * Removes all tokens of a sequence. Removing a whole sequence always succeeds.
+     *
+     * @param seqId Sequence id
+     */
+    default void remove(int seqId) {
+        remove(seqId, -1, -1);
+    }
+
+    /**
+     * Copies the tokens of a sequence in a range of positions to another sequence.
+     * The tokens are shared between the sequences, so copying takes no additional cache cells.
+     *
+     * @param srcSeqId Sequence to copy from
+     * @param dstSeqId Sequence to copy to
+     * @param p0 First position to copy
+     * @param p1 Position after the last one to copy
+     */
+    void copy(int srcSeqId, int dstSeqId, int p0, int p1);
+
+    /**
+     * Removes all tokens that do not belong to a sequence.
+     *
+     * @param seqId Sequence to keep
+     */
+    void keep(int seqId);
+
+    /**
+     * Adds a delta to the positions of the tokens of a sequence in a range of positions.
+     * This is used to shift the context, for example after removing the oldest tokens of a conversation.
+     *
+     * @param seqId Sequence id
+     * @param p0 First position to shift
+     * @param p1 Position after the last one to shift
+     * @param delta Value added to each position
+     */
+    void shift(int seqId, int p0, int p1, int delta);
+
+    /**
+     * Divides the positions of the tokens of a sequence in a range of positions by a factor.
+     *
+     * @param seqId Sequence id
+     * @param p0 First position to divide
+     * @param p1 Position after the last one to divide
+     * @param divisor Factor to divide the positions by, greater than 1
+     */
+    void divide(int seqId, int p0, int p1, int divisor);
+
+    /**
+     * Gets the smallest position of a sequence in the cache.
+     *
+     * @param seqId Sequence id
+     * @return Smallest position, or -1 if the sequence is empty
+     */
+    int getMinPosition(int seqId);
+
+    /**
+     * Gets the largest position of a sequence in the cache.
+     *
+     * @param seqId Sequence id
+     * @return Largest position, or -1 if the sequence is empty
+     */
+    int getMaxPosition(int seqId);
+
+    /**
+     * Checks whether the positions in the cache can be shifted with {@link #shift} and {@link #divide}.
+     *
+     * @return true if positions can be shifted
+     */
+    boolean canShift();
+
+    /**
+     * Schedules a defragmentation of the cache, applied before the next batch is processed.
+     */
+    void defrag();
+}
@@ -0,0 +1,413 @@
+package io.github.llama.api.context;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of evaluated prompt prefixes kept in the {@link KvCache} of a context.
+ * <p>
+ * Cached token sequences live in sequences of the KV cache that are reserved for the cache, and are indexed
+ * by a radix tree over their token ids. {@link #restore(int[], int)} finds the longest cached prefix of a
+ * prompt and copies it into the sequence of a request with {@link KvCache#copy}, which shares the KV cells
+ * instead of evaluating the prefix again, so only the rest of the prompt has to be evaluated. Prompts that
+ * share a system prompt or a preamble share its branch of the tree, even if no cached sequence is exactly
+ * their prefix.
+ * <p>
+ * Cached sequences are evicted in least-recently-used order when all reserved sequences are in use, when the
+ * cache holds more than a maximum number of tokens, or when the owner of the context runs out of KV cells and
+ * calls {@link #evictLeastRecentlyUsed()}. Instances are thread-safe.
+ */
+public class PrefixCache {
+
+    private final KvCache kvCache;
+    private final long maxTokens;
+    private final ArrayDeque<Integer> freeSeqIds = new ArrayDeque<>();
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Node root = new Node(new int[0], null);
+    private long cachedTokens = 0;
+
+    private long lookupCount = 0;
+    private long hitCount = 0;
+    private long lookupTokenCount = 0;
+    private long reusedTokenCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * Node of the radix tree. The tokens of the edge leading to a node are stored in the node.
+     */
+    private static final class Node {
+        private int[] edge;
+        private Node parent;
+        private final Map<Integer, Node> children = new HashMap<>();
+        private Entry entry;
+
+        private Node(int[] edge, Node parent) {
+            this.edge = edge;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * A token sequence held in a reserved KV cache sequence.
+     */
+    private static final class Entry {
+        private final int seqId;
+        private final int length;
+        private Node node;
+
+        private Entry(int seqId, int length) {
+            this.seqId = seqId;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Result of walking the tree along a token sequence.
+     */
+    private static final class Match {
+        // Number of tokens matched
+        private int length;
+        // Node whose subtree holds every entry that starts with the matched tokens
+        private Node node;
+        // Longest entry that is a prefix of the matched tokens
+        private Entry prefixEntry;
+    }
+
+    /**
+     * Creates a new prefix cache.
+     *
+     * @param kvCache The KV cache holding the cached sequences
+     * @param seqIds Sequence ids reserved for the cache; they must not be used by anyone else
+     * @param maxTokens Maximum total number of cached tokens
+     */
+    public PrefixCache(KvCache kvCache, int[] seqIds, long maxTokens) {
+        if (kvCache == null) {
+            throw new IllegalArgumentException("KV cache cannot be null");
+        }
+        if (seqIds == null || seqIds.length == 0) {
+            throw new IllegalArgumentException("At least one sequence id must be reserved");
+        }
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("Maximum number of tokens must be positive");
+        }
+        this.kvCache = kvCache;
+        this.maxTokens = maxTokens;
+        for (int seqId : seqIds) {
+            freeSeqIds.add(seqId);
+        }
+    }
+
+    /**
+     * Copies the longest cached prefix of a prompt into a sequence.
+     * At least the last token of the prompt is left to evaluate, so that its logits are computed.
+     * The sequence should be empty; after the call it holds the reused tokens at positions starting from 0.
+     *
+     * @param tokens Prompt tokens
+     * @param seqId Sequence to copy the prefix into
+     * @return Number of reused tokens, 0 if no prefix was cached
+     */
+    public synchronized int restore(int[] tokens, int seqId) {
+        lookupCount++;
+        lookupTokenCount += tokens.length;
+
+        Match match = match(tokens, tokens.length);
+        int reused = Math.min(match.length, tokens.length - 1);
+        if (reused <= 0) {
+            return 0;
+        }
+
+        Entry entry = anyEntry(match.node);
+        // Mark the entry as recently used
+        entries.get(entry.seqId);
+        kvCache.copy(entry.seqId, seqId, 0, reused);
+
+        hitCount++;
+        reusedTokenCount += reused;
+        return reused;
+    }
+
+    /**
+     * Caches the tokens of a sequence.
+     *
+     * @param tokens Tokens held by the sequence from position 0
+     * @param seqId Sequence holding the tokens
+     * @return true if the tokens were added, false if they were already cached
+     */
+    public synchronized boolean store(int[] tokens, int seqId) {
+        return store(tokens, tokens.length, seqId);
+    }
+
+    /**
+     * Caches the first tokens of a sequence.
+     *
+     * @param tokens Tokens held by the sequence from position 0
+     * @param length Number of tokens to cache
+     * @param seqId Sequence holding the tokens
+     * @return true if the tokens were added, false if they were already cached or cannot be cached
+     */
+    public synchronized boolean store(int[] tokens, int length, int seqId) {
+        if (length <= 0 || length > maxTokens) {
+            return false;
+        }
+
+        Match match = match(tokens, length);
+        if (match.length == length) {
+            // A cached sequence already starts with these tokens; mark it as recently used
+            entries.get(anyEntry(match.node).seqId);
+            return false;
+        }
+
+        // A cached sequence that is a prefix of the new one is replaced by it
+        Entry replaced = match.prefixEntry;
+        long needed = length - (replaced != null ? replaced.length : 0);
+        while (cachedTokens + needed > maxTokens) {
+            if (!evictOther(replaced)) {
+                break;
+            }
+        }
+
+        int storageSeqId;
+        if (replaced != null) {
+            removeEntry(replaced);
+            storageSeqId = replaced.seqId;
+        } else {
+            if (freeSeqIds.isEmpty()) {
+                evictLeastRecentlyUsed();
+            }
+            storageSeqId = freeSeqIds.poll();
+        }
+
+        kvCache.remove(storageSeqId);
+        kvCache.copy(seqId, storageSeqId, 0, length);
+
+        Entry entry = new Entry(storageSeqId, length);
+        insert(tokens, length, entry);
+        entries.put(storageSeqId, entry);
+        cachedTokens += length;
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used cached sequence and frees its KV cells.
+     *
+     * @return true if a sequence was evicted, false if the cache is empty
+     */
+    public synchronized boolean evictLeastRecentlyUsed() {
+        return evictOther(null);
+    }
+
+    /**
+     * Removes all cached sequences and frees their KV cells.
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            kvCache.remove(entry.seqId);
+            freeSeqIds.add(entry.seqId);
+        }
+        entries.clear();
+        root.children.clear();
+        cachedTokens = 0;
+    }
+
+    /**
+     * Gets the number of cached sequences.
+     *
+     * @return Number of cached sequences
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the total number of cached tokens.
+     *
+     * @return Number of cached tokens
+     */
+    public synchronized long getCachedTokenCount() {
+        return cachedTokens;
+    }
+
+    /**
+     * Gets the number of prompts looked up with {@link #restore(int[], int)}.
+     *
+     * @return Number of lookups
+     */
+    public synchronized long getLookupCount() {
+        return lookupCount;
+    }
+
+    /**
+     * Gets the number of lookups that reused a cached prefix.
+     *
+     * @return Number of hits
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the fraction of lookups that reused a cached prefix.
+     *
+     * @return Hit rate between 0 and 1, or 0 if nothing was looked up
+     */
+    public synchronized double getHitRate() {
+        return lookupCount == 0 ? 0.0 : (double) hitCount / lookupCount;
+    }
+
+    /**
+     * Gets the number of prompt tokens that did not have to be evaluated.
+     *
+     * @return Number of reused tokens
+     */
+    public synchronized long getReusedTokenCount() {
+        return reusedTokenCount;
+    }
+
+    /**
+     * Gets the fraction of looked up prompt tokens that did not have to be evaluated.
+     *
+     * @return Fraction between 0 and 1, or 0 if nothing was looked up
+     */
+    public synchronized double getReusedTokenRate() {
+        return lookupTokenCount == 0 ? 0.0 : (double) reusedTokenCount / lookupTokenCount;
+    }
+
+    /**
+     * Gets the number of evicted sequences.
+     *
+     * @return Number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Evicts the least recently used cached sequence other than one that is about to be replaced.
+     *
+     * @param keep Entry not to evict, or null
+     * @return true if a sequence was evicted
+     */
+    private boolean evictOther(Entry keep) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry != keep) {
+                iterator.remove();
+                removeEntry(entry);
+                kvCache.remove(entry.seqId);
+                freeSeqIds.add(entry.seqId);
+                evictionCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks the tree along the first tokens of a sequence.
+     *
+     * @param tokens Tokens to match
+     * @param length Number of tokens to match
+     * @return Match result
+     */
+    private Match match(int[] tokens, int length) {
+        Match match = new Match();
+        Node node = root;
+        match.node = root;
+        while (match.length < length) {
+            Node child = node.children.get(tokens[match.length]);
+            if (child == null) {
+                break;
+            }
+            int common = commonLength(child.edge, tokens, match.length, length);
+            match.length += common;
+            match.node = child;
+            if (common < child.edge.length) {
+                break;
+            }
+            node = child;
+            if (node.entry != null) {
+                match.prefixEntry = node.entry;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Finds a cached sequence in the subtree of a node. Every leaf of the tree holds an entry.
+     *
+     * @param node The node
+     * @return An entry in the subtree
+     */
+    private static Entry anyEntry(Node node) {
+        while (node.entry == null) {
+            node = node.children.values().iterator().next();
+        }
+        return node.entry;
+    }
+
+    /**
+     * Adds an entry for the first tokens of a sequence to the tree, splitting edges where it branches off.
+     */
+    private void insert(int[] tokens, int length, Entry entry) {
+        Node node = root;
+        int position = 0;
+        while (position < length) {
+            Node child = node.children.get(tokens[position]);
+            if (child == null) {
+                child = new Node(Arrays.copyOfRange(tokens, position, length), node);
+                node.children.put(tokens[position], child);
+                node = child;
+                break;
+            }
+            int common = commonLength(child.edge, tokens, position, length);
+            if (common < child.edge.length) {
+                Node split = new Node(Arrays.copyOf(child.edge, common), node);
+                node.children.put(tokens[position], split);
+                child.edge = Arrays.copyOfRange(child.edge, common, child.edge.length);
+                child.parent = split;
+                split.children.put(child.edge[0], child);
+                child = split;
+            }
+            node = child;
+            position += common;
+        }
+        node.entry = entry;
+        entry.node = node;
+    }
+
+    /**
+     * Removes an entry from the tree, pruning and merging the nodes that are no longer needed.
+     */
+    private void removeEntry(Entry entry) {
+        entries.remove(entry.seqId);
+        cachedTokens -= entry.length;
+
+        Node node = entry.node;
+        node.entry = null;
+        while (node != root && node.entry == null && node.children.isEmpty()) {
+            node.parent.children.remove(node.edge[0]);
+            node = node.parent;
+        }
+        if (node != root && node.entry == null && node.children.size() == 1) {
+            Node child = node.children.values().iterator().next();
+            int[] edge = Arrays.copyOf(node.edge, node.edge.length + child.edge.length);
+            System.arraycopy(child.edge, 0, edge, node.edge.length, child.edge.length);
+            child.edge = edge;
+            child.parent = node.parent;
+            node.parent.children.put(edge[0], child);
+        }
+    }
+
+    private static int commonLength(int[] edge, int[] tokens, int offset, int length) {
+        int common = 0;
+        while (common < edge.length && offset + common < length && edge[common] == tokens[offset + common]) {
+            common++;
+        }
+        return common;
+    }
+}
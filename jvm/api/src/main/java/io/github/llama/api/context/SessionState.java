@@ -0,0 +1,91 @@
+package io.github.llama.api.context;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Interface for saving and restoring the state of single sequences of a {@link Context}.
+ * <p>
+ * The state of a sequence holds its KV cache entries. Saving the state of an idle conversation and removing
+ * the sequence from the {@link KvCache} frees its cells, and restoring the state later, into any empty
+ * sequence, continues the conversation without evaluating it again. States are written to and read from
+ * direct buffers in place, so a memory-mapped file region can hold them without copying through the heap.
+ */
+public interface SessionState {
+
+    /**
+     * Gets the number of bytes needed to save the state of a sequence.
+     *
+     * @param seqId Sequence id
+     * @return Size of the state in bytes
+     */
+    long getSize(int seqId);
+
+    /**
+     * Saves the state of a sequence into a buffer, starting at its position.
+     * The position of the buffer is advanced past the written state.
+     *
+     * @param seqId Sequence id
+     * @param buffer Direct buffer to write to
+     * @return Number of bytes written
+     * @throws IllegalArgumentException if the buffer is not direct, is read-only or has too few bytes remaining
+     */
+    long save(int seqId, ByteBuffer buffer);
+
+    /**
+     * Restores the state of a sequence from the remaining bytes of a buffer.
+     * The position of the buffer is advanced past the read state.
+     *
+     * @param buffer Direct buffer holding a state written by {@link #save(int, ByteBuffer)}
+     * @param seqId Sequence to restore the state into, which should be empty
+     * @return Number of bytes read
+     * @throws IllegalArgumentException if the buffer is not direct
+     * @throws IllegalStateException if the state cannot be restored
+     */
+    long restore(ByteBuffer buffer, int seqId);
+
+    /**
+     * Saves the state of a sequence into a file, replacing its contents.
+     * <p>
+     * The default implementation maps the file and writes the state into the mapping, which limits the state
+     * to 2 GB.
+     *
+     * @param seqId Sequence id
+     * @param file File to write to
+     * @return Number of bytes written
+     * @throws IOException If the file cannot be written
+     */
+    default long save(int seqId, Path file) throws IOException {
+        long size = getSize(seqId);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            long written = save(seqId, buffer);
+            buffer.force();
+            return written;
+        }
+    }
+
+    /**
+     * Restores the state of a sequence from a file written by {@link #save(int, Path)}.
+     * <p>
+     * The default implementation maps the file and reads the state from the mapping, which limits the state
+     * to 2 GB.
+     *
+     * @param file File to read from
+     * @param seqId Sequence to restore the state into, which should be empty
+     * @return Number of bytes read
+     * @throws IOException If the file cannot be read
+     * @throws IllegalStateException if the state cannot be restored
+     */
+    default long restore(Path file, int seqId) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return restore(buffer, seqId);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.llama.api.generation;
+
+/**
+ * Class representing a single token emitted during generation.
+ */
+public class GeneratedToken {
+    private final int tokenId;
+    private final String text;
+    private final float logprob;
+    private final int index;
+
+    /**
+     * Creates a new generated token.
+     *
+     * @param tokenId Token ID
+     * @param text Text piece of the token
+     * @param logprob Log probability of the token under the model's distribution
+     * @param index Index of the token in the generated sequence, starting at 0
+     */
+    public GeneratedToken(int tokenId, String text, float logprob, int index) {
+        this.tokenId = tokenId;
+        this.text = text;
+        this.logprob = logprob;
+        this.index = index;
+    }
+
+    /**
+     * Gets the token ID.
+     *
+     * @return Token ID
+     */
+    public int getTokenId() {
+        return tokenId;
+    }
+
+    /**
+     * Gets the text piece of the token.
+     * The piece is empty if the token ends inside a multi-byte character; the character is then part of the
+     * text of the token that completes it.
+     *
+     * @return Text piece
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Gets the log probability of the token under the model's distribution, before sampling transforms.
+     * It is only computed when {@link io.github.llama.api.sampling.SamplerParams#isLogprobs()} is set.
+     *
+     * @return Log probability, or NaN if it was not computed
+     */
+    public float getLogprob() {
+        return logprob;
+    }
+
+    /**
+     * Gets the index of the token in the generated sequence.
+     *
+     * @return Index, starting at 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "GeneratedToken{tokenId=" + tokenId + ", text='" + text + "', logprob=" + logprob + ", index=" + index + "}";
+    }
+}
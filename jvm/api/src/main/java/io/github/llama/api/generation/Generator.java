@@ -0,0 +1,455 @@
+package io.github.llama.api.generation;
+
+import io.github.llama.api.batch.Batch;
+import io.github.llama.api.batch.BatchResult;
+import io.github.llama.api.context.Context;
+import io.github.llama.api.sampling.Sampler;
+import io.github.llama.api.sampling.SamplerParams;
+import io.github.llama.api.tokenization.StreamingDetokenizer;
+import io.github.llama.api.tokenization.Tokenizer;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates text on top of a {@link Context} and streams the sampled tokens as they are produced.
+ * <p>
+ * Every call to {@link #generate(int[], SamplerParams)} returns a cold {@link Flow.Publisher}: decoding starts
+ * when a subscriber requests the first token and only continues while there is outstanding demand, so a slow
+ * subscriber pauses decoding instead of having tokens buffered for it. Generation stops at a token for which
+ * {@link Tokenizer#isEndOfGeneration(int)} is true, after {@link SamplerParams#getMaxTokens()} tokens, or when the generated text contains one of
+ * {@link SamplerParams#getStopSequences()}. Tokens that may be the start of a stop sequence are held back until
+ * it is clear whether they are, and tokens overlapping a stop sequence are not emitted.
+ * <p>
+ * Tokens continue the context's default sequence, and only one generation can run on a context at a time, also
+ * across generators. Text prompts start with a beginning-of-sequence token only while the sequence is empty, so
+ * that later turns continue the conversation held in the KV cache. Log probabilities are only computed when
+ * {@link SamplerParams#isLogprobs()} is set.
+ */
+public class Generator implements AutoCloseable {
+
+    // Contexts a generation is running on, shared by all generators
+    private static final Set<Context> busyContexts = Collections.newSetFromMap(new WeakHashMap<>());
+
+    private final Context context;
+    private final Tokenizer tokenizer;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * Creates a new generator that decodes on its own thread.
+     *
+     * @param context The context to generate with
+     */
+    public Generator(Context context) {
+        this(context, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "llama-generator");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * Creates a new generator that decodes on the given executor.
+     *
+     * @param context The context to generate with
+     * @param executor The executor that runs decode steps and delivers tokens to subscribers
+     */
+    public Generator(Context context, Executor executor) {
+        this(context, executor, false);
+    }
+
+    private Generator(Context context, Executor executor, boolean ownsExecutor) {
+        this.context = Objects.requireNonNull(context, "Context cannot be null");
+        this.executor = Objects.requireNonNull(executor, "Executor cannot be null");
+        this.tokenizer = context.getModel().getTokenizer();
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+    }
+
+    /**
+     * Generates text for a prompt.
+     *
+     * @param prompt Prompt text, tokenized when the generation starts, with a beginning-of-sequence token if the
+     *               context's default sequence is empty
+     * @param params Sampler parameters
+     * @return Publisher of the generated tokens
+     */
+    public Flow.Publisher<GeneratedToken> generate(String prompt, SamplerParams params) {
+        if (prompt == null) {
+            throw new IllegalArgumentException("Prompt cannot be null");
+        }
+        if (params == null) {
+            throw new IllegalArgumentException("Sampler parameters cannot be null");
+        }
+        return subscriber -> {
+            Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+            new Generation(subscriber, prompt, null, params).start();
+        };
+    }
+
+    /**
+     * Generates text for a tokenized prompt.
+     *
+     * @param promptTokens Prompt tokens, must not be empty
+     * @param params Sampler parameters
+     * @return Publisher of the generated tokens
+     */
+    public Flow.Publisher<GeneratedToken> generate(int[] promptTokens, SamplerParams params) {
+        if (promptTokens == null || promptTokens.length == 0) {
+            throw new IllegalArgumentException("Prompt tokens cannot be null or empty");
+        }
+        if (params == null) {
+            throw new IllegalArgumentException("Sampler parameters cannot be null");
+        }
+
+        int[] prompt = promptTokens.clone();
+        return subscriber -> {
+            Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+            new Generation(subscriber, null, prompt, params).start();
+        };
+    }
+
+    /**
+     * Closes the generator. The context is not closed.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * A single subscription, which decodes tokens on demand.
+     * All state except the demand and the cancellation flags is only touched from {@link #drain()},
+     * which never runs concurrently with itself.
+     */
+    private final class Generation implements Flow.Subscription {
+        private final Flow.Subscriber<? super GeneratedToken> subscriber;
+        private final String promptText;
+        private int[] prompt;
+        private final SamplerParams params;
+        private final List<String> stopSequences;
+        private final StreamingDetokenizer detokenizer;
+
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger(1);
+        private volatile boolean cancelled = false;
+        private volatile boolean invalidRequest = false;
+
+        private final Deque<GeneratedToken> ready = new ArrayDeque<>();
+        private final Deque<GeneratedToken> held = new ArrayDeque<>();
+        private Sampler sampler;
+        private Batch batch;
+        private boolean ownsContext = false;
+        private boolean finished = false;
+        private boolean terminated = false;
+        private int generatedCount = 0;
+        private int lastToken;
+
+        private Generation(Flow.Subscriber<? super GeneratedToken> subscriber, String promptText, int[] prompt,
+                           SamplerParams params) {
+            this.subscriber = subscriber;
+            this.promptText = promptText;
+            this.prompt = prompt;
+            this.params = params;
+            this.stopSequences = params.getStopSequences() == null ? List.of() : params.getStopSequences().stream()
+                    .filter(stop -> stop != null && !stop.isEmpty())
+                    .toList();
+            this.detokenizer = tokenizer.createStreamingDetokenizer();
+        }
+
+        /**
+         * Hands the subscription to the subscriber. Requests made from onSubscribe are only acted upon once it returns.
+         */
+        private void start() {
+            subscriber.onSubscribe(this);
+            if (wip.decrementAndGet() != 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = true;
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    drainLoop();
+                } catch (RuntimeException e) {
+                    if (!terminated) {
+                        terminated = true;
+                        release();
+                        subscriber.onError(e);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainLoop() {
+            while (!terminated) {
+                if (cancelled) {
+                    terminated = true;
+                    release();
+                    return;
+                }
+                if (invalidRequest) {
+                    terminated = true;
+                    release();
+                    subscriber.onError(new IllegalArgumentException("Requested number of tokens must be positive"));
+                    return;
+                }
+
+                if (!ready.isEmpty()) {
+                    if (demand.get() == 0) {
+                        return;
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(ready.poll());
+                    continue;
+                }
+
+                if (finished) {
+                    terminated = true;
+                    release();
+                    subscriber.onComplete();
+                    return;
+                }
+
+                // Nothing is waiting to be delivered: only decode the next token if the subscriber asked for it
+                if (demand.get() == 0) {
+                    return;
+                }
+                step();
+            }
+        }
+
+        /**
+         * Decodes the prompt or the last sampled token and samples the next one.
+         */
+        private void step() {
+            if (batch == null) {
+                synchronized (busyContexts) {
+                    if (!busyContexts.add(context)) {
+                        throw new IllegalStateException("Another generation is running on this context");
+                    }
+                }
+                ownsContext = true;
+                if (prompt == null) {
+                    prompt = tokenizer.tokenize(promptText, isSequenceEmpty(), false);
+                    if (prompt.length == 0) {
+                        throw new IllegalStateException("Prompt has no tokens");
+                    }
+                }
+                sampler = context.createSampler(params);
+                batch = context.createBatch(prompt.length);
+                batch.addTokens(prompt);
+            } else {
+                batch.clear();
+                batch.addToken(lastToken);
+            }
+
+            BatchResult result = context.process(batch);
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("Failed to process batch: " + result.getErrorMessage());
+            }
+
+            int token = sampler.sample(context);
+            float logprob = params.isLogprobs() ? logprob(token) : Float.NaN;
+            lastToken = token;
+            generatedCount++;
+
+            if (tokenizer.isEndOfGeneration(token)) {
+                // Bytes of an incomplete character belong to the last token, which is still held back
+                String rest = detokenizer.flush();
+                if (!rest.isEmpty() && !held.isEmpty()) {
+                    GeneratedToken previous = held.pollLast();
+                    offer(new GeneratedToken(previous.getTokenId(), previous.getText() + rest,
+                            previous.getLogprob(), previous.getIndex()));
+                }
+                finish();
+                return;
+            }
+
+            String text = detokenizer.accept(token);
+            boolean last = generatedCount >= params.getMaxTokens();
+            if (last) {
+                text += detokenizer.flush();
+            }
+            offer(new GeneratedToken(token, text, logprob, generatedCount - 1));
+            if (last) {
+                finish();
+            }
+        }
+
+        /**
+         * Queues a token for delivery, holding it back while it ends in an incomplete character or may be part of
+         * a stop sequence.
+         *
+         * @param token The generated token
+         */
+        private void offer(GeneratedToken token) {
+            held.add(token);
+            if (detokenizer.getPendingByteCount() > 0) {
+                return;
+            }
+            if (stopSequences.isEmpty()) {
+                ready.addAll(held);
+                held.clear();
+                return;
+            }
+            StringBuilder builder = new StringBuilder();
+            for (GeneratedToken heldToken : held) {
+                builder.append(heldToken.getText());
+            }
+            String text = builder.toString();
+
+            int match = -1;
+            for (String stop : stopSequences) {
+                int index = text.indexOf(stop);
+                if (index >= 0 && (match < 0 || index < match)) {
+                    match = index;
+                }
+            }
+
+            if (match >= 0) {
+                // Deliver what comes before the stop sequence, cutting the token it starts in, and drop the rest
+                int start = 0;
+                for (GeneratedToken heldToken : held) {
+                    String heldText = heldToken.getText();
+                    if (start + heldText.length() > match) {
+                        if (match > start) {
+                            ready.add(new GeneratedToken(heldToken.getTokenId(), heldText.substring(0, match - start),
+                                    heldToken.getLogprob(), heldToken.getIndex()));
+                        }
+                        break;
+                    }
+                    ready.add(heldToken);
+                    start += heldText.length();
+                }
+                held.clear();
+                finished = true;
+                return;
+            }
+
+            // Release the tokens that end before any possible start of a stop sequence
+            int keepFrom = text.length() - longestStopPrefix(text);
+            int end = 0;
+            while (!held.isEmpty() && end + held.peek().getText().length() <= keepFrom) {
+                end += held.peek().getText().length();
+                ready.add(held.poll());
+            }
+        }
+
+        /**
+         * Gets the length of the longest suffix of the text that is a proper prefix of a stop sequence.
+         *
+         * @param text Text generated so far
+         * @return Length of the suffix, 0 if none
+         */
+        private int longestStopPrefix(String text) {
+            int longest = 0;
+            for (String stop : stopSequences) {
+                for (int length = Math.min(text.length(), stop.length() - 1); length > longest; length--) {
+                    if (text.regionMatches(text.length() - length, stop, 0, length)) {
+                        longest = length;
+                        break;
+                    }
+                }
+            }
+            return longest;
+        }
+
+        private void finish() {
+            ready.addAll(held);
+            held.clear();
+            finished = true;
+        }
+
+        /**
+         * Checks whether the context's default sequence holds no tokens yet.
+         * Contexts that do not expose their KV cache are assumed to start a new sequence.
+         *
+         * @return Whether the sequence is empty
+         */
+        private boolean isSequenceEmpty() {
+            try {
+                return context.getKvCache().getMaxPosition(0) < 0;
+            } catch (UnsupportedOperationException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Computes the log probability of a token from the logits of the last processed batch.
+         *
+         * @param token The sampled token
+         * @return Log probability, or NaN if the logits do not cover the token
+         */
+        private float logprob(int token) {
+            FloatBuffer logits = context.getLogitsView();
+            if (logits == null || token < 0 || token >= logits.limit()) {
+                return Float.NaN;
+            }
+
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < logits.limit(); i++) {
+                max = Math.max(max, logits.get(i));
+            }
+            double sum = 0.0;
+            for (int i = 0; i < logits.limit(); i++) {
+                sum += Math.exp(logits.get(i) - max);
+            }
+            return (float) (logits.get(token) - max - Math.log(sum));
+        }
+
+        private void release() {
+            if (sampler != null) {
+                sampler.close();
+                sampler = null;
+            }
+            if (batch != null) {
+                batch.close();
+            }
+            if (ownsContext) {
+                ownsContext = false;
+                synchronized (busyContexts) {
+                    busyContexts.remove(context);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package io.github.llama.api.gguf;
+
+import io.github.llama.api.model.ModelInfo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the header, metadata and tensor descriptions of a GGUF file without loading the native library.
+ * <p>
+ * The file is memory-mapped, so only the pages that are actually read are loaded from disk; the tensor data is
+ * never touched. Opening a file only reads the fixed-size header. The metadata is indexed on first access, and
+ * each value is decoded when it is requested. The tensor descriptions, which follow the metadata, are parsed on
+ * first access as well.
+ * <p>
+ * GGUF versions 2 and 3 in little-endian byte order are supported. Instances are thread-safe.
+ */
+public final class GgufFile {
+    /**
+     * The magic bytes {@code "GGUF"} read as a little-endian integer.
+     */
+    public static final int MAGIC = 0x46554747;
+
+    private static final int HEADER_SIZE = 24;
+    private static final int DEFAULT_ALIGNMENT = 32;
+
+    private final Path path;
+    private final long fileSize;
+    private final ByteBuffer buffer;
+    private final int version;
+    private final long tensorCount;
+    private final long metadataCount;
+
+    private volatile Map<String, Value> metadata;
+    private int tensorInfoStart;
+    private volatile List<GgufTensorInfo> tensors;
+    private long dataOffset;
+
+    /**
+     * Position and type of a metadata value in the file.
+     */
+    private static final class Value {
+        private final GgufValueType type;
+        private final int position;
+
+        private Value(GgufValueType type, int position) {
+            this.type = type;
+            this.position = position;
+        }
+    }
+
+    private GgufFile(Path path, long fileSize, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.fileSize = fileSize;
+        this.buffer = buffer;
+
+        if (fileSize < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a GGUF file: " + path);
+        }
+        this.version = buffer.getInt(4);
+        if (version < 2 || version > 3) {
+            throw new IOException("Unsupported GGUF version " + version + ": " + path);
+        }
+        this.tensorCount = buffer.getLong(8);
+        this.metadataCount = buffer.getLong(16);
+        if (tensorCount < 0 || metadataCount < 0) {
+            throw new IOException("Malformed GGUF header: " + path);
+        }
+    }
+
+    /**
+     * Opens a GGUF file and reads its header.
+     *
+     * @param path Path to the file
+     * @return The opened file
+     * @throws IOException if the file cannot be read or is not a supported GGUF file
+     */
+    public static GgufFile open(Path path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            // The header, metadata and tensor descriptions come first, so the first 2 GiB always cover them
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, Integer.MAX_VALUE))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            return new GgufFile(path, fileSize, buffer);
+        }
+    }
+
+    /**
+     * Checks whether a file starts with the GGUF magic bytes. Only the first four bytes are read.
+     *
+     * @param path Path to the file
+     * @return Whether the file is a GGUF file
+     */
+    public static boolean isGguf(Path path) {
+        if (path == null || !Files.isRegularFile(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Keep reading until the four bytes are in or the file ends
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the path of the file.
+     *
+     * @return File path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the size of the file.
+     *
+     * @return Size in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Gets the GGUF format version.
+     *
+     * @return Format version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the number of tensors, as stored in the header.
+     *
+     * @return Number of tensors
+     */
+    public long getTensorCount() {
+        return tensorCount;
+    }
+
+    /**
+     * Gets the number of metadata entries, as stored in the header.
+     *
+     * @return Number of metadata entries
+     */
+    public long getMetadataCount() {
+        return metadataCount;
+    }
+
+    /**
+     * Gets all metadata keys in file order.
+     *
+     * @return Set of metadata keys
+     */
+    public Set<String> getMetadataKeys() {
+        return Collections.unmodifiableSet(metadata().keySet());
+    }
+
+    /**
+     * Gets the type of a metadata value.
+     *
+     * @param key Metadata key
+     * @return Value type, or null if not found
+     */
+    public GgufValueType getType(String key) {
+        Value value = metadata().get(key);
+        return value == null ? null : value.type;
+    }
+
+    /**
+     * Gets a metadata value.
+     * Integers up to 16 bits and signed 32-bit integers are returned as {@link Integer}, unsigned 32-bit and
+     * 64-bit integers as {@link Long}, floats as {@link Float} or {@link Double}, booleans as {@link Boolean},
+     * strings as {@link String} and arrays as a {@link List} of their elements.
+     *
+     * @param key Metadata key
+     * @return Metadata value, or null if not found
+     */
+    public Object getValue(String key) {
+        Value value = metadata().get(key);
+        return value == null ? null : read(value.type, value.position);
+    }
+
+    /**
+     * Gets a metadata value as a string. Arrays are formatted as {@code [a, b, c]}.
+     *
+     * @param key Metadata key
+     * @return Metadata value, or null if not found
+     */
+    public String getString(String key) {
+        Object value = getValue(key);
+        return value == null ? null : format(value);
+    }
+
+    /**
+     * Gets an integer metadata value.
+     *
+     * @param key Metadata key
+     * @param defaultValue Value to return if the key is not found or not a number
+     * @return Metadata value
+     */
+    public long getLong(String key, long defaultValue) {
+        return getValue(key) instanceof Number number ? number.longValue() : defaultValue;
+    }
+
+    /**
+     * Gets a floating-point metadata value.
+     *
+     * @param key Metadata key
+     * @param defaultValue Value to return if the key is not found or not a number
+     * @return Metadata value
+     */
+    public double getDouble(String key, double defaultValue) {
+        return getValue(key) instanceof Number number ? number.doubleValue() : defaultValue;
+    }
+
+    /**
+     * Gets the descriptions of all tensors.
+     *
+     * @return List of tensor descriptions in file order
+     */
+    public List<GgufTensorInfo> getTensors() {
+        return tensors();
+    }
+
+    /**
+     * Gets the offset of the tensor data section in the file.
+     *
+     * @return Offset in bytes
+     */
+    public long getDataOffset() {
+        tensors();
+        return dataOffset;
+    }
+
+    /**
+     * Gets a view of this file as model information.
+     *
+     * @return Model information backed by this file
+     */
+    public ModelInfo getModelInfo() {
+        return new GgufModelInfo(this);
+    }
+
+    /**
+     * Indexes the metadata on first use.
+     *
+     * @return Map of keys to value positions
+     */
+    private Map<String, Value> metadata() {
+        Map<String, Value> index = metadata;
+        if (index == null) {
+            synchronized (this) {
+                index = metadata;
+                if (index == null) {
+                    index = new LinkedHashMap<>();
+                    int position = HEADER_SIZE;
+                    try {
+                        for (long i = 0; i < metadataCount; i++) {
+                            String key = readString(position);
+                            position += 8 + stringLength(position);
+                            GgufValueType type = GgufValueType.of(buffer.getInt(position));
+                            position += 4;
+                            index.put(key, new Value(type, position));
+                            position = skip(type, position);
+                        }
+                    } catch (RuntimeException e) {
+                        throw malformed("metadata", e);
+                    }
+                    tensorInfoStart = position;
+                    metadata = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Parses the tensor descriptions on first use.
+     *
+     * @return List of tensor descriptions
+     */
+    private List<GgufTensorInfo> tensors() {
+        List<GgufTensorInfo> list = tensors;
+        if (list == null) {
+            metadata();
+            synchronized (this) {
+                list = tensors;
+                if (list == null) {
+                    list = new ArrayList<>((int) Math.min(tensorCount, 65536));
+                    int position = tensorInfoStart;
+                    try {
+                        for (long i = 0; i < tensorCount; i++) {
+                            String name = readString(position);
+                            position += 8 + stringLength(position);
+                            int dimensionCount = buffer.getInt(position);
+                            position += 4;
+                            long[] dimensions = new long[dimensionCount];
+                            for (int d = 0; d < dimensionCount; d++) {
+                                dimensions[d] = buffer.getLong(position);
+                                position += 8;
+                            }
+                            int type = buffer.getInt(position);
+                            long offset = buffer.getLong(position + 4);
+                            position += 12;
+                            list.add(new GgufTensorInfo(name, dimensions, type, offset));
+                        }
+                    } catch (RuntimeException e) {
+                        throw malformed("tensor descriptions", e);
+                    }
+                    long alignment = getLong("general.alignment", DEFAULT_ALIGNMENT);
+                    dataOffset = (position + alignment - 1) / alignment * alignment;
+                    list = Collections.unmodifiableList(list);
+                    tensors = list;
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Gets the position after a value.
+     *
+     * @param type Value type
+     * @param position Position of the value
+     * @return Position of the next item
+     */
+    private int skip(GgufValueType type, int position) {
+        if (type == GgufValueType.STRING) {
+            return position + 8 + stringLength(position);
+        }
+        if (type == GgufValueType.ARRAY) {
+            GgufValueType elementType = GgufValueType.of(buffer.getInt(position));
+            long count = buffer.getLong(position + 4);
+            position += 12;
+            if (elementType.getSize() > 0) {
+                return Math.toIntExact(position + count * elementType.getSize());
+            }
+            for (long i = 0; i < count; i++) {
+                position = skip(elementType, position);
+            }
+            return position;
+        }
+        return position + type.getSize();
+    }
+
+    /**
+     * Decodes a value.
+     *
+     * @param type Value type
+     * @param position Position of the value
+     * @return The decoded value
+     */
+    private Object read(GgufValueType type, int position) {
+        return switch (type) {
+            case UINT8 -> buffer.get(position) & 0xFF;
+            case INT8 -> (int) buffer.get(position);
+            case UINT16 -> buffer.getShort(position) & 0xFFFF;
+            case INT16 -> (int) buffer.getShort(position);
+            case UINT32 -> buffer.getInt(position) & 0xFFFFFFFFL;
+            case INT32 -> buffer.getInt(position);
+            case FLOAT32 -> buffer.getFloat(position);
+            case BOOL -> buffer.get(position) != 0;
+            case STRING -> readString(position);
+            case UINT64, INT64 -> buffer.getLong(position);
+            case FLOAT64 -> buffer.getDouble(position);
+            case ARRAY -> readArray(position);
+        };
+    }
+
+    private List<Object> readArray(int position) {
+        GgufValueType elementType = GgufValueType.of(buffer.getInt(position));
+        int count = Math.toIntExact(buffer.getLong(position + 4));
+        position += 12;
+        List<Object> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            elements.add(read(elementType, position));
+            position = skip(elementType, position);
+        }
+        return Collections.unmodifiableList(elements);
+    }
+
+    private int stringLength(int position) {
+        long length = buffer.getLong(position);
+        if (length < 0 || length > buffer.limit() - position - 8) {
+            throw new IllegalArgumentException("String length " + length + " at " + position + " is out of bounds");
+        }
+        return (int) length;
+    }
+
+    private String readString(int position) {
+        byte[] bytes = new byte[stringLength(position)];
+        buffer.get(position + 8, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String format(Object value) {
+        if (value instanceof List<?> list) {
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(format(list.get(i)));
+            }
+            return builder.append(']').toString();
+        }
+        return String.valueOf(value);
+    }
+
+    private UncheckedIOException malformed(String section, RuntimeException cause) {
+        return new UncheckedIOException(new IOException("Malformed GGUF " + section + " in " + path + ": " +
+                cause.getMessage(), cause));
+    }
+}
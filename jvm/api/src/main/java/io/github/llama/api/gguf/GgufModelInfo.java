@@ -0,0 +1,139 @@
+package io.github.llama.api.gguf;
+
+import io.github.llama.api.model.ModelInfo;
+
+import java.util.Set;
+
+/**
+ * Implementation of {@link ModelInfo} read from the metadata of a {@link GgufFile}.
+ * <p>
+ * Hyperparameters are read from the architecture-specific keys, for example {@code llama.context_length}.
+ * The parameter count is summed from the tensor descriptions and the size is the size of the tensor data
+ * section, so both are only computed when requested. The RoPE type is not stored in the file and is reported
+ * as -1.
+ */
+public class GgufModelInfo implements ModelInfo {
+    private static final Set<String> RECURRENT_ARCHITECTURES =
+            Set.of("mamba", "mamba2", "rwkv6", "rwkv6qwen2", "rwkv7", "arwkv7");
+
+    private final GgufFile file;
+    private final String architecture;
+
+    /**
+     * Creates model information backed by a GGUF file.
+     *
+     * @param file The GGUF file
+     */
+    public GgufModelInfo(GgufFile file) {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+        this.file = file;
+        String arch = file.getString("general.architecture");
+        this.architecture = arch != null ? arch : "";
+    }
+
+    /**
+     * Gets the model architecture.
+     *
+     * @return Architecture name, or an empty string if the file does not declare one
+     */
+    public String getArchitecture() {
+        return architecture;
+    }
+
+    @Override
+    public long getParameterCount() {
+        long count = 0;
+        for (GgufTensorInfo tensor : file.getTensors()) {
+            count += tensor.getElementCount();
+        }
+        return count;
+    }
+
+    @Override
+    public int getContextSize() {
+        return (int) file.getLong(architecture + ".context_length", 0);
+    }
+
+    @Override
+    public int getEmbeddingSize() {
+        return (int) file.getLong(architecture + ".embedding_length", 0);
+    }
+
+    @Override
+    public int getLayerCount() {
+        return (int) file.getLong(architecture + ".block_count", 0);
+    }
+
+    @Override
+    public int getHeadCount() {
+        return (int) file.getLong(architecture + ".attention.head_count", 0);
+    }
+
+    @Override
+    public int getKvHeadCount() {
+        // Models without grouped-query attention omit the key and use one KV head per head
+        return (int) file.getLong(architecture + ".attention.head_count_kv", getHeadCount());
+    }
+
+    @Override
+    public float getRopeFreqScaleTrain() {
+        double factor = file.getDouble(architecture + ".rope.scaling.factor", 0.0);
+        if (factor == 0.0) {
+            factor = file.getDouble(architecture + ".rope.scale_linear", 1.0);
+        }
+        return (float) (1.0 / factor);
+    }
+
+    @Override
+    public int getRopeType() {
+        return -1;
+    }
+
+    @Override
+    public String getMetadata(String key) {
+        return file.getString(key);
+    }
+
+    @Override
+    public Set<String> getMetadataKeys() {
+        return file.getMetadataKeys();
+    }
+
+    @Override
+    public String getDescription() {
+        String name = file.getString("general.name");
+        return name != null ? name : architecture;
+    }
+
+    @Override
+    public long getSize() {
+        return file.getFileSize() - file.getDataOffset();
+    }
+
+    @Override
+    public String getChatTemplate() {
+        return file.getString("tokenizer.chat_template");
+    }
+
+    @Override
+    public boolean hasEncoder() {
+        return architecture.equals("t5") || architecture.equals("t5encoder");
+    }
+
+    @Override
+    public boolean hasDecoder() {
+        return !architecture.equals("t5encoder");
+    }
+
+    @Override
+    public int getDecoderStartToken() {
+        return (int) file.getLong(architecture + ".decoder_start_token_id", -1);
+    }
+
+    @Override
+    public boolean isRecurrent() {
+        return RECURRENT_ARCHITECTURES.contains(architecture);
+    }
+}
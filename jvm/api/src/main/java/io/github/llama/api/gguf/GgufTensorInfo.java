@@ -0,0 +1,83 @@
+package io.github.llama.api.gguf;
+
+import java.util.Arrays;
+
+/**
+ * Class describing a tensor in a GGUF file, without its data.
+ */
+public class GgufTensorInfo {
+    private final String name;
+    private final long[] dimensions;
+    private final int type;
+    private final long offset;
+
+    /**
+     * Creates a new tensor description.
+     *
+     * @param name Tensor name
+     * @param dimensions Size of each dimension
+     * @param type ggml type identifier of the tensor data
+     * @param offset Offset of the tensor data relative to the start of the data section
+     */
+    public GgufTensorInfo(String name, long[] dimensions, int type, long offset) {
+        this.name = name;
+        this.dimensions = dimensions.clone();
+        this.type = type;
+        this.offset = offset;
+    }
+
+    /**
+     * Gets the tensor name.
+     *
+     * @return Tensor name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the size of each dimension.
+     *
+     * @return Copy of the dimensions
+     */
+    public long[] getDimensions() {
+        return dimensions.clone();
+    }
+
+    /**
+     * Gets the number of elements of the tensor.
+     *
+     * @return Product of the dimensions
+     */
+    public long getElementCount() {
+        long count = 1;
+        for (long dimension : dimensions) {
+            count *= dimension;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the ggml type identifier of the tensor data.
+     *
+     * @return Type identifier
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Gets the offset of the tensor data relative to the start of the data section.
+     *
+     * @return Offset in bytes
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return "GgufTensorInfo{name='" + name + "', dimensions=" + Arrays.toString(dimensions) +
+                ", type=" + type + ", offset=" + offset + "}";
+    }
+}
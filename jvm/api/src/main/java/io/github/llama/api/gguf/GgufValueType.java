@@ -0,0 +1,51 @@
+package io.github.llama.api.gguf;
+
+/**
+ * Enum representing the type of a GGUF metadata value.
+ */
+public enum GgufValueType {
+    UINT8(1),
+    INT8(1),
+    UINT16(2),
+    INT16(2),
+    UINT32(4),
+    INT32(4),
+    FLOAT32(4),
+    BOOL(1),
+    STRING(-1),
+    ARRAY(-1),
+    UINT64(8),
+    INT64(8),
+    FLOAT64(8);
+
+    private static final GgufValueType[] VALUES = values();
+
+    private final int size;
+
+    GgufValueType(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Gets the size of a value of this type.
+     *
+     * @return Size in bytes, or -1 for variable-length types
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the type for its identifier in the file.
+     *
+     * @param id Type identifier
+     * @return The type
+     * @throws IllegalArgumentException if the identifier is unknown
+     */
+    public static GgufValueType of(int id) {
+        if (id < 0 || id >= VALUES.length) {
+            throw new IllegalArgumentException("Unknown GGUF value type: " + id);
+        }
+        return VALUES[id];
+    }
+}
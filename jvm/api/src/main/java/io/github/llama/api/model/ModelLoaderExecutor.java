@@ -0,0 +1,27 @@
+package io.github.llama.api.model;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor shared by the default {@link ModelManager#loadModelAsync(java.nio.file.Path, ModelParams)}.
+ * It runs every load on its own daemon thread, so that models load in parallel, and reuses threads that
+ * have been idle for less than a minute instead of starting a new one for each load.
+ */
+final class ModelLoaderExecutor {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    static final ExecutorService INSTANCE = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "model-loader-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ModelLoaderExecutor() {
+    }
+}
@@ -3,6 +3,8 @@ package io.github.llama.api.model;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Interface for managing models.
@@ -27,6 +29,62 @@ public interface ModelManager {
      */
     Model loadModel(Path modelPath, ModelParams params) throws IOException;
 
+    /**
+     * Loads a model from a file on a background thread.
+     * <p>
+     * Several models can be loaded in parallel this way; the daemon threads that load them are shared by all
+     * managers and reused between loads. If the returned future is completed before the model
+     * has been loaded, for example by {@link CompletableFuture#cancel(boolean)} or
+     * {@link CompletableFuture#orTimeout(long, java.util.concurrent.TimeUnit)}, the load is cancelled through the
+     * progress listener, and a model that finishes loading anyway is closed.
+     *
+     * @param modelPath Path to the model file
+     * @param params Model parameters
+     * @return A future completed with the loaded model, or exceptionally if it cannot be loaded
+     */
+    default CompletableFuture<Model> loadModelAsync(Path modelPath, ModelParams params) {
+        return loadModelAsync(modelPath, params, ModelLoaderExecutor.INSTANCE);
+    }
+
+    /**
+     * Loads a model from a file with an executor.
+     * <p>
+     * If the returned future is completed before the model has been loaded, the load is cancelled through the
+     * progress listener, and a model that finishes loading anyway is closed.
+     *
+     * @param modelPath Path to the model file
+     * @param params Model parameters
+     * @param executor Executor to load the model on
+     * @return A future completed with the loaded model, or exceptionally if it cannot be loaded
+     */
+    default CompletableFuture<Model> loadModelAsync(Path modelPath, ModelParams params, Executor executor) {
+        CompletableFuture<Model> future = new CompletableFuture<>();
+        ModelParams asyncParams = (params != null ? params : getDefaultModelParams()).copy();
+        ModelParams.ProgressListener listener = asyncParams.getProgressListener();
+        asyncParams.setProgressListener((progress, bytesLoaded, totalBytes) ->
+                !future.isDone() && (listener == null || listener.onProgress(progress, bytesLoaded, totalBytes)));
+
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    Model model = loadModel(modelPath, asyncParams);
+                    if (!future.complete(model)) {
+                        // Nobody will receive the model any more
+                        model.close();
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     /**
      * Loads a model from multiple split files.
      *
@@ -12,6 +12,7 @@ public class ModelParams {
     private int gpuLayerCount = 0;
     private boolean vocabOnly = false;
     private Map<String, String> metadataOverrides = new HashMap<>();
+    private ProgressListener progressListener;
 
     /**
      * Gets whether to use memory mapping.
@@ -103,6 +104,40 @@ public class ModelParams {
         this.metadataOverrides = metadataOverrides;
     }
 
+    /**
+     * Gets the listener notified of the loading progress.
+     *
+     * @return Progress listener, or null if progress is not reported
+     */
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * Sets the listener notified of the loading progress.
+     *
+     * @param progressListener Progress listener, or null to not report progress
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Creates a copy of these parameters.
+     *
+     * @return A copy of these parameters
+     */
+    public ModelParams copy() {
+        ModelParams copy = new ModelParams();
+        copy.setUseMemoryMapping(useMemoryMapping);
+        copy.setUseMemoryLocking(useMemoryLocking);
+        copy.setGpuLayerCount(gpuLayerCount);
+        copy.setVocabOnly(vocabOnly);
+        copy.setMetadataOverrides(metadataOverrides != null ? new HashMap<>(metadataOverrides) : null);
+        copy.setProgressListener(progressListener);
+        return copy;
+    }
+
     /**
      * Creates a new builder for ModelParams.
      *
@@ -174,6 +209,17 @@ public class ModelParams {
             return this;
         }
 
+        /**
+         * Sets the listener notified of the loading progress.
+         *
+         * @param progressListener Progress listener
+         * @return This builder for chaining
+         */
+        public Builder progressListener(ProgressListener progressListener) {
+            params.setProgressListener(progressListener);
+            return this;
+        }
+
         /**
          * Builds the ModelParams.
          *
@@ -183,4 +229,19 @@ public class ModelParams {
             return params;
         }
     }
+
+    /**
+     * Interface for model loading progress listeners.
+     */
+    public interface ProgressListener {
+        /**
+         * Called while the model is loaded.
+         *
+         * @param progress Fraction of the model loaded, between 0 and 1
+         * @param bytesLoaded Approximate number of bytes of the model files loaded
+         * @param totalBytes Total size of the model files in bytes
+         * @return true to continue loading, false to cancel the load
+         */
+        boolean onProgress(float progress, long bytesLoaded, long totalBytes);
+    }
 }
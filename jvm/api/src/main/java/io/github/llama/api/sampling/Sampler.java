@@ -1,5 +1,7 @@
 package io.github.llama.api.sampling;
 
+import io.github.llama.api.context.Context;
+
 /**
  * Interface for sampling tokens from logits.
  */
@@ -12,6 +14,17 @@ public interface Sampler extends AutoCloseable {
      */
     int sample(float[] logits);
 
+    /**
+     * Samples a token from the logits of the last batch processed by a context.
+     * Implementations bound to the context may read the logits in place instead of copying them.
+     *
+     * @param context The context to sample from
+     * @return Sampled token ID
+     */
+    default int sample(Context context) {
+        return sample(context.getLogits());
+    }
+
     /**
      * Closes the sampler and releases resources.
      */
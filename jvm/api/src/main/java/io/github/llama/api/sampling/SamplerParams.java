@@ -1,5 +1,8 @@
 package io.github.llama.api.sampling;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class representing parameters for sampler creation.
  */
@@ -9,6 +12,8 @@ public class SamplerParams {
     private int topK = 40;
     private float repetitionPenalty = 1.1f;
     private int maxTokens = 128;
+    private List<String> stopSequences = new ArrayList<>();
+    private boolean logprobs = false;
 
     /**
      * Gets the temperature.
@@ -100,6 +105,43 @@ public class SamplerParams {
         this.maxTokens = maxTokens;
     }
 
+    /**
+     * Gets the stop sequences. Generation stops as soon as the generated text contains one of them.
+     *
+     * @return Stop sequences
+     */
+    public List<String> getStopSequences() {
+        return stopSequences;
+    }
+
+    /**
+     * Sets the stop sequences.
+     *
+     * @param stopSequences Stop sequences
+     */
+    public void setStopSequences(List<String> stopSequences) {
+        this.stopSequences = stopSequences;
+    }
+
+    /**
+     * Gets whether the log probability of every generated token is computed.
+     * Computing it takes a pass over the logits of the whole vocabulary for each token.
+     *
+     * @return Whether log probabilities are computed
+     */
+    public boolean isLogprobs() {
+        return logprobs;
+    }
+
+    /**
+     * Sets whether the log probability of every generated token is computed.
+     *
+     * @param logprobs Whether log probabilities are computed
+     */
+    public void setLogprobs(boolean logprobs) {
+        this.logprobs = logprobs;
+    }
+
     /**
      * Creates a new builder for SamplerParams.
      *
@@ -170,6 +212,28 @@ public class SamplerParams {
             return this;
         }
 
+        /**
+         * Adds a stop sequence.
+         *
+         * @param stopSequence Stop sequence
+         * @return This builder for chaining
+         */
+        public Builder addStopSequence(String stopSequence) {
+            params.getStopSequences().add(stopSequence);
+            return this;
+        }
+
+        /**
+         * Sets whether log probabilities are computed.
+         *
+         * @param logprobs Whether log probabilities are computed
+         * @return This builder for chaining
+         */
+        public Builder logprobs(boolean logprobs) {
+            params.setLogprobs(logprobs);
+            return this;
+        }
+
         /**
          * Builds the SamplerParams.
          *
@@ -0,0 +1,293 @@
+package io.github.llama.api.tokenization;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Tokenizer} that caches the results of another tokenizer.
+ * <p>
+ * Repeated texts such as system prompts and few-shot prefixes are tokenized once and then served from the
+ * cache. Entries are keyed by the text and the tokenization options and evicted in least-recently-used order
+ * once the cache holds more than a maximum number of entries or a maximum total number of tokens. Callers
+ * always get their own copy of the tokens, so the cached arrays cannot be modified.
+ * <p>
+ * All other operations are passed to the wrapped tokenizer, including batch, streaming and asynchronous
+ * tokenization, which neither read nor fill the cache. Instances are thread-safe if the wrapped tokenizer is.
+ */
+public class CachingTokenizer implements Tokenizer {
+    private static final int ADD_BOS = 1;
+    private static final int ADD_EOS = 2;
+    private static final int DEFAULT_OPTIONS = 4;
+
+    private final Tokenizer delegate;
+    private final int maxEntries;
+    private final long maxTokens;
+    private final LinkedHashMap<Key, int[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedTokens = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Cache key. The text's hash code is cached by {@link String}, and keys compare the full text so that
+     * texts with colliding hashes never share an entry.
+     */
+    private static final class Key {
+        private final String text;
+        private final int options;
+
+        private Key(String text, int options) {
+            this.text = text;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && options == other.options && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.hashCode() + options;
+        }
+    }
+
+    /**
+     * Creates a new caching tokenizer.
+     *
+     * @param delegate The tokenizer to cache the results of
+     * @param maxEntries Maximum number of cached texts
+     * @param maxTokens Maximum total number of cached tokens
+     */
+    public CachingTokenizer(Tokenizer delegate, int maxEntries, long maxTokens) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Tokenizer cannot be null");
+        }
+        if (maxEntries < 1 || maxTokens < 1) {
+            throw new IllegalArgumentException("Cache bounds must be positive");
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.maxTokens = maxTokens;
+    }
+
+    @Override
+    public int[] tokenize(String text) {
+        return cached(text, DEFAULT_OPTIONS, false, false);
+    }
+
+    @Override
+    public int[] tokenize(String text, boolean addBos, boolean addEos) {
+        return cached(text, (addBos ? ADD_BOS : 0) | (addEos ? ADD_EOS : 0), addBos, addEos);
+    }
+
+    /**
+     * Counts tokens from the cache if the text was tokenized with {@link #tokenize(String)}, and with the
+     * wrapped tokenizer otherwise. Counting does not add entries to the cache.
+     */
+    @Override
+    public int countTokens(CharSequence text) {
+        int count = cachedCount(text, DEFAULT_OPTIONS);
+        return count >= 0 ? count : delegate.countTokens(text);
+    }
+
+    /**
+     * Counts tokens from the cache if the text is cached with the same options, and with the wrapped
+     * tokenizer otherwise. Counting does not add entries to the cache.
+     */
+    @Override
+    public int countTokens(CharSequence text, boolean addBos, boolean addEos) {
+        int count = cachedCount(text, (addBos ? ADD_BOS : 0) | (addEos ? ADD_EOS : 0));
+        return count >= 0 ? count : delegate.countTokens(text, addBos, addEos);
+    }
+
+    @Override
+    public CompletableFuture<int[]> tokenizeAsync(String text) {
+        return delegate.tokenizeAsync(text);
+    }
+
+    @Override
+    public CompletableFuture<int[]> tokenizeAsync(String text, boolean addBos, boolean addEos, Executor executor) {
+        return delegate.tokenizeAsync(text, addBos, addEos, executor);
+    }
+
+    @Override
+    public TokenizedBatch tokenizeAll(List<String> texts) {
+        return delegate.tokenizeAll(texts);
+    }
+
+    @Override
+    public TokenizedBatch tokenizeAll(List<String> texts, boolean addBos, boolean addEos) {
+        return delegate.tokenizeAll(texts, addBos, addEos);
+    }
+
+    @Override
+    public void tokenizeStreaming(Iterable<String> texts, int chunkSize, boolean addBos, boolean addEos,
+                                  Consumer<TokenizedBatch> consumer) {
+        delegate.tokenizeStreaming(texts, chunkSize, addBos, addEos, consumer);
+    }
+
+    private int cachedCount(CharSequence text, int options) {
+        if (text == null) {
+            throw new IllegalArgumentException("Text cannot be null");
+        }
+        Key key = new Key(text.toString(), options);
+        synchronized (cache) {
+            int[] tokens = cache.get(key);
+            if (tokens != null) {
+                hitCount.incrementAndGet();
+                return tokens.length;
+            }
+        }
+        return -1;
+    }
+
+    private int[] cached(String text, int options, boolean addBos, boolean addEos) {
+        if (text == null) {
+            throw new IllegalArgumentException("Text cannot be null");
+        }
+        Key key = new Key(text, options);
+        synchronized (cache) {
+            int[] tokens = cache.get(key);
+            if (tokens != null) {
+                hitCount.incrementAndGet();
+                return tokens.clone();
+            }
+        }
+
+        // Tokenize outside the lock; concurrent misses for the same text both tokenize and the last one is kept
+        missCount.incrementAndGet();
+        int[] tokens = (options & DEFAULT_OPTIONS) != 0 ? delegate.tokenize(text) : delegate.tokenize(text, addBos, addEos);
+        if (tokens.length <= maxTokens) {
+            put(key, tokens.clone());
+        }
+        return tokens;
+    }
+
+    private void put(Key key, int[] tokens) {
+        synchronized (cache) {
+            int[] previous = cache.put(key, tokens);
+            if (previous != null) {
+                cachedTokens -= previous.length;
+            }
+            cachedTokens += tokens.length;
+
+            Iterator<Map.Entry<Key, int[]>> eldest = cache.entrySet().iterator();
+            while (cache.size() > maxEntries || cachedTokens > maxTokens) {
+                cachedTokens -= eldest.next().getValue().length;
+                eldest.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from the cache. The counters are kept.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            cachedTokens = 0;
+        }
+    }
+
+    /**
+     * Gets the number of cached texts.
+     *
+     * @return Number of entries
+     */
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Gets the total number of cached tokens.
+     *
+     * @return Number of tokens
+     */
+    public long getCachedTokenCount() {
+        synchronized (cache) {
+            return cachedTokens;
+        }
+    }
+
+    /**
+     * Gets the number of lookups served from the cache.
+     *
+     * @return Hit count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of tokenizations passed to the wrapped tokenizer.
+     *
+     * @return Miss count
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of entries evicted to stay within the bounds.
+     *
+     * @return Eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gets the wrapped tokenizer.
+     *
+     * @return The wrapped tokenizer
+     */
+    public Tokenizer getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String detokenize(int[] tokens) {
+        return delegate.detokenize(tokens);
+    }
+
+    @Override
+    public byte[] getTokenPiece(int tokenId) {
+        return delegate.getTokenPiece(tokenId);
+    }
+
+    @Override
+    public StreamingDetokenizer createStreamingDetokenizer() {
+        return delegate.createStreamingDetokenizer();
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return delegate.getVocabularySize();
+    }
+
+    @Override
+    public int getSpecialToken(SpecialToken token) {
+        return delegate.getSpecialToken(token);
+    }
+
+    @Override
+    public boolean isEndOfGeneration(int tokenId) {
+        return delegate.isEndOfGeneration(tokenId);
+    }
+
+    @Override
+    public String getTokenText(int tokenId) {
+        return delegate.getTokenText(tokenId);
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.llama.api.tokenization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Detokenizes tokens one at a time, for example while they are being generated.
+ * <p>
+ * Each call to {@link #accept(int)} only converts the piece of the new token, so streaming N tokens costs O(N)
+ * instead of detokenizing the whole sequence again for every token. A token may end in the middle of a
+ * multi-byte UTF-8 character; the incomplete bytes are kept until the tokens that complete the character arrive.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class StreamingDetokenizer {
+    private final Tokenizer tokenizer;
+    private byte[] pending = new byte[16];
+    private int pendingLength = 0;
+
+    /**
+     * Creates a new streaming detokenizer.
+     *
+     * @param tokenizer The tokenizer that provides the token pieces
+     */
+    public StreamingDetokenizer(Tokenizer tokenizer) {
+        if (tokenizer == null) {
+            throw new IllegalArgumentException("Tokenizer cannot be null");
+        }
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * Adds a token and returns the text it completes.
+     *
+     * @param tokenId Token ID
+     * @return Newly completed text, empty if the token only holds part of a character
+     */
+    public String accept(int tokenId) {
+        byte[] piece = tokenizer.getTokenPiece(tokenId);
+        if (piece == null || piece.length == 0) {
+            return "";
+        }
+
+        if (pendingLength + piece.length > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + piece.length));
+        }
+        System.arraycopy(piece, 0, pending, pendingLength, piece.length);
+        pendingLength += piece.length;
+
+        int complete = completeLength(pending, pendingLength);
+        if (complete == 0) {
+            return "";
+        }
+        String text = new String(pending, 0, complete, StandardCharsets.UTF_8);
+        System.arraycopy(pending, complete, pending, 0, pendingLength - complete);
+        pendingLength -= complete;
+        return text;
+    }
+
+    /**
+     * Returns the text of the bytes still held back and resets the detokenizer.
+     * Incomplete characters are replaced with U+FFFD.
+     *
+     * @return Remaining text, empty if no bytes are held back
+     */
+    public String flush() {
+        String text = new String(pending, 0, pendingLength, StandardCharsets.UTF_8);
+        pendingLength = 0;
+        return text;
+    }
+
+    /**
+     * Drops the bytes still held back.
+     */
+    public void reset() {
+        pendingLength = 0;
+    }
+
+    /**
+     * Gets the number of bytes held back because they do not form a complete character yet.
+     *
+     * @return Number of bytes
+     */
+    public int getPendingByteCount() {
+        return pendingLength;
+    }
+
+    /**
+     * Gets the length of the longest prefix that does not end in an incomplete UTF-8 sequence.
+     *
+     * @param bytes UTF-8 bytes
+     * @param length Number of bytes
+     * @return Length of the prefix
+     */
+    private static int completeLength(byte[] bytes, int length) {
+        // Find the start of the last sequence; no valid sequence is longer than four bytes
+        int start = length - 1;
+        while (start > 0 && start > length - 4 && (bytes[start] & 0xC0) == 0x80) {
+            start--;
+        }
+
+        int lead = bytes[start] & 0xFF;
+        if (lead < 0xC0 || lead > 0xF7) {
+            // ASCII, or an invalid byte that no later byte can complete
+            return length;
+        }
+        int sequenceLength = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : 2;
+        return start + sequenceLength > length ? start : length;
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.llama.api.tokenization;
+
+import java.util.Arrays;
+
+/**
+ * Class representing the tokens of many texts in a compact form.
+ * The tokens of all texts are stored back to back in one array, and the tokens of text {@code i} are
+ * {@code tokens[offsets[i]]} up to, but not including, {@code tokens[offsets[i + 1]]}.
+ */
+public class TokenizedBatch {
+    private final int[] tokens;
+    private final int[] offsets;
+
+    /**
+     * Creates a new tokenized batch.
+     *
+     * @param tokens Tokens of all texts, back to back
+     * @param offsets Start of the tokens of each text, followed by the total number of tokens
+     */
+    public TokenizedBatch(int[] tokens, int[] offsets) {
+        if (tokens == null || offsets == null || offsets.length == 0 || offsets[offsets.length - 1] != tokens.length) {
+            throw new IllegalArgumentException("Offsets must end with the number of tokens");
+        }
+        this.tokens = tokens;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Creates a tokenized batch from the tokens of each text.
+     *
+     * @param tokensPerText Tokens of each text
+     * @return The tokenized batch
+     */
+    public static TokenizedBatch of(int[][] tokensPerText) {
+        int[] offsets = new int[tokensPerText.length + 1];
+        for (int i = 0; i < tokensPerText.length; i++) {
+            offsets[i + 1] = offsets[i] + tokensPerText[i].length;
+        }
+        int[] tokens = new int[offsets[tokensPerText.length]];
+        for (int i = 0; i < tokensPerText.length; i++) {
+            System.arraycopy(tokensPerText[i], 0, tokens, offsets[i], tokensPerText[i].length);
+        }
+        return new TokenizedBatch(tokens, offsets);
+    }
+
+    /**
+     * Gets the number of texts in the batch.
+     *
+     * @return Number of texts
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Gets the total number of tokens of all texts.
+     *
+     * @return Total number of tokens
+     */
+    public int getTokenCount() {
+        return tokens.length;
+    }
+
+    /**
+     * Gets the number of tokens of a text.
+     *
+     * @param index Index of the text
+     * @return Number of tokens
+     */
+    public int getTokenCount(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Gets a copy of the tokens of a text.
+     *
+     * @param index Index of the text
+     * @return Array of token IDs
+     */
+    public int[] getTokens(int index) {
+        return Arrays.copyOfRange(tokens, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * Gets the tokens of all texts, back to back. The array is not copied and must not be modified.
+     *
+     * @return Array of token IDs
+     */
+    public int[] getFlatTokens() {
+        return tokens;
+    }
+
+    /**
+     * Gets the start of the tokens of each text, followed by the total number of tokens.
+     * The array is not copied and must not be modified.
+     *
+     * @return Array of offsets, one longer than the number of texts
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+}
@@ -1,5 +1,13 @@
 package io.github.llama.api.tokenization;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
 /**
  * Interface for tokenizing and detokenizing text.
  */
@@ -22,6 +30,117 @@ public interface Tokenizer {
      */
     int[] tokenize(String text, boolean addBos, boolean addEos);
 
+    /**
+     * Counts the tokens of text without returning them.
+     *
+     * @param text Text to count the tokens of
+     * @return Number of tokens
+     */
+    default int countTokens(CharSequence text) {
+        return countTokens(text, false, false);
+    }
+
+    /**
+     * Counts the tokens of text with options without returning them.
+     * Implementations should avoid allocating the token array where they can.
+     *
+     * @param text Text to count the tokens of
+     * @param addBos Whether to count a beginning-of-sequence token
+     * @param addEos Whether to count an end-of-sequence token
+     * @return Number of tokens
+     */
+    default int countTokens(CharSequence text, boolean addBos, boolean addEos) {
+        if (text == null) {
+            throw new IllegalArgumentException("Text cannot be null");
+        }
+        return tokenize(text.toString(), addBos, addEos).length;
+    }
+
+    /**
+     * Tokenizes text asynchronously on the common fork-join pool.
+     *
+     * @param text Text to tokenize
+     * @return Future completed with the array of token IDs
+     */
+    default CompletableFuture<int[]> tokenizeAsync(String text) {
+        return CompletableFuture.supplyAsync(() -> tokenize(text), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Tokenizes text asynchronously with options on the given executor.
+     * This allows tokenizing the next request while the previous one is still being decoded.
+     *
+     * @param text Text to tokenize
+     * @param addBos Whether to add a beginning-of-sequence token
+     * @param addEos Whether to add an end-of-sequence token
+     * @param executor Executor that runs the tokenization
+     * @return Future completed with the array of token IDs
+     */
+    default CompletableFuture<int[]> tokenizeAsync(String text, boolean addBos, boolean addEos, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> tokenize(text, addBos, addEos), executor);
+    }
+
+    /**
+     * Tokenizes many texts in one call.
+     *
+     * @param texts Texts to tokenize
+     * @return The tokens of all texts
+     */
+    default TokenizedBatch tokenizeAll(List<String> texts) {
+        return tokenizeAll(texts, false, false);
+    }
+
+    /**
+     * Tokenizes many texts in one call with options.
+     * Implementations may tokenize the texts in parallel; the result keeps the order of the input.
+     *
+     * @param texts Texts to tokenize
+     * @param addBos Whether to add a beginning-of-sequence token to every text
+     * @param addEos Whether to add an end-of-sequence token to every text
+     * @return The tokens of all texts
+     */
+    default TokenizedBatch tokenizeAll(List<String> texts, boolean addBos, boolean addEos) {
+        if (texts == null) {
+            throw new IllegalArgumentException("Texts cannot be null");
+        }
+        int[][] tokensPerText = new int[texts.size()][];
+        for (int i = 0; i < tokensPerText.length; i++) {
+            tokensPerText[i] = tokenize(texts.get(i), addBos, addEos);
+        }
+        return TokenizedBatch.of(tokensPerText);
+    }
+
+    /**
+     * Tokenizes a stream of texts in chunks, so that arbitrarily many texts can be processed in bounded memory.
+     * Each chunk is tokenized with {@link #tokenizeAll(List, boolean, boolean)} and handed to the consumer in order.
+     *
+     * @param texts Texts to tokenize
+     * @param chunkSize Number of texts per chunk
+     * @param addBos Whether to add a beginning-of-sequence token to every text
+     * @param addEos Whether to add an end-of-sequence token to every text
+     * @param consumer Consumer of the tokenized chunks
+     */
+    default void tokenizeStreaming(Iterable<String> texts, int chunkSize, boolean addBos, boolean addEos,
+                                   Consumer<TokenizedBatch> consumer) {
+        if (texts == null || consumer == null) {
+            throw new IllegalArgumentException("Texts and consumer cannot be null");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        List<String> chunk = new ArrayList<>(chunkSize);
+        for (String text : texts) {
+            chunk.add(text);
+            if (chunk.size() == chunkSize) {
+                consumer.accept(tokenizeAll(chunk, addBos, addEos));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            consumer.accept(tokenizeAll(chunk, addBos, addEos));
+        }
+    }
+
     /**
      * Detokenizes an array of token IDs into text.
      *
@@ -30,6 +149,27 @@ public interface Tokenizer {
      */
     String detokenize(int[] tokens);
 
+    /**
+     * Gets the UTF-8 bytes a token contributes to detokenized text.
+     * A piece may hold only part of a multi-byte character.
+     *
+     * @param tokenId Token ID
+     * @return UTF-8 bytes of the token, empty if the token has no text
+     */
+    default byte[] getTokenPiece(int tokenId) {
+        String text = detokenize(new int[]{tokenId});
+        return text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a detokenizer that converts tokens one at a time.
+     *
+     * @return A new streaming detokenizer
+     */
+    default StreamingDetokenizer createStreamingDetokenizer() {
+        return new StreamingDetokenizer(this);
+    }
+
     /**
      * Gets the size of the vocabulary.
      *
@@ -45,6 +185,17 @@ public interface Tokenizer {
      */
     int getSpecialToken(SpecialToken token);
 
+    /**
+     * Checks whether a token ends generation, such as the end-of-sequence token or the end-of-turn token of a
+     * chat model.
+     *
+     * @param tokenId Token ID
+     * @return true if generation should stop at the token
+     */
+    default boolean isEndOfGeneration(int tokenId) {
+        return tokenId == getSpecialToken(SpecialToken.EOS);
+    }
+
     /**
      * Gets the text for a token ID.
      *
@@ -0,0 +1,269 @@
+package io.github.llama.api.context;
+
+import io.github.llama.api.LLM;
+import io.github.llama.api.batch.Batch;
+import io.github.llama.api.batch.BatchResult;
+import io.github.llama.api.model.ModelInfo;
+import io.github.llama.api.sampling.Sampler;
+import io.github.llama.api.sampling.SamplerParams;
+import io.github.llama.api.tokenization.Tokenizer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for {@link ContextPool}.
+ */
+public class ContextPoolTest {
+
+    /**
+     * KV cache that counts how often it is cleared.
+     */
+    private static class CountingKvCache implements KvCache {
+        private int clearCount = 0;
+
+        @Override
+        public void clear() {
+            clearCount++;
+        }
+
+        @Override
+        public boolean remove(int seqId, int p0, int p1) {
+            return true;
+        }
+
+        @Override
+        public void copy(int srcSeqId, int dstSeqId, int p0, int p1) {
+        }
+
+        @Override
+        public void keep(int seqId) {
+        }
+
+        @Override
+        public void shift(int seqId, int p0, int p1, int delta) {
+        }
+
+        @Override
+        public void divide(int seqId, int p0, int p1, int divisor) {
+        }
+
+        @Override
+        public int getMinPosition(int seqId) {
+            return -1;
+        }
+
+        @Override
+        public int getMaxPosition(int seqId) {
+            return -1;
+        }
+
+        @Override
+        public boolean canShift() {
+            return false;
+        }
+
+        @Override
+        public void defrag() {
+        }
+    }
+
+    /**
+     * Context that only tracks whether it was closed.
+     */
+    private static class TestContext implements Context {
+        private final CountingKvCache kvCache = new CountingKvCache();
+        private boolean closed = false;
+
+        @Override
+        public LLM getModel() {
+            return null;
+        }
+
+        @Override
+        public Batch createBatch(int maxTokens) {
+            return null;
+        }
+
+        @Override
+        public BatchResult process(Batch batch) {
+            return BatchResult.success();
+        }
+
+        @Override
+        public float[] getLogits() {
+            return new float[0];
+        }
+
+        @Override
+        public KvCache getKvCache() {
+            return kvCache;
+        }
+
+        @Override
+        public Sampler createSampler(SamplerParams params) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Model that creates test contexts.
+     */
+    private static class TestLLM implements LLM {
+        private TestContext lastContext;
+
+        @Override
+        public ModelInfo getModelInfo() {
+            return null;
+        }
+
+        @Override
+        public Context createContext(ContextParams params) {
+            lastContext = new TestContext();
+            return lastContext;
+        }
+
+        @Override
+        public Tokenizer getTokenizer() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private TestLLM model;
+    private ContextParams params;
+
+    @BeforeEach
+    public void setUp() {
+        model = new TestLLM();
+        params = ContextParams.builder().contextSize(1024).build();
+    }
+
+    @Test
+    public void testReuse() throws InterruptedException {
+        ContextPool pool = new ContextPool(model, 2, 1, TimeUnit.HOURS);
+
+        Context first = pool.borrow(params);
+        TestContext created = model.lastContext;
+        first.close();
+        Context second = pool.borrow(ContextParams.builder().contextSize(1024).build());
+
+        assertEquals(1, pool.getCreatedCount(), "Returned contexts should be reused for equal parameters");
+        assertEquals(1, created.kvCache.clearCount, "The KV cache should be cleared when the context is returned");
+        assertFalse(created.closed, "Returned contexts should stay open");
+        assertEquals(2, pool.getBorrowCount(), "Both borrows should be counted");
+        assertEquals(1.0, pool.getUtilization(), "The only context should be borrowed");
+        assertThrows(IllegalStateException.class, first::getLogits,
+                "Using a context after returning it should throw IllegalStateException");
+        second.close();
+    }
+
+    @Test
+    public void testSeparatePools() throws InterruptedException {
+        ContextPool pool = new ContextPool(model, 1, 1, TimeUnit.HOURS);
+
+        Context first = pool.borrow(params);
+        Context second = pool.borrow(ContextParams.builder().contextSize(2048).build());
+
+        assertEquals(2, pool.getCreatedCount(), "Different parameters should get their own contexts");
+        assertEquals(2, pool.getBorrowedCount(), "Both contexts should be borrowed");
+        first.close();
+        second.close();
+        assertEquals(2, pool.getIdleCount(), "Both contexts should be idle after being returned");
+    }
+
+    @Test
+    public void testBorrowTimeout() throws InterruptedException, TimeoutException {
+        ContextPool pool = new ContextPool(model, 1, 1, TimeUnit.HOURS);
+
+        Context context = pool.borrow(params, 1, TimeUnit.SECONDS);
+        assertThrows(TimeoutException.class, () -> pool.borrow(params, 10, TimeUnit.MILLISECONDS),
+                "Borrowing from an exhausted pool should time out");
+        assertEquals(1, pool.getTimeoutCount(), "The timeout should be counted");
+
+        context.close();
+        pool.borrow(params, 1, TimeUnit.SECONDS).close();
+        assertEquals(1, pool.getCreatedCount(), "The returned context should be borrowed again");
+    }
+
+    @Test
+    public void testIdleEviction() throws InterruptedException {
+        ContextPool pool = new ContextPool(model, 2, 0, TimeUnit.MILLISECONDS);
+
+        pool.borrow(params).close();
+
+        assertTrue(model.lastContext.closed, "Contexts idle longer than the maximum idle time should be closed");
+        assertEquals(1, pool.getEvictionCount(), "The eviction should be counted");
+        assertEquals(0, pool.getIdleCount(), "No context should be idle");
+    }
+
+    @Test
+    public void testPrewarm() throws InterruptedException {
+        ContextPool pool = new ContextPool(model, 3, 1, TimeUnit.HOURS);
+
+        assertEquals(2, pool.prewarm(params, 2), "Two contexts should be created");
+        assertEquals(0, pool.prewarm(params, 2), "Enough contexts should already exist");
+        assertEquals(1, pool.prewarm(params, 5), "No more than the maximum number of contexts should be created");
+
+        pool.borrow(params);
+        assertEquals(3, pool.getCreatedCount(), "Borrowing should use a prewarmed context");
+    }
+
+    @Test
+    public void testClose() throws InterruptedException {
+        ContextPool pool = new ContextPool(model, 2, 1, TimeUnit.HOURS);
+        pool.prewarm(params, 1);
+        TestContext idle = model.lastContext;
+        Context borrowed = pool.borrow(ContextParams.builder().contextSize(2048).build());
+
+        pool.close();
+        assertTrue(idle.closed, "Idle contexts should be closed with the pool");
+        assertFalse(model.lastContext.closed, "Borrowed contexts should stay open until they are returned");
+
+        borrowed.close();
+        assertTrue(model.lastContext.closed, "Contexts returned to a closed pool should be closed");
+        assertThrows(IllegalStateException.class, () -> pool.borrow(params),
+                "Borrowing from a closed pool should throw IllegalStateException");
+    }
+
+    @Test
+    public void testCloseWhileWaiting() throws InterruptedException {
+        ContextPool pool = new ContextPool(model, 1, 1, TimeUnit.HOURS);
+        Context borrowed = pool.borrow(params);
+        TestContext created = model.lastContext;
+
+        CompletableFuture<Context> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow(params, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException | TimeoutException e) {
+                throw new CompletionException(e);
+            }
+        });
+        // Give the waiting thread time to block on the permit
+        Thread.sleep(100);
+        pool.close();
+        borrowed.close();
+
+        CompletionException e = assertThrows(CompletionException.class, waiting::join,
+                "A borrower waiting while the pool is closed should fail");
+        assertTrue(e.getCause() instanceof IllegalStateException,
+                "The failure should be an IllegalStateException");
+        assertTrue(created.closed, "The returned context should not be handed to the waiting borrower");
+        assertEquals(1, pool.getBorrowCount(), "Only the first borrow should be counted");
+        assertEquals(0, pool.getIdleCount(), "No context should be idle");
+    }
+}
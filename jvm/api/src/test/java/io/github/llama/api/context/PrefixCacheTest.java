@@ -0,0 +1,190 @@
+package io.github.llama.api.context;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for {@link PrefixCache}.
+ */
+public class PrefixCacheTest {
+
+    /**
+     * KV cache that only tracks the number of tokens of each sequence.
+     */
+    private static class FakeKvCache implements KvCache {
+        private final Map<Integer, Integer> lengths = new HashMap<>();
+        private int copyCount = 0;
+
+        void fill(int seqId, int length) {
+            lengths.put(seqId, length);
+        }
+
+        int length(int seqId) {
+            return lengths.getOrDefault(seqId, 0);
+        }
+
+        @Override
+        public void clear() {
+            lengths.clear();
+        }
+
+        @Override
+        public boolean remove(int seqId, int p0, int p1) {
+            lengths.remove(seqId);
+            return true;
+        }
+
+        @Override
+        public void copy(int srcSeqId, int dstSeqId, int p0, int p1) {
+            copyCount++;
+            int length = length(srcSeqId);
+            lengths.put(dstSeqId, p1 < 0 ? length : Math.min(p1, length));
+        }
+
+        @Override
+        public void keep(int seqId) {
+            lengths.keySet().removeIf(id -> id != seqId);
+        }
+
+        @Override
+        public void shift(int seqId, int p0, int p1, int delta) {
+        }
+
+        @Override
+        public void divide(int seqId, int p0, int p1, int divisor) {
+        }
+
+        @Override
+        public int getMinPosition(int seqId) {
+            return lengths.containsKey(seqId) ? 0 : -1;
+        }
+
+        @Override
+        public int getMaxPosition(int seqId) {
+            return length(seqId) - 1;
+        }
+
+        @Override
+        public boolean canShift() {
+            return true;
+        }
+
+        @Override
+        public void defrag() {
+        }
+    }
+
+    private FakeKvCache kvCache;
+    private PrefixCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        kvCache = new FakeKvCache();
+        cache = new PrefixCache(kvCache, new int[] {10, 11}, 100);
+    }
+
+    private void evaluate(int seqId, int[] tokens) {
+        kvCache.fill(seqId, tokens.length);
+        cache.store(tokens, seqId);
+        kvCache.remove(seqId);
+    }
+
+    @Test
+    public void testRestoreSharedPrefix() {
+        evaluate(0, new int[] {1, 2, 3, 4, 5});
+
+        int reused = cache.restore(new int[] {1, 2, 3, 9, 9, 9}, 1);
+
+        assertEquals(3, reused, "The shared prefix should be reused");
+        assertEquals(3, kvCache.length(1), "The prefix should be copied into the request's sequence");
+        assertEquals(1, cache.getHitCount(), "The lookup should be a hit");
+        assertEquals(3, cache.getReusedTokenCount(), "Reused tokens should be counted");
+        assertEquals(0.5, cache.getReusedTokenRate(), "Half of the prompt tokens should be reused");
+    }
+
+    @Test
+    public void testRestoreLeavesLastToken() {
+        evaluate(0, new int[] {1, 2, 3});
+
+        int reused = cache.restore(new int[] {1, 2, 3}, 1);
+
+        assertEquals(2, reused, "The last prompt token should be left to evaluate");
+    }
+
+    @Test
+    public void testMiss() {
+        evaluate(0, new int[] {1, 2, 3});
+
+        assertEquals(0, cache.restore(new int[] {7, 8, 9}, 1), "Unrelated prompts should not reuse anything");
+        assertEquals(0, kvCache.length(1), "Nothing should be copied on a miss");
+        assertEquals(1, cache.getLookupCount(), "The lookup should be counted");
+        assertEquals(0.0, cache.getHitRate(), "The hit rate should be 0");
+    }
+
+    @Test
+    public void testBranches() {
+        evaluate(0, new int[] {1, 2, 3, 4});
+        evaluate(0, new int[] {1, 2, 5, 6});
+
+        assertEquals(2, cache.getSize(), "Both branches should be cached");
+        assertEquals(3, cache.restore(new int[] {1, 2, 5, 7}, 1), "The second branch should be found");
+        assertEquals(4, cache.restore(new int[] {1, 2, 3, 4, 8}, 2), "The first branch should be found");
+    }
+
+    @Test
+    public void testStoreExtendsPrefix() {
+        evaluate(0, new int[] {1, 2});
+        evaluate(0, new int[] {1, 2, 3, 4});
+
+        assertEquals(1, cache.getSize(), "An extended sequence should replace its prefix");
+        assertEquals(4, cache.getCachedTokenCount(), "Only the longer sequence should be counted");
+        assertFalse(cache.store(new int[] {1, 2, 3}, 0), "Prefixes of cached sequences should not be stored again");
+        assertEquals(0, cache.getEvictionCount(), "Replacing a prefix is not an eviction");
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        evaluate(0, new int[] {1, 1, 1});
+        evaluate(0, new int[] {2, 2, 2});
+
+        // Use the first sequence so the second one is the least recently used
+        cache.restore(new int[] {1, 1, 1, 1}, 1);
+        evaluate(0, new int[] {3, 3, 3});
+
+        assertEquals(2, cache.getSize(), "Only the reserved sequences should be used");
+        assertEquals(1, cache.getEvictionCount(), "One sequence should be evicted");
+        assertEquals(0, cache.restore(new int[] {2, 2, 2, 2}, 2), "The least recently used sequence should be evicted");
+        assertEquals(3, cache.restore(new int[] {1, 1, 1, 1}, 3), "The recently used sequence should be kept");
+    }
+
+    @Test
+    public void testTokenLimit() {
+        PrefixCache small = new PrefixCache(kvCache, new int[] {10, 11, 12}, 5);
+        kvCache.fill(0, 3);
+        small.store(new int[] {1, 1, 1}, 0);
+        small.store(new int[] {2, 2, 2}, 0);
+
+        assertEquals(1, small.getSize(), "The oldest sequence should be evicted to stay within the token limit");
+        assertEquals(3, small.getCachedTokenCount(), "Cached tokens should stay within the limit");
+        assertFalse(small.store(new int[] {1, 2, 3, 4, 5, 6}, 0), "Sequences over the limit should not be cached");
+    }
+
+    @Test
+    public void testEvictAndClear() {
+        evaluate(0, new int[] {1, 2, 3});
+        evaluate(0, new int[] {4, 5, 6});
+
+        assertTrue(cache.evictLeastRecentlyUsed(), "A sequence should be evicted");
+        assertEquals(0, kvCache.length(10), "The KV cells of the evicted sequence should be freed");
+
+        cache.clear();
+        assertEquals(0, cache.getSize(), "The cache should be empty");
+        assertFalse(cache.evictLeastRecentlyUsed(), "Nothing should be evicted from an empty cache");
+        assertEquals(0, kvCache.length(11), "The KV cells of all sequences should be freed");
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.llama.api.context;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the default methods of {@link SessionState}.
+ */
+public class SessionStateTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Session state that keeps the state of each sequence in memory.
+     */
+    private static class TestSessionState implements SessionState {
+        private final Map<Integer, byte[]> states = new HashMap<>();
+
+        @Override
+        public long getSize(int seqId) {
+            return states.getOrDefault(seqId, new byte[0]).length;
+        }
+
+        @Override
+        public long save(int seqId, ByteBuffer buffer) {
+            assertTrue(buffer.isDirect(), "States should be saved into direct buffers");
+            byte[] state = states.getOrDefault(seqId, new byte[0]);
+            buffer.put(state);
+            return state.length;
+        }
+
+        @Override
+        public long restore(ByteBuffer buffer, int seqId) {
+            assertTrue(buffer.isDirect(), "States should be restored from direct buffers");
+            byte[] state = new byte[buffer.remaining()];
+            buffer.get(state);
+            states.put(seqId, state);
+            return state.length;
+        }
+    }
+
+    @Test
+    public void testSaveAndRestoreFile() throws IOException {
+        TestSessionState sessionState = new TestSessionState();
+        byte[] state = {1, 2, 3, 4, 5, 6, 7, 8};
+        sessionState.states.put(0, state);
+        Path file = tempDir.resolve("session.bin");
+
+        assertEquals(8, sessionState.save(0, file), "The whole state should be written");
+        assertEquals(8, Files.size(file), "The file should be as large as the state");
+
+        assertEquals(8, sessionState.restore(file, 3), "The whole state should be read");
+        assertTrue(Arrays.equals(state, sessionState.states.get(3)), "The restored state should match");
+    }
+
+    @Test
+    public void testSaveReplacesFile() throws IOException {
+        TestSessionState sessionState = new TestSessionState();
+        sessionState.states.put(0, new byte[] {1, 2});
+        Path file = Files.write(tempDir.resolve("session.bin"), new byte[64]);
+
+        sessionState.save(0, file);
+
+        assertEquals(2, Files.size(file), "Saving should replace the contents of the file");
+    }
+}
@@ -0,0 +1,529 @@
+package io.github.llama.api.generation;
+
+import io.github.llama.api.LLM;
+import io.github.llama.api.batch.Batch;
+import io.github.llama.api.batch.BatchResult;
+import io.github.llama.api.context.Context;
+import io.github.llama.api.context.ContextParams;
+import io.github.llama.api.context.KvCache;
+import io.github.llama.api.model.ModelInfo;
+import io.github.llama.api.sampling.Sampler;
+import io.github.llama.api.sampling.SamplerParams;
+import io.github.llama.api.tokenization.SpecialToken;
+import io.github.llama.api.tokenization.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for {@link Generator}.
+ */
+public class GeneratorTest {
+
+    private static final int EOS = 2;
+    private static final int EOT = 3;
+
+    private static final Map<Integer, String> TEXTS = Map.of(
+            10, "Hel",
+            11, "lo",
+            12, " wor",
+            13, "ld",
+            14, "!",
+            17, "ld.\nUser:");
+
+    /**
+     * Tokens whose pieces split the euro sign, which is three bytes in UTF-8.
+     */
+    private static final Map<Integer, byte[]> SPLIT_PIECES = Map.of(
+            15, new byte[]{(byte) 0xE2, (byte) 0x82},
+            16, new byte[]{(byte) 0xAC});
+
+    /**
+     * Context that samples a scripted sequence of tokens.
+     */
+    private static class ScriptedContext implements Context {
+        private final int[] script;
+        private final ScriptedModel model;
+        private final PositionKvCache kvCache = new PositionKvCache();
+        private int processed = 0;
+        private float[] logits = new float[32];
+
+        ScriptedContext(int... script) {
+            this.script = script;
+            this.model = new ScriptedModel();
+        }
+
+        @Override
+        public LLM getModel() {
+            return model;
+        }
+
+        @Override
+        public Batch createBatch(int maxTokens) {
+            return new CountingBatch(maxTokens);
+        }
+
+        @Override
+        public BatchResult process(Batch batch) {
+            processed++;
+            return BatchResult.success();
+        }
+
+        @Override
+        public float[] getLogits() {
+            return logits;
+        }
+
+        @Override
+        public KvCache getKvCache() {
+            return kvCache;
+        }
+
+        @Override
+        public Sampler createSampler(SamplerParams params) {
+            return new Sampler() {
+                private int next = 0;
+
+                @Override
+                public int sample(float[] logits) {
+                    return script[next++];
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * KV cache that only reports the highest position of a sequence.
+     */
+    private static class PositionKvCache implements KvCache {
+        private int maxPosition = -1;
+
+        @Override
+        public void clear() {
+            maxPosition = -1;
+        }
+
+        @Override
+        public boolean remove(int seqId, int p0, int p1) {
+            return true;
+        }
+
+        @Override
+        public void copy(int srcSeqId, int dstSeqId, int p0, int p1) {
+        }
+
+        @Override
+        public void keep(int seqId) {
+        }
+
+        @Override
+        public void shift(int seqId, int p0, int p1, int delta) {
+        }
+
+        @Override
+        public void divide(int seqId, int p0, int p1, int divisor) {
+        }
+
+        @Override
+        public int getMinPosition(int seqId) {
+            return maxPosition < 0 ? -1 : 0;
+        }
+
+        @Override
+        public int getMaxPosition(int seqId) {
+            return maxPosition;
+        }
+
+        @Override
+        public boolean canShift() {
+            return false;
+        }
+
+        @Override
+        public void defrag() {
+        }
+    }
+
+    private static class ScriptedModel implements LLM {
+        private boolean lastAddBos;
+
+        @Override
+        public ModelInfo getModelInfo() {
+            return null;
+        }
+
+        @Override
+        public Context createContext(ContextParams params) {
+            return null;
+        }
+
+        @Override
+        public Tokenizer getTokenizer() {
+            return new Tokenizer() {
+                @Override
+                public int[] tokenize(String text) {
+                    return tokenize(text, false, false);
+                }
+
+                @Override
+                public int[] tokenize(String text, boolean addBos, boolean addEos) {
+                    lastAddBos = addBos;
+                    return addBos ? new int[]{1, 10} : new int[]{10};
+                }
+
+                @Override
+                public String detokenize(int[] tokens) {
+                    StringBuilder builder = new StringBuilder();
+                    for (int token : tokens) {
+                        builder.append(TEXTS.getOrDefault(token, ""));
+                    }
+                    return builder.toString();
+                }
+
+                @Override
+                public byte[] getTokenPiece(int tokenId) {
+                    return SPLIT_PIECES.containsKey(tokenId) ? SPLIT_PIECES.get(tokenId) : Tokenizer.super.getTokenPiece(tokenId);
+                }
+
+                @Override
+                public int getVocabularySize() {
+                    return 32;
+                }
+
+                @Override
+                public int getSpecialToken(SpecialToken token) {
+                    return token == SpecialToken.EOS ? EOS : 1;
+                }
+
+                @Override
+                public boolean isEndOfGeneration(int tokenId) {
+                    return tokenId == EOS || tokenId == EOT;
+                }
+
+                @Override
+                public String getTokenText(int tokenId) {
+                    return TEXTS.get(tokenId);
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class CountingBatch implements Batch {
+        private final int maxTokenCount;
+        private int tokenCount = 0;
+
+        CountingBatch(int maxTokenCount) {
+            this.maxTokenCount = maxTokenCount;
+        }
+
+        @Override
+        public Batch addToken(int tokenId) {
+            tokenCount++;
+            return this;
+        }
+
+        @Override
+        public Batch addTokens(int[] tokenIds) {
+            tokenCount += tokenIds.length;
+            return this;
+        }
+
+        @Override
+        public Batch add(int tokenId, int position, int[] seqIds, boolean wantLogits) {
+            tokenCount++;
+            return this;
+        }
+
+        @Override
+        public int getTokenCount() {
+            return tokenCount;
+        }
+
+        @Override
+        public int getMaxTokenCount() {
+            return maxTokenCount;
+        }
+
+        @Override
+        public Batch clear() {
+            tokenCount = 0;
+            return this;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Subscriber that records what it receives and requests tokens manually.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<GeneratedToken> {
+        private final List<GeneratedToken> tokens = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed = false;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(GeneratedToken item) {
+            tokens.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        String text() {
+            StringBuilder builder = new StringBuilder();
+            tokens.forEach(token -> builder.append(token.getText()));
+            return builder.toString();
+        }
+    }
+
+    private static RecordingSubscriber subscribe(Generator generator, SamplerParams params) {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        generator.generate("Hello", params).subscribe(subscriber);
+        return subscriber;
+    }
+
+    @Test
+    public void testDecodingFollowsDemand() {
+        ScriptedContext context = new ScriptedContext(10, 11, 12, 13, 14);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder().maxTokens(10).build());
+
+        assertEquals(0, context.processed, "Nothing should be decoded before tokens are requested");
+
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.tokens.size(), "Two tokens should be delivered");
+        assertEquals(2, context.processed, "Only the requested tokens should be decoded");
+        assertEquals("Hello", subscriber.text(), "Tokens should carry their text pieces");
+        assertEquals(1, subscriber.tokens.get(1).getIndex(), "Tokens should be indexed in generation order");
+
+        subscriber.subscription.request(1);
+        assertEquals(3, subscriber.tokens.size(), "One more token should be delivered");
+        assertFalse(subscriber.completed, "Generation should not be complete yet");
+    }
+
+    @Test
+    public void testStopsAtMaxTokens() {
+        ScriptedContext context = new ScriptedContext(10, 11, 12, 13, 14);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder().maxTokens(3).build());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(3, subscriber.tokens.size(), "Generation should stop after maxTokens");
+        assertTrue(subscriber.completed, "Generation should complete");
+        assertNull(subscriber.error, "Generation should not fail");
+    }
+
+    @Test
+    public void testStopsAtEndOfSequence() {
+        ScriptedContext context = new ScriptedContext(10, 11, EOS, 13);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder().maxTokens(10).build());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals("Hello", subscriber.text(), "The end-of-sequence token should not be emitted");
+        assertTrue(subscriber.completed, "Generation should complete at the end-of-sequence token");
+    }
+
+    @Test
+    public void testStopsAtEndOfTurn() {
+        ScriptedContext context = new ScriptedContext(10, 11, EOT, 13);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder().maxTokens(10).build());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals("Hello", subscriber.text(), "The end-of-turn token should not be emitted");
+        assertEquals(3, context.processed, "Generation should stop at the end-of-turn token");
+        assertTrue(subscriber.completed, "Generation should complete at the end-of-turn token");
+    }
+
+    @Test
+    public void testEndOfSequenceFlushesIncompleteCharacter() {
+        ScriptedContext context = new ScriptedContext(10, 15, EOS);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder().maxTokens(10).build());
+
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.tokens.size(), "The token ending inside a character should be held back");
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        String rest = new String(SPLIT_PIECES.get(15), StandardCharsets.UTF_8);
+        assertEquals(2, subscriber.tokens.size(), "The held back token should be emitted");
+        assertEquals(rest, subscriber.tokens.get(1).getText(), "The incomplete bytes should be flushed into the last token");
+        assertTrue(subscriber.completed, "Generation should complete at the end-of-sequence token");
+    }
+
+    @Test
+    public void testStopsAtStopSequence() {
+        ScriptedContext context = new ScriptedContext(10, 11, 12, 13, 14);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder()
+                .maxTokens(10)
+                .addStopSequence(" world")
+                .build());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals("Hello", subscriber.text(), "Text before the stop sequence should be emitted, the rest dropped");
+        assertEquals(4, context.processed, "Generation should stop once the stop sequence is complete");
+        assertTrue(subscriber.completed, "Generation should complete at the stop sequence");
+    }
+
+    @Test
+    public void testHeldBackTokensAreReleased() {
+        ScriptedContext context = new ScriptedContext(10, 11, 12, 14);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder()
+                .maxTokens(4)
+                .addStopSequence(" world")
+                .build());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals("Hello wor!", subscriber.text(), "Tokens that did not form a stop sequence should be emitted");
+        assertTrue(subscriber.completed, "Generation should complete");
+    }
+
+    @Test
+    public void testSplitCharacter() {
+        ScriptedContext context = new ScriptedContext(10, 15, 16, 14);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder().maxTokens(4).build());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals("", subscriber.tokens.get(1).getText(), "A token ending inside a character should have no text yet");
+        assertEquals("\u20AC", subscriber.tokens.get(2).getText(), "The token completing a character should carry it");
+        assertEquals("Hel\u20AC!", subscriber.text(), "The text should be decoded across tokens");
+    }
+
+    @Test
+    public void testCancel() {
+        ScriptedContext context = new ScriptedContext(10, 11, 12, 13, 14);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder().maxTokens(10).build());
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(1);
+
+        assertEquals(1, subscriber.tokens.size(), "No tokens should be delivered after cancel");
+        assertEquals(1, context.processed, "Nothing should be decoded after cancel");
+
+        // The context is free again for the next generation
+        RecordingSubscriber next = subscribe(generator, SamplerParams.builder().maxTokens(1).build());
+        next.subscription.request(1);
+        assertTrue(next.completed, "A new generation should run after the previous one was cancelled");
+    }
+
+    @Test
+    public void testInvalidRequest() {
+        ScriptedContext context = new ScriptedContext(10);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, new SamplerParams());
+
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException, "Non-positive requests should signal an error");
+    }
+
+    @Test
+    public void testStopSequenceInsideToken() {
+        ScriptedContext context = new ScriptedContext(10, 11, 12, 17, 14);
+        Generator generator = new Generator(context, Runnable::run);
+        RecordingSubscriber subscriber = subscribe(generator, SamplerParams.builder()
+                .maxTokens(10)
+                .addStopSequence("\nUser:")
+                .build());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals("Hello world.", subscriber.text(), "Text before the stop sequence in the same token should be emitted");
+        assertEquals("ld.", subscriber.tokens.get(3).getText(), "The token should be cut where the stop sequence starts");
+        assertTrue(subscriber.completed, "Generation should complete at the stop sequence");
+    }
+
+    @Test
+    public void testBeginningOfSequenceOnlyForEmptySequence() {
+        ScriptedContext context = new ScriptedContext(10, 11);
+        Generator generator = new Generator(context, Runnable::run);
+
+        subscribe(generator, SamplerParams.builder().maxTokens(1).build()).subscription.request(1);
+        assertTrue(context.model.lastAddBos, "The first turn should start with a beginning-of-sequence token");
+
+        context.kvCache.maxPosition = 2;
+        subscribe(generator, SamplerParams.builder().maxTokens(1).build()).subscription.request(1);
+        assertFalse(context.model.lastAddBos, "Later turns should not repeat the beginning-of-sequence token");
+    }
+
+    @Test
+    public void testOneGenerationPerContext() {
+        ScriptedContext context = new ScriptedContext(10, 11, 12, 13);
+        RecordingSubscriber first = subscribe(new Generator(context, Runnable::run),
+                SamplerParams.builder().maxTokens(10).build());
+        first.subscription.request(1);
+
+        RecordingSubscriber second = subscribe(new Generator(context, Runnable::run),
+                SamplerParams.builder().maxTokens(10).build());
+        second.subscription.request(1);
+
+        assertTrue(second.error instanceof IllegalStateException,
+                "A second generator should not run on a context that is generating");
+        first.subscription.cancel();
+        RecordingSubscriber third = subscribe(new Generator(context, Runnable::run),
+                SamplerParams.builder().maxTokens(1).build());
+        third.subscription.request(1);
+        assertTrue(third.completed, "The context should be free once the generation is cancelled");
+    }
+
+    @Test
+    public void testLogprobsOnlyWhenRequested() {
+        ScriptedContext context = new ScriptedContext(10, 11);
+        context.logits[10] = 1.0f;
+        Generator generator = new Generator(context, Runnable::run);
+
+        RecordingSubscriber plain = subscribe(generator, SamplerParams.builder().maxTokens(1).build());
+        plain.subscription.request(1);
+        assertTrue(Float.isNaN(plain.tokens.get(0).getLogprob()), "Log probabilities should not be computed by default");
+
+        RecordingSubscriber withLogprobs = subscribe(generator, SamplerParams.builder().maxTokens(1).logprobs(true).build());
+        withLogprobs.subscription.request(1);
+        float expected = (float) (1.0 - Math.log(31 + Math.E));
+        assertEquals(expected, withLogprobs.tokens.get(0).getLogprob(), 1e-5f, "Log probabilities should be computed on request");
+    }
+}
@@ -0,0 +1,170 @@
+package io.github.llama.api.gguf;
+
+import io.github.llama.api.model.ModelInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for {@link GgufFile} and {@link GgufModelInfo}.
+ */
+public class GgufFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Writes GGUF files in little-endian byte order.
+     */
+    private static class GgufWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        GgufWriter header(int version, long tensorCount, long metadataCount) {
+            return u32(GgufFile.MAGIC).u32(version).u64(tensorCount).u64(metadataCount);
+        }
+
+        GgufWriter u32(int value) {
+            return bytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+        }
+
+        GgufWriter u64(long value) {
+            return bytes(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value).array());
+        }
+
+        GgufWriter f32(float value) {
+            return bytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(value).array());
+        }
+
+        GgufWriter string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            return u64(bytes.length).bytes(bytes);
+        }
+
+        GgufWriter key(String key, GgufValueType type) {
+            return string(key).u32(type.ordinal());
+        }
+
+        GgufWriter bytes(byte[] bytes) {
+            out.writeBytes(bytes);
+            return this;
+        }
+
+        GgufWriter pad(int alignment) {
+            while (out.size() % alignment != 0) {
+                out.write(0);
+            }
+            return this;
+        }
+
+        Path write(Path path) throws IOException {
+            return Files.write(path, out.toByteArray());
+        }
+    }
+
+    private Path writeModel() throws IOException {
+        return new GgufWriter()
+                .header(3, 2, 7)
+                .key("general.architecture", GgufValueType.STRING).string("llama")
+                .key("general.name", GgufValueType.STRING).string("Tiny Llama")
+                .key("llama.context_length", GgufValueType.UINT32).u32(2048)
+                .key("llama.embedding_length", GgufValueType.UINT32).u32(64)
+                .key("llama.attention.head_count", GgufValueType.UINT32).u32(4)
+                .key("llama.rope.scaling.factor", GgufValueType.FLOAT32).f32(2.0f)
+                .key("tokenizer.ggml.tokens", GgufValueType.ARRAY).u32(GgufValueType.STRING.ordinal()).u64(3)
+                .string("<s>").string("a").string("b")
+                // Tensor descriptions: name, dimension count, dimensions, type, offset
+                .string("token_embd.weight").u32(2).u64(64).u64(3).u32(0).u64(0)
+                .string("output_norm.weight").u32(1).u64(64).u32(0).u64(768)
+                .pad(32)
+                .bytes(new byte[1024])
+                .write(tempDir.resolve("tiny.gguf"));
+    }
+
+    @Test
+    public void testHeader() throws IOException {
+        GgufFile file = GgufFile.open(writeModel());
+
+        assertEquals(3, file.getVersion(), "Version should match");
+        assertEquals(2, file.getTensorCount(), "Tensor count should match");
+        assertEquals(7, file.getMetadataCount(), "Metadata count should match");
+    }
+
+    @Test
+    public void testMetadata() throws IOException {
+        GgufFile file = GgufFile.open(writeModel());
+
+        assertEquals("llama", file.getValue("general.architecture"), "String values should be decoded");
+        assertEquals(2048L, file.getValue("llama.context_length"), "Unsigned 32-bit values should be longs");
+        assertEquals(GgufValueType.FLOAT32, file.getType("llama.rope.scaling.factor"), "Value type should match");
+        assertEquals(List.of("<s>", "a", "b"), file.getValue("tokenizer.ggml.tokens"), "Arrays should be decoded");
+        assertEquals("[<s>, a, b]", file.getString("tokenizer.ggml.tokens"), "Arrays should be formatted");
+        assertNull(file.getValue("missing"), "Missing keys should return null");
+        assertEquals(7, file.getMetadataKeys().size(), "All keys should be indexed");
+    }
+
+    @Test
+    public void testTensors() throws IOException {
+        GgufFile file = GgufFile.open(writeModel());
+
+        List<GgufTensorInfo> tensors = file.getTensors();
+        assertEquals(2, tensors.size(), "All tensors should be described");
+        assertEquals("token_embd.weight", tensors.get(0).getName(), "Tensor name should match");
+        assertEquals(192, tensors.get(0).getElementCount(), "Element count should be the product of the dimensions");
+        assertEquals(768, tensors.get(1).getOffset(), "Tensor offset should match");
+        assertEquals(0, file.getDataOffset() % 32, "Data section should be aligned");
+    }
+
+    @Test
+    public void testModelInfo() throws IOException {
+        ModelInfo info = GgufFile.open(writeModel()).getModelInfo();
+
+        assertEquals(2048, info.getContextSize(), "Context size should come from the architecture keys");
+        assertEquals(64, info.getEmbeddingSize(), "Embedding size should match");
+        assertEquals(4, info.getHeadCount(), "Head count should match");
+        assertEquals(4, info.getKvHeadCount(), "KV head count should default to the head count");
+        assertEquals(0.5f, info.getRopeFreqScaleTrain(), "RoPE frequency scale should be the inverse scaling factor");
+        assertEquals(256, info.getParameterCount(), "Parameter count should be summed from the tensors");
+        assertEquals(1024, info.getSize(), "Size should be the size of the data section");
+        assertEquals("Tiny Llama", info.getDescription(), "Description should be the model name");
+        assertEquals("llama", info.getMetadata("general.architecture"), "Metadata should be readable");
+        assertTrue(info.hasDecoder(), "Llama models should have a decoder");
+        assertFalse(info.isRecurrent(), "Llama models should not be recurrent");
+    }
+
+    @Test
+    public void testIsGguf() throws IOException {
+        Path model = writeModel();
+        Path text = Files.writeString(tempDir.resolve("fake.gguf"), "This is not a model");
+        Path empty = Files.createFile(tempDir.resolve("empty.gguf"));
+
+        assertTrue(GgufFile.isGguf(model), "Files with the magic bytes should be detected");
+        assertFalse(GgufFile.isGguf(text), "Files without the magic bytes should be rejected");
+        assertFalse(GgufFile.isGguf(empty), "Empty files should be rejected");
+        assertFalse(GgufFile.isGguf(tempDir.resolve("missing.gguf")), "Missing files should be rejected");
+        assertThrows(IOException.class, () -> GgufFile.open(text), "Opening a non-GGUF file should throw IOException");
+    }
+
+    @Test
+    public void testMalformedMetadata() throws IOException {
+        Path truncated = new GgufWriter()
+                .header(3, 0, 2)
+                .key("general.architecture", GgufValueType.STRING).string("llama")
+                .write(tempDir.resolve("truncated.gguf"));
+
+        // Opening only reads the header, so the truncated metadata is noticed on first access
+        GgufFile file = GgufFile.open(truncated);
+        assertThrows(UncheckedIOException.class, file::getMetadataKeys,
+                "Truncated metadata should throw UncheckedIOException");
+    }
+}
@@ -9,6 +9,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Test class for the ModelManager interface.
@@ -63,6 +69,31 @@ public class ModelManagerTest {
         }
     }
 
+    /**
+     * Test class that reports loading progress until the load is cancelled.
+     */
+    private static class ProgressModelManager extends TestModelManager {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch cancelled = new CountDownLatch(1);
+
+        @Override
+        public Model loadModel(Path modelPath, ModelParams params) throws IOException {
+            started.countDown();
+            for (int i = 0; i < 1000; i++) {
+                if (!params.getProgressListener().onProgress(i / 1000.0f, i, 1000)) {
+                    cancelled.countDown();
+                    throw new IOException("Model loading was cancelled");
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted", e);
+                }
+            }
+            return super.loadModel(modelPath, params);
+        }
+    }
+
     @Test
     public void testGetDefaultModelParams() {
         ModelManager manager = new TestModelManager();
@@ -175,4 +206,67 @@ public class ModelManagerTest {
             manager.quantizeModel(inputPath, null, params);
         }, "Quantizing model with null output path should throw IOException");
     }
+
+    @Test
+    public void testLoadModelAsync() {
+        ModelManager manager = new TestModelManager();
+
+        Model model = manager.loadModelAsync(Paths.get("test.gguf"), new ModelParams()).join();
+        assertNotNull(model, "Loaded model should not be null");
+    }
+
+    @Test
+    public void testLoadModelAsyncOnLoaderThreads() {
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        ModelManager manager = new TestModelManager() {
+            @Override
+            public Model loadModel(Path modelPath, ModelParams params) throws IOException {
+                threads.add(Thread.currentThread());
+                return super.loadModel(modelPath, params);
+            }
+        };
+
+        manager.loadModelAsync(Paths.get("first.gguf"), new ModelParams()).join();
+        manager.loadModelAsync(Paths.get("second.gguf"), new ModelParams()).join();
+
+        assertEquals(2, threads.size(), "Both models should be loaded");
+        for (Thread thread : threads) {
+            assertNotSame(Thread.currentThread(), thread, "Models should be loaded in the background");
+            assertTrue(thread.isDaemon(), "Models should be loaded on daemon threads");
+            assertTrue(thread.getName().startsWith("model-loader-"), "Models should be loaded on the shared loader threads");
+        }
+    }
+
+    @Test
+    public void testLoadModelAsyncWithNullPath() {
+        ModelManager manager = new TestModelManager();
+
+        CompletableFuture<Model> future = manager.loadModelAsync(null, new ModelParams(), Runnable::run);
+        CompletionException e = assertThrows(CompletionException.class, future::join,
+                "Loading model with null path should fail the future");
+        assertTrue(e.getCause() instanceof IOException, "The failure should be the IOException of the load");
+    }
+
+    @Test
+    public void testLoadModelAsyncCancel() throws InterruptedException {
+        ProgressModelManager manager = new ProgressModelManager();
+        AtomicInteger progressCount = new AtomicInteger();
+        ModelParams params = ModelParams.builder()
+                .progressListener((progress, bytesLoaded, totalBytes) -> {
+                    progressCount.incrementAndGet();
+                    return true;
+                })
+                .build();
+
+        CompletableFuture<Model> future = manager.loadModelAsync(Paths.get("test.gguf"), params);
+        assertTrue(manager.started.await(5, TimeUnit.SECONDS), "The load should start");
+        future.cancel(true);
+
+        // The load notices the cancellation at its next progress report
+        assertTrue(manager.cancelled.await(5, TimeUnit.SECONDS), "The load should be cancelled");
+        assertTrue(progressCount.get() > 0, "The caller's listener should receive progress before the cancellation");
+        assertTrue(future.isCancelled(), "The future should be cancelled");
+        assertTrue(params.getProgressListener().onProgress(1.0f, 1000, 1000),
+                "The caller's listener should not be replaced");
+    }
 }
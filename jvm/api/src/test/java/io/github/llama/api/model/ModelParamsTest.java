@@ -71,4 +71,24 @@ public class ModelParamsTest {
         assertEquals("value1", overrides.get("key1"), "Override for key1 should be value1 from builder");
         assertEquals("value2", overrides.get("key2"), "Override for key2 should be value2 from builder");
     }
+
+    @Test
+    public void testCopy() {
+        ModelParams.ProgressListener listener = (progress, bytesLoaded, totalBytes) -> true;
+        ModelParams params = ModelParams.builder()
+                .gpuLayerCount(16)
+                .vocabOnly(true)
+                .addMetadataOverride("key", "value")
+                .progressListener(listener)
+                .build();
+
+        ModelParams copy = params.copy();
+        copy.getMetadataOverrides().put("other", "value");
+
+        assertEquals(16, copy.getGpuLayerCount(), "gpuLayerCount should be copied");
+        assertTrue(copy.isVocabOnly(), "vocabOnly should be copied");
+        assertEquals("value", copy.getMetadataOverrides().get("key"), "Metadata overrides should be copied");
+        assertSame(listener, copy.getProgressListener(), "Progress listener should be copied");
+        assertEquals(1, params.getMetadataOverrides().size(), "Changing the copy should not change the original");
+    }
 }
@@ -1,6 +1,9 @@
 package io.github.llama.api.sampling;
 
 import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -20,6 +23,7 @@ public class SamplerParamsTest {
         assertEquals(40, params.getTopK(), "Default topK should be 40");
         assertEquals(1.1f, params.getRepetitionPenalty(), "Default repetitionPenalty should be 1.1");
         assertEquals(128, params.getMaxTokens(), "Default maxTokens should be 128");
+        assertTrue(params.getStopSequences().isEmpty(), "Default stopSequences should be empty");
     }
 
     /**
@@ -53,6 +57,8 @@ public class SamplerParamsTest {
                 .topK(30)
                 .repetitionPenalty(1.3f)
                 .maxTokens(512)
+                .addStopSequence("\n\n")
+                .addStopSequence("</s>")
                 .build();
 
         assertEquals(0.7f, params.getTemperature(), "Builder should set temperature to 0.7");
@@ -60,6 +66,7 @@ public class SamplerParamsTest {
         assertEquals(30, params.getTopK(), "Builder should set topK to 30");
         assertEquals(1.3f, params.getRepetitionPenalty(), "Builder should set repetitionPenalty to 1.3");
         assertEquals(512, params.getMaxTokens(), "Builder should set maxTokens to 512");
+        assertEquals(List.of("\n\n", "</s>"), params.getStopSequences(), "Builder should add the stop sequences");
     }
 
     /**
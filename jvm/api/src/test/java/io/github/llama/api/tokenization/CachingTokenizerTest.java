@@ -0,0 +1,205 @@
+package io.github.llama.api.tokenization;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for {@link CachingTokenizer}.
+ */
+public class CachingTokenizerTest {
+
+    /**
+     * Tokenizer with one token per character that counts how often it tokenizes.
+     */
+    private static class CountingTokenizer implements Tokenizer {
+        private int tokenizeCount = 0;
+        private int batchCount = 0;
+        private int asyncCount = 0;
+
+        @Override
+        public int[] tokenize(String text) {
+            return tokenize(text, false, false);
+        }
+
+        @Override
+        public int[] tokenize(String text, boolean addBos, boolean addEos) {
+            tokenizeCount++;
+            int offset = addBos ? 1 : 0;
+            int[] tokens = new int[text.length() + offset + (addEos ? 1 : 0)];
+            if (addBos) {
+                tokens[0] = 1;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                tokens[i + offset] = text.charAt(i);
+            }
+            if (addEos) {
+                tokens[tokens.length - 1] = 2;
+            }
+            return tokens;
+        }
+
+        @Override
+        public TokenizedBatch tokenizeAll(List<String> texts, boolean addBos, boolean addEos) {
+            batchCount++;
+            return Tokenizer.super.tokenizeAll(texts, addBos, addEos);
+        }
+
+        @Override
+        public CompletableFuture<int[]> tokenizeAsync(String text, boolean addBos, boolean addEos, Executor executor) {
+            asyncCount++;
+            return Tokenizer.super.tokenizeAsync(text, addBos, addEos, executor);
+        }
+
+        @Override
+        public String detokenize(int[] tokens) {
+            return "";
+        }
+
+        @Override
+        public int getVocabularySize() {
+            return 256;
+        }
+
+        @Override
+        public int getSpecialToken(SpecialToken token) {
+            return token == SpecialToken.BOS ? 1 : 2;
+        }
+
+        @Override
+        public String getTokenText(int tokenId) {
+            return null;
+        }
+    }
+
+    private CountingTokenizer delegate;
+
+    @BeforeEach
+    public void setUp() {
+        delegate = new CountingTokenizer();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        CachingTokenizer tokenizer = new CachingTokenizer(delegate, 10, 1000);
+
+        int[] first = tokenizer.tokenize("system", true, false);
+        int[] second = tokenizer.tokenize("system", true, false);
+
+        assertArrayEquals(first, second, "Cached tokens should match");
+        assertEquals(1, delegate.tokenizeCount, "Repeated text should only be tokenized once");
+        assertEquals(1, tokenizer.getHitCount(), "Second lookup should hit");
+        assertEquals(1, tokenizer.getMissCount(), "First lookup should miss");
+    }
+
+    @Test
+    public void testOptionsAreKeyed() {
+        CachingTokenizer tokenizer = new CachingTokenizer(delegate, 10, 1000);
+
+        int[] withBos = tokenizer.tokenize("text", true, false);
+        int[] withoutBos = tokenizer.tokenize("text", false, false);
+
+        assertEquals(withBos.length - 1, withoutBos.length, "Options should not share an entry");
+        assertEquals(2, tokenizer.getMissCount(), "Each option combination should miss once");
+    }
+
+    @Test
+    public void testDefensiveCopies() {
+        CachingTokenizer tokenizer = new CachingTokenizer(delegate, 10, 1000);
+
+        int[] tokens = tokenizer.tokenize("abc");
+        tokens[0] = -1;
+
+        assertEquals('a', tokenizer.tokenize("abc")[0], "Modifying a result should not change the cache");
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        CachingTokenizer tokenizer = new CachingTokenizer(delegate, 2, 1000);
+
+        tokenizer.tokenize("a");
+        tokenizer.tokenize("b");
+        tokenizer.tokenize("a");
+        tokenizer.tokenize("c");
+
+        assertEquals(2, tokenizer.getSize(), "Cache should hold at most maxEntries texts");
+        assertEquals(1, tokenizer.getEvictionCount(), "One entry should be evicted");
+
+        tokenizer.tokenize("a");
+        assertEquals(2, tokenizer.getHitCount(), "Recently used text should still be cached");
+        tokenizer.tokenize("b");
+        assertEquals(4, tokenizer.getMissCount(), "Least recently used text should be evicted");
+    }
+
+    @Test
+    public void testTokenWeightBound() {
+        CachingTokenizer tokenizer = new CachingTokenizer(delegate, 10, 5);
+
+        tokenizer.tokenize("abc");
+        tokenizer.tokenize("de");
+        assertEquals(5, tokenizer.getCachedTokenCount(), "Both texts should fit");
+
+        tokenizer.tokenize("f");
+        assertEquals(3, tokenizer.getCachedTokenCount(), "Oldest text should be evicted to stay within the token bound");
+
+        tokenizer.tokenize("longer than the bound");
+        assertEquals(2, tokenizer.getSize(), "Texts above the token bound should not be cached");
+    }
+
+    @Test
+    public void testCountTokens() {
+        CachingTokenizer tokenizer = new CachingTokenizer(delegate, 10, 1000);
+
+        tokenizer.tokenize("hello", true, true);
+
+        assertEquals(7, tokenizer.countTokens("hello", true, true), "Count should come from the cache");
+        assertEquals(1, delegate.tokenizeCount, "Counting a cached text should not tokenize it");
+        assertEquals(5, tokenizer.countTokens("world"), "Uncached texts should be counted by the wrapped tokenizer");
+        assertEquals(1, tokenizer.getSize(), "Counting should not add entries");
+    }
+
+    @Test
+    public void testCountTokensWithDefaultOptions() {
+        CachingTokenizer tokenizer = new CachingTokenizer(delegate, 10, 1000);
+
+        tokenizer.tokenize("hello");
+
+        assertEquals(5, tokenizer.countTokens("hello"), "Count should come from the entry of tokenize(text)");
+        assertEquals(1, delegate.tokenizeCount, "Counting a text cached by tokenize(text) should not tokenize it");
+        assertEquals(1, tokenizer.getHitCount(), "Counting should hit the cache");
+    }
+
+    @Test
+    public void testBatchOperationsAreForwarded() {
+        CachingTokenizer tokenizer = new CachingTokenizer(delegate, 10, 1000);
+
+        TokenizedBatch batch = tokenizer.tokenizeAll(List.of("ab", "c"), true, false);
+        assertEquals(1, delegate.batchCount, "Batch tokenization should be passed to the wrapped tokenizer");
+        assertArrayEquals(new int[]{1, 'a', 'b'}, batch.getTokens(0), "Batch tokens should match");
+
+        List<TokenizedBatch> chunks = new ArrayList<>();
+        tokenizer.tokenizeStreaming(List.of("a", "b", "c"), 2, false, false, chunks::add);
+        assertEquals(2, chunks.size(), "Texts should be streamed in chunks");
+        assertEquals(3, delegate.batchCount, "Streaming tokenization should be passed to the wrapped tokenizer");
+
+        int[] tokens = tokenizer.tokenizeAsync("ab", false, true, Runnable::run).join();
+        assertEquals(1, delegate.asyncCount, "Asynchronous tokenization should be passed to the wrapped tokenizer");
+        assertArrayEquals(new int[]{'a', 'b', 2}, tokens, "Asynchronous tokens should match");
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new CachingTokenizer(null, 10, 1000),
+                "Null tokenizer should throw IllegalArgumentException");
+        assertThrows(IllegalArgumentException.class, () -> new CachingTokenizer(delegate, 0, 1000),
+                "Non-positive bounds should throw IllegalArgumentException");
+        assertThrows(IllegalArgumentException.class, () -> new CachingTokenizer(delegate, 10, 1000).tokenize(null),
+                "Null text should throw IllegalArgumentException");
+    }
+}
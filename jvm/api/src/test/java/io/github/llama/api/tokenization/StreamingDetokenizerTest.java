@@ -0,0 +1,96 @@
+package io.github.llama.api.tokenization;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for {@link StreamingDetokenizer}.
+ */
+public class StreamingDetokenizerTest {
+
+    /**
+     * Pieces of the test vocabulary: "a", the euro sign split over two tokens, and the first byte of a
+     * four-byte character.
+     */
+    private static final Map<Integer, byte[]> PIECES = Map.of(
+            1, "a".getBytes(StandardCharsets.UTF_8),
+            2, new byte[]{(byte) 0xE2, (byte) 0x82},
+            3, new byte[]{(byte) 0xAC},
+            4, new byte[]{(byte) 0xF0},
+            5, new byte[0]);
+
+    private static class PieceTokenizer implements Tokenizer {
+        @Override
+        public int[] tokenize(String text) {
+            return tokenize(text, false, false);
+        }
+
+        @Override
+        public int[] tokenize(String text, boolean addBos, boolean addEos) {
+            return new int[0];
+        }
+
+        @Override
+        public String detokenize(int[] tokens) {
+            return "";
+        }
+
+        @Override
+        public byte[] getTokenPiece(int tokenId) {
+            return PIECES.get(tokenId);
+        }
+
+        @Override
+        public int getVocabularySize() {
+            return PIECES.size();
+        }
+
+        @Override
+        public int getSpecialToken(SpecialToken token) {
+            return -1;
+        }
+
+        @Override
+        public String getTokenText(int tokenId) {
+            return new String(PIECES.get(tokenId), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testAccept() {
+        StreamingDetokenizer detokenizer = new PieceTokenizer().createStreamingDetokenizer();
+
+        assertEquals("a", detokenizer.accept(1), "Complete pieces should be returned right away");
+        assertEquals("", detokenizer.accept(2), "An incomplete character should be held back");
+        assertEquals(2, detokenizer.getPendingByteCount(), "The incomplete bytes should be kept");
+        assertEquals("", detokenizer.accept(5), "Empty pieces should not release held bytes");
+        assertEquals("\u20AC", detokenizer.accept(3), "The completed character should be returned");
+        assertEquals(0, detokenizer.getPendingByteCount(), "No bytes should be held after the character is complete");
+        assertEquals("a", detokenizer.accept(1), "Later pieces should not repeat earlier text");
+    }
+
+    @Test
+    public void testFlush() {
+        StreamingDetokenizer detokenizer = new PieceTokenizer().createStreamingDetokenizer();
+
+        assertEquals("a", detokenizer.accept(1), "Complete pieces should be returned right away");
+        assertEquals("", detokenizer.accept(4), "The start of a four-byte character should be held back");
+        assertEquals("\uFFFD", detokenizer.flush(), "Flushing should replace an incomplete character");
+        assertEquals(0, detokenizer.getPendingByteCount(), "Flushing should drop the held bytes");
+        assertEquals("", detokenizer.flush(), "Flushing twice should return nothing");
+    }
+
+    @Test
+    public void testReset() {
+        StreamingDetokenizer detokenizer = new PieceTokenizer().createStreamingDetokenizer();
+
+        detokenizer.accept(2);
+        detokenizer.reset();
+
+        assertEquals("a", detokenizer.accept(1), "Held bytes should be dropped on reset");
+    }
+}
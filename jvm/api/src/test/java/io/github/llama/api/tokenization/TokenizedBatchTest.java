@@ -0,0 +1,39 @@
+package io.github.llama.api.tokenization;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for {@link TokenizedBatch}.
+ */
+public class TokenizedBatchTest {
+
+    @Test
+    public void testOf() {
+        TokenizedBatch batch = TokenizedBatch.of(new int[][]{{1, 2, 3}, {}, {4, 5}});
+
+        assertEquals(3, batch.size(), "Batch should hold every text");
+        assertEquals(5, batch.getTokenCount(), "Token count should cover all texts");
+        assertEquals(0, batch.getTokenCount(1), "Empty text should have no tokens");
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5}, batch.getFlatTokens(), "Tokens should be stored back to back");
+        assertArrayEquals(new int[]{0, 3, 3, 5}, batch.getOffsets(), "Offsets should follow the token counts");
+        assertArrayEquals(new int[]{4, 5}, batch.getTokens(2), "Tokens of a text should match");
+    }
+
+    @Test
+    public void testEmpty() {
+        TokenizedBatch batch = TokenizedBatch.of(new int[0][]);
+
+        assertEquals(0, batch.size(), "Empty batch should hold no texts");
+        assertEquals(0, batch.getTokenCount(), "Empty batch should hold no tokens");
+    }
+
+    @Test
+    public void testInvalidOffsets() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenizedBatch(new int[]{1, 2}, new int[]{0, 1}),
+                "Offsets not ending with the token count should throw IllegalArgumentException");
+        assertThrows(IllegalArgumentException.class, () -> new TokenizedBatch(new int[0], new int[0]),
+                "Empty offsets should throw IllegalArgumentException");
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.sampling.SamplerParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the pure-Java {@link VectorSampler} with the native sampler chain of {@link FfmSampler}.
+ * Both samplers use the same parameters and sample from the same Java logits.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "--enable-native-access=ALL-UNNAMED"})
+public class SamplerBenchmark {
+
+    @Param({"32000", "152064"})
+    private int vocabularySize;
+
+    private float[] logits;
+    private VectorSampler vectorSampler;
+    private FfmSampler nativeSampler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LlamaCPP.llama_backend_init();
+
+        Random random = new Random(42);
+        logits = new float[vocabularySize];
+        for (int i = 0; i < logits.length; i++) {
+            logits[i] = (float) random.nextGaussian() * 4.0f;
+        }
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(0.8f)
+                .topK(40)
+                .topP(0.95f)
+                .repetitionPenalty(1.1f)
+                .build();
+
+        vectorSampler = new VectorSampler(params, vocabularySize, 42);
+        nativeSampler = new FfmSampler(params);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        vectorSampler.close();
+        nativeSampler.close();
+        LlamaCPP.llama_backend_free();
+    }
+
+    @Benchmark
+    public int vectorSampler() {
+        return vectorSampler.sample(logits);
+    }
+
+    @Benchmark
+    public int nativeChain() {
+        return nativeSampler.sample(logits);
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up token pieces in a {@link FfmTokenPieceTable} with calling {@code llama_token_to_piece}
+ * for every token. Both variants render the same random tokens into a reused buffer.
+ * <p>
+ * Pass the model with {@code -p modelPath=/path/to/model.gguf}; only its vocabulary is loaded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-native-access=ALL-UNNAMED"})
+public class TokenPieceBenchmark {
+
+    private static final int TOKEN_COUNT = 1024;
+
+    @Param({""})
+    private String modelPath;
+
+    private Arena arena;
+    private MemorySegment model;
+    private MemorySegment vocab;
+    private FfmTokenPieceTable table;
+    private int[] tokens;
+    private byte[] tableBuffer;
+    private MemorySegment nativeBuffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (modelPath.isEmpty()) {
+            throw new IllegalStateException("Pass the model with -p modelPath=/path/to/model.gguf");
+        }
+        LlamaCPP.llama_backend_init();
+
+        arena = Arena.ofConfined();
+        var modelParams = LlamaCPP.llama_model_default_params(arena);
+        llama_model_params.vocab_only(modelParams, true);
+        model = LlamaCPP.llama_model_load_from_file(arena.allocateFrom(modelPath), modelParams);
+        if (model.equals(MemorySegment.NULL)) {
+            throw new IllegalStateException("Failed to load model: " + modelPath);
+        }
+        vocab = LlamaCPP.llama_model_get_vocab(model);
+        table = FfmTokenPieceTable.build(vocab);
+
+        Random random = new Random(42);
+        tokens = new int[TOKEN_COUNT];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = random.nextInt(table.size());
+        }
+        tableBuffer = new byte[TOKEN_COUNT * 256];
+        nativeBuffer = arena.allocate(256);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        LlamaCPP.llama_model_free(model);
+        arena.close();
+        LlamaCPP.llama_backend_free();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKEN_COUNT)
+    public int pieceTable() {
+        int length = 0;
+        for (int token : tokens) {
+            length += table.copyPiece(token, false, tableBuffer, length);
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKEN_COUNT)
+    public int tokenToPiece() {
+        int length = 0;
+        for (int token : tokens) {
+            length += LlamaCPP.llama_token_to_piece(vocab, token, nativeBuffer, (int) nativeBuffer.byteSize(), 0, false);
+        }
+        return length;
+    }
+}
@@ -4,31 +4,100 @@ import io.github.llama.api.batch.Batch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
 import java.util.Arrays;
 
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
 /**
  * Implementation of {@link Batch} using Java's Foreign Function & Memory API.
  * This class represents a batch of tokens for processing.
+ * <p>
+ * The batch owns a native {@code llama_batch} whose arrays are allocated once, when the batch is
+ * created. Tokens, positions, sequence IDs and logits flags are written straight into native memory,
+ * so {@link FfmContext#process(Batch)} can hand the struct to {@code llama_decode} without copying,
+ * and {@link #clear()} only resets the token count. Reusing one batch across decode steps therefore
+ * causes no heap allocation.
+ * <p>
+ * Tokens added with {@link #addToken(int)} or {@link #addTokens(int[])} are positioned by the context
+ * when the batch is processed.
  */
 public class FfmBatch implements Batch {
 
     private static final Logger logger = LoggerFactory.getLogger(FfmBatch.class);
 
     private final int maxTokenCount;
-    private int[] tokens;
+    private final int maxSequencesPerToken;
+    private final Arena arena;
+
+    // The native struct and the arrays it points to
+    private final MemorySegment batch;
+    private final MemorySegment tokens;
+    private final MemorySegment positions;
+    private final MemorySegment seqIdCounts;
+    private final MemorySegment seqIds;
+    private final MemorySegment seqIdRows;
+    private final MemorySegment logits;
+
+    // Tokens that continue the default sequence and are positioned by the context
+    private final boolean[] autoPositioned;
+    private int autoPositionedCount = 0;
+
     private int tokenCount;
     private boolean closed = false;
 
     /**
-     * Creates a new instance of the FfmBatch.
+     * Creates a new instance of the FfmBatch where every token belongs to at most one sequence.
      *
      * @param maxTokenCount Maximum number of tokens the batch can hold
      */
     public FfmBatch(int maxTokenCount) {
+        this(maxTokenCount, 1);
+    }
+
+    /**
+     * Creates a new instance of the FfmBatch.
+     *
+     * @param maxTokenCount Maximum number of tokens the batch can hold
+     * @param maxSequencesPerToken Maximum number of sequences a single token can belong to
+     */
+    public FfmBatch(int maxTokenCount, int maxSequencesPerToken) {
+        if (maxSequencesPerToken < 1) {
+            logger.error("Invalid maxSequencesPerToken: {}", maxSequencesPerToken);
+            throw new IllegalArgumentException("Max sequences per token must be at least 1");
+        }
         this.maxTokenCount = maxTokenCount;
-        this.tokens = new int[maxTokenCount];
+        this.maxSequencesPerToken = maxSequencesPerToken;
+        this.arena = Arena.ofShared();
+
+        this.tokens = arena.allocate(JAVA_INT, maxTokenCount);
+        this.positions = arena.allocate(JAVA_INT, maxTokenCount);
+        this.seqIdCounts = arena.allocate(JAVA_INT, maxTokenCount);
+        this.seqIds = arena.allocate(JAVA_INT, (long) maxTokenCount * maxSequencesPerToken);
+        this.logits = arena.allocate(JAVA_BYTE, maxTokenCount);
+
+        // Every token gets a fixed row of sequence IDs inside one contiguous block
+        this.seqIdRows = arena.allocate(ADDRESS, maxTokenCount);
+        long rowSize = JAVA_INT.byteSize() * maxSequencesPerToken;
+        for (int i = 0; i < maxTokenCount; i++) {
+            seqIdRows.setAtIndex(ADDRESS, i, seqIds.asSlice(i * rowSize, rowSize));
+        }
+
+        this.batch = llama_batch.allocate(arena);
+        llama_batch.n_tokens(batch, 0);
+        llama_batch.token(batch, tokens);
+        llama_batch.embd(batch, MemorySegment.NULL);
+        llama_batch.pos(batch, positions);
+        llama_batch.n_seq_id(batch, seqIdCounts);
+        llama_batch.seq_id(batch, seqIdRows);
+        llama_batch.logits(batch, logits);
+
+        this.autoPositioned = new boolean[maxTokenCount];
         this.tokenCount = 0;
-        logger.debug("Created FfmBatch with maxTokenCount={}", maxTokenCount);
+        logger.debug("Created FfmBatch with maxTokenCount={}, maxSequencesPerToken={}", maxTokenCount, maxSequencesPerToken);
     }
 
     @Override
@@ -40,7 +109,8 @@ public class FfmBatch implements Batch {
             throw new IllegalStateException("Batch is full");
         }
 
-        tokens[tokenCount++] = tokenId;
+        tokens.setAtIndex(JAVA_INT, tokenCount, tokenId);
+        setDefaultSequence(tokenCount++);
         logger.debug("Added token {} to batch, new count: {}", tokenId, tokenCount);
 
         return this;
@@ -60,13 +130,46 @@ public class FfmBatch implements Batch {
             throw new IllegalStateException("Batch would overflow");
         }
 
-        System.arraycopy(tokenIds, 0, tokens, tokenCount, tokenIds.length);
+        MemorySegment.copy(tokenIds, 0, tokens, JAVA_INT, tokenCount * JAVA_INT.byteSize(), tokenIds.length);
+        for (int i = 0; i < tokenIds.length; i++) {
+            setDefaultSequence(tokenCount + i);
+        }
         tokenCount += tokenIds.length;
         logger.debug("Added {} tokens to batch, new count: {}", tokenIds.length, tokenCount);
 
         return this;
     }
 
+    @Override
+    public Batch add(int tokenId, int position, int[] seqIds, boolean wantLogits) {
+        checkClosed();
+
+        if (seqIds == null || seqIds.length == 0 || seqIds.length > maxSequencesPerToken) {
+            logger.error("Invalid sequence IDs for token {}", tokenId);
+            throw new IllegalArgumentException("Token must belong to between 1 and " + maxSequencesPerToken + " sequences");
+        }
+        checkPosition(position);
+        checkCapacity();
+
+        MemorySegment.copy(seqIds, 0, this.seqIds, JAVA_INT,
+                (long) tokenCount * maxSequencesPerToken * JAVA_INT.byteSize(), seqIds.length);
+        setToken(tokenId, position, seqIds.length, wantLogits);
+
+        return this;
+    }
+
+    @Override
+    public Batch add(int tokenId, int position, int seqId, boolean wantLogits) {
+        checkClosed();
+        checkPosition(position);
+        checkCapacity();
+
+        seqIds.setAtIndex(JAVA_INT, (long) tokenCount * maxSequencesPerToken, seqId);
+        setToken(tokenId, position, 1, wantLogits);
+
+        return this;
+    }
+
     @Override
     public int getTokenCount() {
         checkClosed();
@@ -83,6 +186,10 @@ public class FfmBatch implements Batch {
     public Batch clear() {
         checkClosed();
         tokenCount = 0;
+        if (autoPositionedCount > 0) {
+            Arrays.fill(autoPositioned, false);
+            autoPositionedCount = 0;
+        }
         logger.debug("Cleared batch");
         return this;
     }
@@ -91,7 +198,7 @@ public class FfmBatch implements Batch {
     public void close() {
         if (!closed) {
             logger.info("Closing batch");
-            // TODO: Implement actual cleanup using FFM API
+            arena.close();
             closed = true;
             logger.debug("Batch closed");
         }
@@ -104,7 +211,158 @@ public class FfmBatch implements Batch {
      */
     public int[] getTokens() {
         checkClosed();
-        return Arrays.copyOf(tokens, tokenCount);
+        return tokens.asSlice(0, JAVA_INT.byteSize() * tokenCount).toArray(JAVA_INT);
+    }
+
+    /**
+     * Gets the position of the token at an index of the batch.
+     * Tokens positioned by the context report the position of the last time the batch was processed.
+     *
+     * @param index Index of the token
+     * @return Position
+     */
+    int getPosition(int index) {
+        return positions.getAtIndex(JAVA_INT, index);
+    }
+
+    /**
+     * Checks whether the token at an index of the batch is positioned by the context.
+     *
+     * @param index Index of the token
+     * @return true if the context assigns the position, false if it was given explicitly
+     */
+    boolean isAutoPositioned(int index) {
+        return autoPositioned[index];
+    }
+
+    /**
+     * Checks whether logits were requested for the token at an index of the batch.
+     *
+     * @param index Index of the token
+     * @return true if logits were requested, false otherwise
+     */
+    boolean isLogitsRequested(int index) {
+        return logits.get(JAVA_BYTE, index) != 0;
+    }
+
+    /**
+     * Gets the maximum number of sequences a single token can belong to.
+     *
+     * @return Maximum sequences per token
+     */
+    public int getMaxSequencesPerToken() {
+        return maxSequencesPerToken;
+    }
+
+    /**
+     * Assigns positions and logits flags to the tokens that continue the default sequence.
+     * Positions are written in place, so tokens with explicit positions are not touched.
+     *
+     * @param firstPosition Position of the first such token
+     * @param logitsAll Whether every such token should produce logits instead of only the last one of the batch
+     */
+    void positionDefaultSequence(int firstPosition, boolean logitsAll) {
+        int position = firstPosition;
+        for (int i = 0; i < tokenCount; i++) {
+            if (autoPositioned[i]) {
+                positions.setAtIndex(JAVA_INT, i, position++);
+                logits.set(JAVA_BYTE, i, (byte) (logitsAll || i == tokenCount - 1 ? 1 : 0));
+            }
+        }
+    }
+
+    /**
+     * Gets the number of tokens that continue the default sequence.
+     *
+     * @return Number of tokens positioned by the context
+     */
+    int getAutoPositionedCount() {
+        return autoPositionedCount;
+    }
+
+    /**
+     * Gets the native batch struct with its token count set to the current count.
+     *
+     * @return The native {@code llama_batch}
+     */
+    MemorySegment segment() {
+        checkClosed();
+        llama_batch.n_tokens(batch, tokenCount);
+        return batch;
+    }
+
+    /**
+     * Points a second {@code llama_batch} struct at a window of this batch's arrays.
+     * This lets a batch larger than the context's batch size be decoded in pieces without copying.
+     *
+     * @param window The struct to fill
+     * @param offset Index of the first token of the window
+     * @param count Number of tokens in the window
+     */
+    void fillWindow(MemorySegment window, int offset, int count) {
+        checkClosed();
+        long intOffset = offset * JAVA_INT.byteSize();
+        llama_batch.n_tokens(window, count);
+        llama_batch.token(window, tokens.asSlice(intOffset));
+        llama_batch.embd(window, MemorySegment.NULL);
+        llama_batch.pos(window, positions.asSlice(intOffset));
+        llama_batch.n_seq_id(window, seqIdCounts.asSlice(intOffset));
+        llama_batch.seq_id(window, seqIdRows.asSlice(offset * ADDRESS.byteSize()));
+        llama_batch.logits(window, logits.asSlice(offset));
+    }
+
+    /**
+     * Writes the per-token fields of the next token, whose sequence IDs are already in place.
+     *
+     * @param tokenId Token ID
+     * @param position Position of the token
+     * @param sequenceCount Number of sequences the token belongs to
+     * @param wantLogits Whether logits should be computed for the token
+     */
+    private void setToken(int tokenId, int position, int sequenceCount, boolean wantLogits) {
+        tokens.setAtIndex(JAVA_INT, tokenCount, tokenId);
+        positions.setAtIndex(JAVA_INT, tokenCount, position);
+        seqIdCounts.setAtIndex(JAVA_INT, tokenCount, sequenceCount);
+        logits.set(JAVA_BYTE, tokenCount, (byte) (wantLogits ? 1 : 0));
+        tokenCount++;
+    }
+
+    /**
+     * Marks the token at an index as part of the default sequence, positioned by the context.
+     *
+     * @param index Index of the token
+     */
+    private void setDefaultSequence(int index) {
+        seqIdCounts.setAtIndex(JAVA_INT, index, 1);
+        seqIds.setAtIndex(JAVA_INT, (long) index * maxSequencesPerToken, 0);
+        logits.set(JAVA_BYTE, index, (byte) 0);
+        autoPositioned[index] = true;
+        autoPositionedCount++;
+    }
+
+    /**
+     * Checks that another token fits into the batch.
+     *
+     * @throws IllegalStateException if the batch is full
+     */
+    private void checkCapacity() {
+        if (tokenCount >= maxTokenCount) {
+            logger.error("Cannot add token: batch is full");
+            throw new IllegalStateException("Batch is full");
+        }
+    }
+
+    /**
+     * Checks that a position is valid.
+     *
+     * @param position Position of a token
+     * @throws IllegalArgumentException if the position is negative
+     */
+    private void checkPosition(int position) {
+        if (position < 0) {
+            logger.error("Invalid position: {}", position);
+            throw new IllegalArgumentException("Position cannot be negative");
+        }
     }
 
     /**
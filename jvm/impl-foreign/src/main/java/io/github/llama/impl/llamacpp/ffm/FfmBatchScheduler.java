@@ -0,0 +1,586 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.batch.BatchResult;
+import io.github.llama.api.context.KvCache;
+import io.github.llama.api.context.PrefixCache;
+import io.github.llama.api.sampling.SamplerParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * Continuous-batching scheduler that serves many generation requests from a single {@link FfmContext}.
+ * <p>
+ * Every step packs one token for each generating sequence plus as many prompt tokens of prefilling
+ * sequences as fit into one {@link FfmBatch}, each with its own position and sequence ID, and evaluates
+ * them with a single {@code llama_decode} call. Logits are only requested for tokens that are sampled. New requests are admitted between steps as soon as a sequence
+ * slot is free, and finished sequences are retired so their KV cells can be reused.
+ * <p>
+ * The number of concurrent sequences is bounded by {@link io.github.llama.api.context.ContextParams#getMaxSequences()}.
+ * The context must not be used by anyone else while the scheduler runs.
+ * <p>
+ * A scheduler can reserve some of the sequences for a {@link PrefixCache}. Prompts are then stored in the cache
+ * once they are evaluated, and a new request copies the longest cached prefix of its prompt into its sequence
+ * and evaluates only the rest. When the KV cache runs out of cells, cached prefixes are evicted before any
+ * running sequence is dropped.
+ */
+public class FfmBatchScheduler implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmBatchScheduler.class);
+
+    private final KvCache kvCache;
+    private final PrefixCache prefixCache;
+    private final FfmBatch batch;
+    private final Backend backend;
+    private final int batchSize;
+    private final int contextSize;
+
+    private final Queue<Sequence> pending = new ConcurrentLinkedQueue<>();
+    private final List<Sequence> active = new ArrayList<>();
+    private final ArrayDeque<Integer> freeSeqIds = new ArrayDeque<>();
+    private final List<Sequence> scheduled = new ArrayList<>();
+    // Size of the active list, published for threads other than the scheduler thread
+    private volatile int activeCount = 0;
+    private final AtomicLong generatedTokens = new AtomicLong();
+
+    private final Object lock = new Object();
+    private Thread worker;
+    private volatile boolean running = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a new scheduler over a context.
+     *
+     * @param context The context to decode with
+     * @throws IllegalArgumentException if the context has no native handle
+     */
+    public FfmBatchScheduler(FfmContext context) {
+        this(context, 0);
+    }
+
+    /**
+     * Creates a new scheduler over a context that caches evaluated prompt prefixes.
+     *
+     * @param context The context to decode with
+     * @param cacheSequenceCount Number of sequences reserved for cached prefixes, 0 to not cache prefixes
+     * @throws IllegalArgumentException if the context has no native handle, or if no sequence would be left
+     *                                  for requests
+     */
+    public FfmBatchScheduler(FfmContext context, int cacheSequenceCount) {
+        this(context, cacheSequenceCount, nativeBackend(context));
+    }
+
+    /**
+     * Creates a new scheduler that decodes and samples through a backend instead of the native context,
+     * so that the scheduling can be driven over a context without a native handle.
+     *
+     * @param context The context whose parameters, batches and KV cache are used
+     * @param cacheSequenceCount Number of sequences reserved for cached prefixes, 0 to not cache prefixes
+     * @param backend The backend that decodes the batches and samples the tokens
+     * @throws IllegalArgumentException if no sequence would be left for requests
+     */
+    FfmBatchScheduler(FfmContext context, int cacheSequenceCount, Backend backend) {
+        int maxSequences = context.getParams().getMaxSequences();
+        if (cacheSequenceCount < 0 || cacheSequenceCount >= maxSequences) {
+            throw new IllegalArgumentException("Cache sequence count must be between 0 and " + (maxSequences - 1));
+        }
+        this.kvCache = context.getKvCache();
+        this.backend = backend;
+        this.batchSize = context.getParams().getBatchSize();
+        this.contextSize = context.getParams().getContextSize();
+        this.batch = (FfmBatch) context.createBatch(batchSize);
+        int requestSequenceCount = maxSequences - cacheSequenceCount;
+        for (int seqId = 0; seqId < requestSequenceCount; seqId++) {
+            freeSeqIds.add(seqId);
+        }
+        if (cacheSequenceCount > 0) {
+            int[] cacheSeqIds = new int[cacheSequenceCount];
+            for (int i = 0; i < cacheSequenceCount; i++) {
+                cacheSeqIds[i] = requestSequenceCount + i;
+            }
+            this.prefixCache = new PrefixCache(kvCache, cacheSeqIds, contextSize);
+        } else {
+            this.prefixCache = null;
+        }
+        logger.debug("Created FfmBatchScheduler with batchSize={}, maxSequences={}, cacheSequences={}",
+                batchSize, requestSequenceCount, cacheSequenceCount);
+    }
+
+    /**
+     * Submits a generation request.
+     *
+     * @param promptTokens Prompt tokens, must not be empty
+     * @param samplerParams Sampler parameters, including the maximum number of tokens to generate
+     * @return Future completed with the generated tokens once the sequence finishes
+     */
+    public CompletableFuture<int[]> submit(int[] promptTokens, SamplerParams samplerParams) {
+        return submit(promptTokens, samplerParams, null);
+    }
+
+    /**
+     * Submits a generation request with a listener that is called for every generated token.
+     * The listener runs on the scheduler thread and must not block.
+     *
+     * @param promptTokens Prompt tokens, must not be empty
+     * @param samplerParams Sampler parameters, including the maximum number of tokens to generate
+     * @param onToken Listener for generated tokens, or null
+     * @return Future completed with the generated tokens once the sequence finishes; cancelling it stops the
+     *         generation at the next step
+     */
+    public CompletableFuture<int[]> submit(int[] promptTokens, SamplerParams samplerParams, IntConsumer onToken) {
+        if (promptTokens == null || promptTokens.length == 0) {
+            throw new IllegalArgumentException("Prompt tokens cannot be null or empty");
+        }
+        if (samplerParams == null) {
+            throw new IllegalArgumentException("Sampler parameters cannot be null");
+        }
+
+        Sequence sequence = new Sequence(promptTokens.clone(), samplerParams, onToken);
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Scheduler is closed");
+            }
+            pending.add(sequence);
+            lock.notifyAll();
+        }
+        logger.debug("Submitted request with {} prompt tokens", promptTokens.length);
+        return sequence.future;
+    }
+
+    /**
+     * Starts a dedicated thread that runs {@link #step()} until the scheduler is closed.
+     */
+    public void start() {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Scheduler is closed");
+            }
+            if (worker != null) {
+                return;
+            }
+            running = true;
+            worker = new Thread(this::runLoop, "llama-batch-scheduler");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        logger.info("Started batch scheduler");
+    }
+
+    /**
+     * Runs one scheduling step: admits pending requests, decodes one packed batch and retires finished sequences.
+     * Callers that do not use {@link #start()} can drive the scheduler by calling this method in a loop.
+     *
+     * @return true if a batch was decoded, false if there was no work
+     */
+    public boolean step() {
+        admitPending();
+        retireCancelled();
+
+        int count = fillBatch();
+        if (count == 0) {
+            return false;
+        }
+
+        BatchResult result = backend.decode(batch);
+        if (!result.isSuccess() && prefixCache != null && prefixCache.evictLeastRecentlyUsed()) {
+            // Most likely out of KV cells: free a cached prefix and decode the same tokens again in the next step
+            logger.warn("Decoding failed ({}), evicted a cached prefix", result.getErrorMessage());
+            return true;
+        }
+        if (!result.isSuccess()) {
+            // Most likely out of KV cells: give up the newest sequence so the others can make progress
+            Sequence newest = active.get(active.size() - 1);
+            logger.warn("Decoding failed ({}), dropping sequence {}", result.getErrorMessage(), newest.seqId);
+            retire(newest, new IllegalStateException(result.getErrorMessage()));
+            return true;
+        }
+
+        for (Sequence sequence : scheduled) {
+            boolean prefilling = !sequence.isGenerating();
+            sequence.advance();
+            if (prefilling && sequence.isGenerating() && prefixCache != null) {
+                prefixCache.store(sequence.prompt, sequence.seqId);
+            }
+        }
+        sampleAndRetire();
+        return true;
+    }
+
+    /**
+     * Gets the number of sequences currently decoding.
+     *
+     * @return Number of active sequences
+     */
+    public int getActiveSequenceCount() {
+        return activeCount;
+    }
+
+    /**
+     * Gets the number of requests waiting for a free sequence slot.
+     *
+     * @return Number of pending requests
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Gets the cache of evaluated prompt prefixes, for example to read its hit rate.
+     *
+     * @return The prefix cache, or null if the scheduler does not cache prefixes
+     */
+    public PrefixCache getPrefixCache() {
+        return prefixCache;
+    }
+
+    /**
+     * Gets the total number of tokens generated by this scheduler.
+     *
+     * @return Number of generated tokens
+     */
+    public long getGeneratedTokenCount() {
+        return generatedTokens.get();
+    }
+
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            logger.info("Closing batch scheduler");
+            closed = true;
+            running = false;
+            thread = worker;
+            lock.notifyAll();
+        }
+
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        CancellationException cancelled = new CancellationException("Scheduler closed");
+        for (Sequence sequence : new ArrayList<>(active)) {
+            retire(sequence, cancelled);
+        }
+        Sequence sequence;
+        while ((sequence = pending.poll()) != null) {
+            sequence.future.completeExceptionally(cancelled);
+        }
+        if (prefixCache != null) {
+            prefixCache.clear();
+        }
+        batch.close();
+        logger.debug("Batch scheduler closed");
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                if (!step()) {
+                    synchronized (lock) {
+                        while (running && pending.isEmpty()) {
+                            lock.wait();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Scheduler step failed", e);
+                for (Sequence sequence : new ArrayList<>(active)) {
+                    retire(sequence, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the backend that decodes with the native context and samples with native sampler chains.
+     *
+     * @param context The context to decode with
+     * @return The native backend
+     * @throws IllegalArgumentException if the context has no native handle
+     */
+    private static Backend nativeBackend(FfmContext context) {
+        if (context == null || !context.hasNativeContext()) {
+            throw new IllegalArgumentException("Scheduler requires a context with a native handle");
+        }
+        MemorySegment vocab = LlamaCPP.llama_model_get_vocab(LlamaCPP.llama_get_model(context.getContextHandle()));
+        return new Backend() {
+            @Override
+            public BatchResult decode(FfmBatch batch) {
+                return context.process(batch);
+            }
+
+            @Override
+            public SequenceSampler createSampler(SamplerParams params) {
+                FfmSampler sampler = new FfmSampler(params, context);
+                return new SequenceSampler() {
+                    @Override
+                    public int sample(int logitsIndex) {
+                        return sampler.sample(logitsIndex);
+                    }
+
+                    @Override
+                    public void close() {
+                        sampler.close();
+                    }
+                };
+            }
+
+            @Override
+            public boolean isEndOfGeneration(int token) {
+                return LlamaCPP.llama_vocab_is_eog(vocab, token);
+            }
+        };
+    }
+
+    /**
+     * Moves pending requests into free sequence slots.
+     */
+    private void admitPending() {
+        while (!freeSeqIds.isEmpty()) {
+            Sequence sequence = pending.poll();
+            if (sequence == null) {
+                return;
+            }
+            if (sequence.future.isDone()) {
+                continue;
+            }
+            sequence.seqId = freeSeqIds.poll();
+            sequence.sampler = backend.createSampler(sequence.samplerParams);
+            if (prefixCache != null) {
+                int reused = prefixCache.restore(sequence.prompt, sequence.seqId);
+                sequence.prefilled = reused;
+                sequence.position = reused;
+            }
+            active.add(sequence);
+            activeCount = active.size();
+            logger.debug("Admitted sequence {} with {} prompt tokens, {} reused",
+                    sequence.seqId, sequence.prompt.length, sequence.prefilled);
+        }
+    }
+
+    /**
+     * Retires the active sequences whose future was cancelled or otherwise completed by the caller,
+     * so that they stop taking batch slots and KV cells.
+     */
+    private void retireCancelled() {
+        for (int i = active.size() - 1; i >= 0; i--) {
+            Sequence sequence = active.get(i);
+            if (sequence.future.isDone()) {
+                logger.debug("Sequence {} was cancelled", sequence.seqId);
+                retire(sequence, null);
+            }
+        }
+    }
+
+    /**
+     * Packs the next tokens of all active sequences into the batch.
+     * Generating sequences go first so that decode latency does not suffer from long prompts.
+     *
+     * @return Number of tokens in the batch
+     */
+    private int fillBatch() {
+        scheduled.clear();
+        batch.clear();
+        int count = 0;
+
+        for (Sequence sequence : active) {
+            if (count == batchSize) {
+                break;
+            }
+            if (sequence.isGenerating()) {
+                sequence.scheduledTokens = 1;
+                sequence.logitsIndex = count;
+                batch.add(sequence.lastToken, sequence.position, sequence.seqId, true);
+                count++;
+                scheduled.add(sequence);
+            }
+        }
+
+        for (Sequence sequence : active) {
+            if (count == batchSize) {
+                break;
+            }
+            if (!sequence.isGenerating()) {
+                int chunk = Math.min(sequence.prompt.length - sequence.prefilled, batchSize - count);
+                boolean completesPrompt = sequence.prefilled + chunk == sequence.prompt.length;
+                for (int i = 0; i < chunk; i++) {
+                    boolean wantLogits = completesPrompt && i == chunk - 1;
+                    batch.add(sequence.prompt[sequence.prefilled + i], sequence.position + i, sequence.seqId, wantLogits);
+                    count++;
+                }
+                sequence.scheduledTokens = chunk;
+                sequence.logitsIndex = completesPrompt ? count - 1 : -1;
+                scheduled.add(sequence);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Samples the next token of every sequence that produced logits and retires finished sequences.
+     */
+    private void sampleAndRetire() {
+        for (Sequence sequence : scheduled) {
+            if (sequence.logitsIndex < 0) {
+                continue;
+            }
+
+            int token = sequence.sampler.sample(sequence.logitsIndex);
+            sequence.append(token);
+            generatedTokens.incrementAndGet();
+
+            boolean endOfGeneration = backend.isEndOfGeneration(token);
+            if (!endOfGeneration && sequence.onToken != null) {
+                // Also for the last token of a sequence that stops at its token limit or the end of the context
+                sequence.onToken.accept(token);
+            }
+            if (endOfGeneration
+                    || sequence.generatedCount >= sequence.samplerParams.getMaxTokens()
+                    || sequence.position >= contextSize) {
+                retire(sequence, null);
+            }
+        }
+    }
+
+    /**
+     * Removes a sequence from the active set, frees its KV cells and completes its future.
+     *
+     * @param sequence The sequence to retire
+     * @param error The error to complete the future with, or null on success
+     */
+    private void retire(Sequence sequence, Throwable error) {
+        active.remove(sequence);
+        activeCount = active.size();
+        kvCache.remove(sequence.seqId);
+        sequence.sampler.close();
+        freeSeqIds.add(sequence.seqId);
+
+        if (error != null) {
+            sequence.future.completeExceptionally(error);
+        } else {
+            sequence.future.complete(Arrays.copyOf(sequence.generated, sequence.generatedCount));
+        }
+        logger.debug("Retired sequence {} after {} generated tokens", sequence.seqId, sequence.generatedCount);
+    }
+
+    /**
+     * Native operations of a scheduling step.
+     */
+    interface Backend {
+
+        /**
+         * Decodes a packed batch.
+         *
+         * @param batch The batch to decode
+         * @return The result of the decode
+         */
+        BatchResult decode(FfmBatch batch);
+
+        /**
+         * Creates the sampler of a newly admitted sequence.
+         *
+         * @param params The sampler parameters of the request
+         * @return The sampler
+         */
+        SequenceSampler createSampler(SamplerParams params);
+
+        /**
+         * Checks whether a token ends the generation.
+         *
+         * @param token The sampled token
+         * @return true if the token is an end-of-generation token
+         */
+        boolean isEndOfGeneration(int token);
+    }
+
+    /**
+     * Sampler of a single sequence.
+     */
+    interface SequenceSampler {
+
+        /**
+         * Samples a token from the logits of a token of the last decoded batch.
+         *
+         * @param logitsIndex Index of the token in the batch
+         * @return Sampled token ID
+         */
+        int sample(int logitsIndex);
+
+        /**
+         * Frees the sampler.
+         */
+        void close();
+    }
+
+    /**
+     * State of a single generation request.
+     */
+    private static final class Sequence {
+        private final int[] prompt;
+        private final SamplerParams samplerParams;
+        private final IntConsumer onToken;
+        private final CompletableFuture<int[]> future = new CompletableFuture<>();
+
+        private int seqId = -1;
+        private SequenceSampler sampler;
+        private int prefilled = 0;
+        private int position = 0;
+        private int lastToken;
+        private int[] generated = new int[16];
+        private int generatedCount = 0;
+
+        private int scheduledTokens = 0;
+        private int logitsIndex = -1;
+
+        private Sequence(int[] prompt, SamplerParams samplerParams, IntConsumer onToken) {
+            this.prompt = prompt;
+            this.samplerParams = samplerParams;
+            this.onToken = onToken;
+        }
+
+        private boolean isGenerating() {
+            return prefilled == prompt.length;
+        }
+
+        /**
+         * Commits the tokens scheduled in the last step once the decode succeeded.
+         */
+        private void advance() {
+            if (!isGenerating()) {
+                prefilled += scheduledTokens;
+            }
+            position += scheduledTokens;
+            scheduledTokens = 0;
+        }
+
+        private void append(int token) {
+            if (generatedCount == generated.length) {
+                generated = Arrays.copyOf(generated, generated.length * 2);
+            }
+            generated[generatedCount++] = token;
+            lastToken = token;
+        }
+    }
+}
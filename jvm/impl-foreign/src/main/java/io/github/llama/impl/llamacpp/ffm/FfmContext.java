@@ -5,23 +5,73 @@ import io.github.llama.api.batch.Batch;
 import io.github.llama.api.batch.BatchResult;
 import io.github.llama.api.context.Context;
 import io.github.llama.api.context.ContextParams;
+import io.github.llama.api.context.KvCache;
+import io.github.llama.api.context.SessionState;
 import io.github.llama.api.sampling.Sampler;
 import io.github.llama.api.sampling.SamplerParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+
 /**
  * Implementation of {@link Context} using Java's Foreign Function & Memory API.
  * This class provides a context for inference with llama.cpp models.
+ * <p>
+ * Batches created by {@link #createBatch(int)} own their native {@code llama_batch}, which
+ * {@link #process(Batch)} hands to {@code llama_decode} as is. Batches larger than
+ * {@link ContextParams#getBatchSize()} are decoded in windows over the same native arrays, so the
+ * decode loop neither copies tokens nor allocates native memory per step.
+ * <p>
+ * With {@link ContextParams#isDedicatedNativeThread()} the native calls of the context run on a platform
+ * thread owned by the context, so that virtual threads calling {@link #process(Batch)} wait without pinning
+ * their carrier thread.
+ * <p>
+ * Closing the context waits for the batches queued by {@link #processAsync(Batch)} and for the batch being
+ * decoded before the native context is freed.
  */
 public class FfmContext implements Context {
 
     private static final Logger logger = LoggerFactory.getLogger(FfmContext.class);
 
     private final FfmModel model;
+    private final FfmLLM modelView;
+    private final FfmKvCache kvCache;
+    private final FfmSessionState sessionState;
     private final ContextParams params;
-    private float[] logits;
-    private boolean closed = false;
+    private final Arena arena;
+    private final MemorySegment contextHandle;
+    private final int vocabularySize;
+    private final int nativeBatchSize;
+    private final int maxSequences;
+
+    // Struct used to decode batches larger than the native batch size in windows
+    private final MemorySegment batchWindow;
+
+    // Thread that runs native calls, only set when a dedicated native thread is requested
+    private final FfmNativeWorker nativeWorker;
+
+    // Orders asynchronous calls on the executor from the parameters, and a lock that keeps all native calls apart
+    private final FfmSerialExecutor asyncExecutor;
+    private final Object decodeLock = new Object();
+
+    // Thread for asynchronous calls when neither a native thread nor an executor is given, created on first use
+    private FfmNativeWorker asyncWorker;
+
+    private final float[] placeholderLogits;
+    private MemorySegment lastLogits;
+    private boolean hasLogits = false;
+    private final AtomicBoolean closing = new AtomicBoolean();
+    private volatile boolean closed = false;
 
     /**
      * Creates a new instance of the FfmContext.
@@ -31,8 +81,51 @@ public class FfmContext implements Context {
      */
     public FfmContext(FfmModel model, ContextParams params) {
         this.model = model;
+        this.modelView = new FfmLLM(model, () -> { });
+        this.kvCache = new FfmKvCache(this);
+        this.sessionState = new FfmSessionState(this);
         this.params = params;
-        this.logits = new float[1000]; // Placeholder size, will be set properly during actual implementation
+        this.arena = Arena.ofShared();
+        this.nativeBatchSize = params.getBatchSize();
+        this.maxSequences = params.getMaxSequences();
+        this.asyncExecutor = params.getAsyncExecutor() != null ? new FfmSerialExecutor(params.getAsyncExecutor()) : null;
+
+        MemorySegment modelHandle = model.getModelHandle();
+        if (modelHandle != null && !modelHandle.equals(MemorySegment.NULL)) {
+            var contextParams = LlamaCPP.llama_context_default_params(arena);
+            llama_context_params.n_ctx(contextParams, params.getContextSize());
+            llama_context_params.n_batch(contextParams, params.getBatchSize());
+            llama_context_params.n_threads(contextParams, params.getThreadCount());
+            llama_context_params.n_threads_batch(contextParams, params.getThreadCount());
+            llama_context_params.n_seq_max(contextParams, params.getMaxSequences());
+
+            // The context keeps the weights alive until it is closed, even if every LLM handle is closed first
+            if (!model.retain()) {
+                arena.close();
+                logger.error("Cannot create context for a closed model");
+                throw new IllegalStateException("Model is closed");
+            }
+            MemorySegment handle = LlamaCPP.llama_init_from_model(modelHandle, contextParams);
+            if (handle.equals(MemorySegment.NULL)) {
+                model.release();
+                arena.close();
+                logger.error("Failed to create native context");
+                throw new IllegalStateException("Failed to create native context");
+            }
+            this.contextHandle = handle;
+            this.vocabularySize = LlamaCPP.llama_vocab_n_tokens(LlamaCPP.llama_model_get_vocab(modelHandle));
+            this.batchWindow = llama_batch.allocate(arena);
+            this.nativeWorker = params.isDedicatedNativeThread() ? new FfmNativeWorker() : null;
+            this.placeholderLogits = null;
+        } else {
+            logger.warn("No native model handle available, context will not evaluate batches");
+            this.contextHandle = MemorySegment.NULL;
+            this.vocabularySize = 0;
+            this.batchWindow = null;
+            this.nativeWorker = null;
+            this.placeholderLogits = new float[1000]; // Placeholder size when no native context is available
+        }
+
         logger.debug("Created FfmContext with parameters: contextSize={}, batchSize={}, threadCount={}, logitsAll={}",
                 params.getContextSize(), params.getBatchSize(), params.getThreadCount(), params.isLogitsAll());
     }
@@ -40,15 +133,27 @@ public class FfmContext implements Context {
     @Override
     public LLM getModel() {
         checkClosed();
-        // Return a new FfmLLM that wraps this model
-        return new FfmLLM(model);
+        // A view of the shared model; closing it leaves the model to its owners
+        return modelView;
+    }
+
+    @Override
+    public KvCache getKvCache() {
+        checkClosed();
+        return kvCache;
+    }
+
+    @Override
+    public SessionState getSessionState() {
+        checkClosed();
+        return sessionState;
     }
 
     @Override
     public Batch createBatch(int maxTokens) {
         checkClosed();
         logger.debug("Creating batch with maxTokens={}", maxTokens);
-        return new FfmBatch(maxTokens);
+        return new FfmBatch(maxTokens, maxSequences);
     }
 
     @Override
@@ -62,17 +167,211 @@ public class FfmContext implements Context {
 
         logger.debug("Processing batch with {} tokens", batch.getTokenCount());
 
-        // TODO: Implement actual batch processing using FFM API
+        if (!hasNativeContext()) {
+            logger.warn("No native context available, skipping batch evaluation");
+            return BatchResult.success();
+        }
+
+        if (!(batch instanceof FfmBatch ffmBatch)) {
+            logger.error("Cannot process batch of type {}", batch.getClass().getName());
+            return BatchResult.failure("Batch must be created by this context");
+        }
+
+        if (ffmBatch.getTokenCount() == 0) {
+            return BatchResult.failure("Batch is empty");
+        }
+
+        return callNative(() -> decodeBatch(ffmBatch));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With a dedicated native thread the batch is queued on that thread. Otherwise it runs on the executor from
+     * {@link ContextParams#getAsyncExecutor()}, one batch at a time, or on a platform thread the context starts
+     * on first use. Blocking native decodes are never run on the common fork-join pool.
+     */
+    @Override
+    public CompletableFuture<BatchResult> processAsync(Batch batch) {
+        checkClosed();
+        if (nativeWorker != null) {
+            return nativeWorker.submit(() -> process(batch));
+        }
+        if (asyncExecutor != null) {
+            return CompletableFuture.supplyAsync(() -> process(batch), asyncExecutor);
+        }
+        return asyncWorker().submit(() -> process(batch));
+    }
 
-        // For now, just return a successful result
+    /**
+     * Gets the thread for asynchronous calls, starting it if needed.
+     *
+     * @return The asynchronous worker
+     */
+    private synchronized FfmNativeWorker asyncWorker() {
+        // Checked under the same lock as in close(), so that close() sees every worker started before it
+        if (closing.get()) {
+            throw new IllegalStateException("Context is closed");
+        }
+        if (asyncWorker == null) {
+            asyncWorker = new FfmNativeWorker();
+        }
+        return asyncWorker;
+    }
+
+    /**
+     * Decodes a batch, splitting it if it is larger than the native batch size.
+     *
+     * @param ffmBatch The batch to decode
+     * @return Result of the decode calls
+     */
+    private BatchResult decodeBatch(FfmBatch ffmBatch) {
+        synchronized (decodeLock) {
+            return decodeBatchLocked(ffmBatch);
+        }
+    }
+
+    /**
+     * Decodes a batch while holding the decode lock.
+     *
+     * @param ffmBatch The batch to decode
+     * @return Result of the decode calls
+     */
+    private BatchResult decodeBatchLocked(FfmBatch ffmBatch) {
+        // A batch queued before the context was closed must not touch the freed native context
+        checkClosed();
+        int tokenCount = ffmBatch.getTokenCount();
+
+        // Tokens without an explicit position continue the default sequence from wherever the KV cache ends
+        if (ffmBatch.getAutoPositionedCount() > 0) {
+            int position = LlamaCPP.llama_memory_seq_pos_max(LlamaCPP.llama_get_memory(contextHandle), 0) + 1;
+            ffmBatch.positionDefaultSequence(position, params.isLogitsAll());
+        }
+
+        if (tokenCount <= nativeBatchSize) {
+            return decode(ffmBatch.segment());
+        }
+
+        // Split batches larger than the native batch size into windows over the same native arrays
+        for (int offset = 0; offset < tokenCount; offset += nativeBatchSize) {
+            int count = Math.min(nativeBatchSize, tokenCount - offset);
+            ffmBatch.fillWindow(batchWindow, offset, count);
+
+            BatchResult result = decode(batchWindow);
+            if (!result.isSuccess()) {
+                return result;
+            }
+        }
+
+        return BatchResult.success();
+    }
+
+    /**
+     * Decodes a native batch.
+     *
+     * @param batch The native {@code llama_batch}
+     * @return Result of the decode call
+     */
+    private BatchResult decode(MemorySegment batch) {
+        checkClosed();
+
+        // Logits returned by earlier views are invalidated by the next decode
+        lastLogits = null;
+        hasLogits = false;
+
+        int status = LlamaCPP.llama_decode(contextHandle, batch);
+        if (status != 0) {
+            logger.error("llama_decode failed with status {}", status);
+            return BatchResult.failure("Decoding failed with status " + status);
+        }
+
+        hasLogits = true;
         return BatchResult.success();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a convenience copy of {@link #getLogitsSegment(int)} for the last evaluated token.
+     */
     @Override
     public float[] getLogits() {
         checkClosed();
         logger.debug("Getting logits");
-        return logits;
+
+        if (!hasNativeContext()) {
+            return placeholderLogits;
+        }
+        if (!hasLogits) {
+            return new float[vocabularySize];
+        }
+        return getLogitsSegment(-1).toArray(JAVA_FLOAT);
+    }
+
+    @Override
+    public FloatBuffer getLogitsView() {
+        checkClosed();
+        return getLogitsView(-1);
+    }
+
+    /**
+     * Gets a read-only view over the logits of a token of the last processed batch.
+     * The view reads the native logits in place and is only valid until the next call to {@link #process(Batch)}.
+     *
+     * @param index Index of the token in the last batch, negative values count from the end
+     * @return Read-only buffer of logits
+     */
+    public FloatBuffer getLogitsView(int index) {
+        checkClosed();
+        if (!hasNativeContext()) {
+            // Heap segments over a float[] cannot be viewed as byte buffers
+            return FloatBuffer.wrap(placeholderLogits).asReadOnlyBuffer();
+        }
+        return getLogitsSegment(index).asByteBuffer().order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Gets a read-only segment over the logits of a token of the last processed batch.
+     * The segment is only valid until the next call to {@link #process(Batch)} and must not be used after
+     * the context is closed.
+     *
+     * @param index Index of the token in the last batch, negative values count from the end
+     * @return Read-only segment of {@code vocabularySize} floats
+     * @throws IllegalStateException if no logits are available for the index
+     */
+    public MemorySegment getLogitsSegment(int index) {
+        checkClosed();
+
+        if (!hasNativeContext()) {
+            return MemorySegment.ofArray(placeholderLogits).asReadOnly();
+        }
+        if (!hasLogits) {
+            throw new IllegalStateException("No logits available, process a batch first");
+        }
+        if (index == -1 && lastLogits != null) {
+            return lastLogits;
+        }
+
+        MemorySegment pointer = LlamaCPP.llama_get_logits_ith(contextHandle, index);
+        if (pointer.equals(MemorySegment.NULL)) {
+            throw new IllegalStateException("No logits available for token index " + index);
+        }
+
+        // Scope the view to the context arena so it cannot outlive the native context
+        MemorySegment segment = pointer.reinterpret(JAVA_FLOAT.scale(0, vocabularySize), arena, null).asReadOnly();
+        if (index == -1) {
+            lastLogits = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * Gets the size of the vocabulary, which is the number of logits per evaluated token.
+     *
+     * @return Vocabulary size, or 0 if no native context exists
+     */
+    public int getVocabularySize() {
+        return vocabularySize;
     }
 
     @Override
@@ -88,17 +387,114 @@ public class FfmContext implements Context {
                 params.getTemperature(), params.getTopP(), params.getTopK(),
                 params.getRepetitionPenalty(), params.getMaxTokens());
 
-        return new FfmSampler(params);
+        return new FfmSampler(params, this);
     }
 
     @Override
     public void close() {
-        if (!closed) {
-            logger.info("Closing context");
-            // TODO: Implement actual cleanup using FFM API
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        logger.info("Closing context");
+
+        // Stop taking asynchronous calls and let the queued ones finish before the native context goes away
+        if (nativeWorker != null) {
+            nativeWorker.close();
+        }
+        if (asyncExecutor != null) {
+            asyncExecutor.close();
+        }
+        FfmNativeWorker worker;
+        synchronized (this) {
+            worker = asyncWorker;
+        }
+        if (worker != null) {
+            worker.close();
+        }
+
+        // Wait for a decode in flight; calls that start later see the context closed
+        synchronized (decodeLock) {
             closed = true;
-            logger.debug("Context closed");
+            if (hasNativeContext()) {
+                LlamaCPP.llama_free(contextHandle);
+                model.release();
+            }
+            arena.close();
+        }
+        logger.debug("Context closed");
+    }
+
+    /**
+     * Gets the native context handle.
+     *
+     * @return The native context handle, or {@link MemorySegment#NULL} if no native context exists
+     */
+    public MemorySegment getContextHandle() {
+        checkClosed();
+        return contextHandle;
+    }
+
+    /**
+     * Runs a native call of this context, on the dedicated native thread if the context has one.
+     * Virtual threads waiting for the result park instead of pinning their carrier thread.
+     *
+     * @param call The native call
+     * @param <T> Result type
+     * @return Result of the call
+     */
+    <T> T callNative(Supplier<T> call) {
+        return nativeWorker == null ? call.get() : nativeWorker.call(call);
+    }
+
+    /**
+     * Runs a native call on the memory of this context, in order with the batches being decoded.
+     *
+     * @param call The native call, given the {@code llama_memory_t} handle
+     * @param fallback Result returned without calling if there is no native context
+     * @param <T> Result type
+     * @return Result of the call
+     */
+    <T> T callMemory(Function<MemorySegment, T> call, T fallback) {
+        return callContext(handle -> call.apply(LlamaCPP.llama_get_memory(handle)), fallback);
+    }
+
+    /**
+     * Runs a native call on the native context, in order with the batches being decoded.
+     *
+     * @param call The native call, given the {@code llama_context} handle
+     * @param fallback Result returned without calling if there is no native context
+     * @param <T> Result type
+     * @return Result of the call
+     */
+    <T> T callContext(Function<MemorySegment, T> call, T fallback) {
+        checkClosed();
+        if (!hasNativeContext()) {
+            return fallback;
         }
+        return callNative(() -> {
+            synchronized (decodeLock) {
+                checkClosed();
+                return call.apply(contextHandle);
+            }
+        });
+    }
+
+    /**
+     * Gets the parameters this context was created with.
+     *
+     * @return The context parameters
+     */
+    public ContextParams getParams() {
+        return params;
+    }
+
+    /**
+     * Checks whether this context is backed by a native llama.cpp context.
+     *
+     * @return true if a native context exists, false otherwise
+     */
+    boolean hasNativeContext() {
+        return !contextHandle.equals(MemorySegment.NULL);
     }
 
     /**
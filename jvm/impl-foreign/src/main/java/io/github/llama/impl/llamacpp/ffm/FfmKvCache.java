@@ -0,0 +1,108 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.context.KvCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link KvCache} using Java's Foreign Function & Memory API.
+ * This class manages the memory of an {@link FfmContext} with the {@code llama_memory_*} functions.
+ * <p>
+ * Calls run on the native thread of the context, if it has one, and never overlap a batch being decoded.
+ * A context without a native context has an empty cache that ignores all changes.
+ */
+public class FfmKvCache implements KvCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmKvCache.class);
+
+    private final FfmContext context;
+
+    /**
+     * Creates a new instance of the FfmKvCache.
+     *
+     * @param context The context whose cache is managed
+     */
+    FfmKvCache(FfmContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void clear() {
+        logger.debug("Clearing KV cache");
+        context.callMemory(memory -> {
+            // Only drop the cell metadata; zeroing the data buffers is not needed to reuse the cells
+            LlamaCPP.llama_memory_clear(memory, false);
+            return null;
+        }, null);
+    }
+
+    @Override
+    public boolean remove(int seqId, int p0, int p1) {
+        logger.debug("Removing positions [{}, {}) of sequence {}", p0, p1, seqId);
+        return context.callMemory(memory -> LlamaCPP.llama_memory_seq_rm(memory, seqId, p0, p1), true);
+    }
+
+    @Override
+    public void copy(int srcSeqId, int dstSeqId, int p0, int p1) {
+        logger.debug("Copying positions [{}, {}) of sequence {} to sequence {}", p0, p1, srcSeqId, dstSeqId);
+        context.callMemory(memory -> {
+            LlamaCPP.llama_memory_seq_cp(memory, srcSeqId, dstSeqId, p0, p1);
+            return null;
+        }, null);
+    }
+
+    @Override
+    public void keep(int seqId) {
+        logger.debug("Keeping only sequence {}", seqId);
+        context.callMemory(memory -> {
+            LlamaCPP.llama_memory_seq_keep(memory, seqId);
+            return null;
+        }, null);
+    }
+
+    @Override
+    public void shift(int seqId, int p0, int p1, int delta) {
+        logger.debug("Shifting positions [{}, {}) of sequence {} by {}", p0, p1, seqId, delta);
+        context.callMemory(memory -> {
+            LlamaCPP.llama_memory_seq_add(memory, seqId, p0, p1, delta);
+            return null;
+        }, null);
+    }
+
+    @Override
+    public void divide(int seqId, int p0, int p1, int divisor) {
+        if (divisor <= 1) {
+            logger.error("Invalid position divisor: {}", divisor);
+            throw new IllegalArgumentException("Divisor must be greater than 1");
+        }
+        logger.debug("Dividing positions [{}, {}) of sequence {} by {}", p0, p1, seqId, divisor);
+        context.callMemory(memory -> {
+            LlamaCPP.llama_memory_seq_div(memory, seqId, p0, p1, divisor);
+            return null;
+        }, null);
+    }
+
+    @Override
+    public int getMinPosition(int seqId) {
+        return context.callMemory(memory -> LlamaCPP.llama_memory_seq_pos_min(memory, seqId), -1);
+    }
+
+    @Override
+    public int getMaxPosition(int seqId) {
+        return context.callMemory(memory -> LlamaCPP.llama_memory_seq_pos_max(memory, seqId), -1);
+    }
+
+    @Override
+    public boolean canShift() {
+        return context.callMemory(LlamaCPP::llama_memory_can_shift, false);
+    }
+
+    @Override
+    public void defrag() {
+        logger.debug("Scheduling KV cache defragmentation");
+        context.callContext(handle -> {
+            LlamaCPP.llama_kv_self_defrag(handle);
+            return null;
+        }, null);
+    }
+}
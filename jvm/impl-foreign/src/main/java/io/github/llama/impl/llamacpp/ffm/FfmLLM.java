@@ -11,21 +11,35 @@ import org.slf4j.LoggerFactory;
 /**
  * Implementation of {@link LLM} using Java's Foreign Function & Memory API.
  * This class wraps a {@link FfmModel} and provides the LLM interface.
+ * <p>
+ * Several handles can share one model. Each handle gives back its own reference to the model when it is closed.
  */
 public class FfmLLM implements LLM, io.github.llama.api.model.Model {
 
     private static final Logger logger = LoggerFactory.getLogger(FfmLLM.class);
 
     private final FfmModel model;
+    private final Runnable releaser;
     private boolean closed = false;
 
     /**
-     * Creates a new instance of the FfmLLM.
+     * Creates a new instance of the FfmLLM that owns the reference the model was created with.
      *
      * @param model The model to wrap
      */
     public FfmLLM(FfmModel model) {
+        this(model, model::close);
+    }
+
+    /**
+     * Creates a new instance of the FfmLLM.
+     *
+     * @param model The model to wrap
+     * @param releaser Gives back the handle's reference to the model when the handle is closed
+     */
+    FfmLLM(FfmModel model, Runnable releaser) {
         this.model = model;
+        this.releaser = releaser;
         logger.debug("Created FfmLLM wrapping model: {}", model.getModelInfo().getDescription());
     }
 
@@ -60,7 +74,7 @@ public class FfmLLM implements LLM, io.github.llama.api.model.Model {
     public void close() {
         if (!closed) {
             logger.info("Closing LLM");
-            model.close();
+            releaser.run();
             closed = true;
             logger.debug("LLM closed");
         }
@@ -1,6 +1,7 @@
 package io.github.llama.impl.llamacpp.ffm;
 
 import io.github.llama.api.LLM;
+import io.github.llama.api.gguf.GgufFile;
 import io.github.llama.api.model.ModelParams;
 import io.github.llama.api.spi.LLMFactory;
 import org.slf4j.Logger;
@@ -66,10 +67,14 @@ public class FfmLLMFactory implements LLMFactory {
         }
 
         try {
-            // Check if the file has a valid extension
+            // GGUF files are recognized by their magic bytes, whatever their name
+            if (GgufFile.isGguf(modelPath)) {
+                return true;
+            }
+
+            // Legacy GGML files have no common magic, so fall back to their extensions
             String fileName = modelPath.getFileName().toString().toLowerCase();
-            return fileName.endsWith(".gguf") ||
-                   fileName.endsWith(".bin") ||
+            return fileName.endsWith(".bin") ||
                    fileName.endsWith(".ggml");
         } catch (Exception e) {
             logger.error("Error checking if model is supported", e);
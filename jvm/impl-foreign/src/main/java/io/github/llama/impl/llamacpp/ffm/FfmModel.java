@@ -7,10 +7,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Implementation of {@link Model} using Java's Foreign Function & Memory API.
  * This class provides access to a loaded llama.cpp model.
+ * <p>
+ * The native model is reference counted, so that several {@link FfmLLM} handles and contexts can share one
+ * copy of the weights. A model starts with the reference released by {@link #close()}; further references are
+ * taken with {@link #retain()} and given back with {@link #release()}. The weights are freed when the last
+ * reference is released.
  */
 public class FfmModel implements Model {
 
@@ -19,7 +26,11 @@ public class FfmModel implements Model {
     private final FfmModelInfo modelInfo;
     private final FfmTokenizer tokenizer;
     private final MemorySegment modelHandle;
-    private boolean closed = false;
+    private final List<Path> modelPaths;
+    private final Runnable onFree;
+    private int referenceCount = 1;
+    private boolean creationReferenceReleased = false;
+    private volatile boolean closed = false;
 
     /**
      * Creates a new instance of the FfmModel.
@@ -29,9 +40,37 @@ public class FfmModel implements Model {
      * @param modelHandle The native model handle
      */
     public FfmModel(FfmModelInfo modelInfo, FfmTokenizer tokenizer, MemorySegment modelHandle) {
+        this(modelInfo, tokenizer, modelHandle, null);
+    }
+
+    /**
+     * Creates a new instance of the FfmModel that reports when its native model is freed.
+     *
+     * @param modelInfo   The model information
+     * @param tokenizer   The tokenizer
+     * @param modelHandle The native model handle
+     * @param onFree      Called after the last reference is released, or null
+     */
+    FfmModel(FfmModelInfo modelInfo, FfmTokenizer tokenizer, MemorySegment modelHandle, Runnable onFree) {
+        this(modelInfo, tokenizer, modelHandle, List.of(), onFree);
+    }
+
+    /**
+     * Creates a new instance of the FfmModel loaded from files.
+     *
+     * @param modelInfo   The model information
+     * @param tokenizer   The tokenizer
+     * @param modelHandle The native model handle
+     * @param modelPaths  The files the model was loaded from
+     * @param onFree      Called after the last reference is released, or null
+     */
+    FfmModel(FfmModelInfo modelInfo, FfmTokenizer tokenizer, MemorySegment modelHandle, List<Path> modelPaths,
+             Runnable onFree) {
         this.modelInfo = modelInfo;
         this.tokenizer = tokenizer;
         this.modelHandle = modelHandle;
+        this.modelPaths = List.copyOf(modelPaths);
+        this.onFree = onFree;
         logger.debug("Created FfmModel with info: {}", modelInfo.getDescription());
     }
 
@@ -57,16 +96,81 @@ public class FfmModel implements Model {
         return modelHandle;
     }
 
+    /**
+     * Gets the files the model was loaded from.
+     *
+     * @return The model files, empty if unknown
+     */
+    List<Path> getModelPaths() {
+        return modelPaths;
+    }
+
+    /**
+     * Takes a reference to the model.
+     *
+     * @return Whether the reference was taken; false if the model has already been freed
+     */
+    synchronized boolean retain() {
+        if (closed) {
+            return false;
+        }
+        referenceCount++;
+        return true;
+    }
+
+    /**
+     * Gives back a reference taken with {@link #retain()}, freeing the model if it was the last one.
+     */
+    void release() {
+        synchronized (this) {
+            if (closed || --referenceCount > 0) {
+                return;
+            }
+            free();
+        }
+        // Run outside the lock, as the callback may take locks of its own
+        if (onFree != null) {
+            onFree.run();
+        }
+    }
+
+    /**
+     * Gets the number of references to the model.
+     *
+     * @return Number of references, 0 once the model has been freed
+     */
+    synchronized int getReferenceCount() {
+        return referenceCount;
+    }
+
+    /**
+     * Gives back the reference the model was created with. The model is freed once no other reference remains.
+     */
     @Override
     public void close() {
-        if (!closed) {
-            logger.info("Closing model");
-            if (modelHandle != null && !modelHandle.equals(MemorySegment.NULL)) {
-                LlamaCPP.llama_model_free(modelHandle);
+        synchronized (this) {
+            if (creationReferenceReleased) {
+                return;
             }
-            closed = true;
-            logger.debug("Model closed");
+            creationReferenceReleased = true;
+        }
+        release();
+    }
+
+    private void free() {
+        logger.info("Closing model");
+        // The tokenizer reads the vocabulary of the native model, so it must not outlive it
+        if (tokenizer != null) {
+            tokenizer.close();
+        }
+        if (modelHandle != null && !modelHandle.equals(MemorySegment.NULL)) {
+            // Metadata that has not been read yet comes from the handle, so read it before the handle is freed
+            modelInfo.loadMetadata();
+            LlamaCPP.llama_model_free(modelHandle);
         }
+        closed = true;
+        referenceCount = 0;
+        logger.debug("Model closed");
     }
 
     /**
@@ -8,10 +8,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Implementation of {@link ModelInfo} using Java's Foreign Function & Memory API.
  * This class provides information about a loaded llama.cpp model.
+ * <p>
+ * The metadata can be given as a map or as a loader, which is only called when the metadata is first read.
  */
 public class FfmModelInfo implements ModelInfo {
 
@@ -25,7 +28,8 @@ public class FfmModelInfo implements ModelInfo {
     private final int kvHeadCount;
     private final float ropeFreqScaleTrain;
     private final int ropeType;
-    private final Map<String, String> metadata;
+    private volatile Map<String, String> metadata;
+    private Supplier<Map<String, String>> metadataLoader;
     private final String description;
     private final long size;
     private final String chatTemplate;
@@ -71,6 +75,50 @@ public class FfmModelInfo implements ModelInfo {
             boolean hasDecoder,
             int decoderStartToken,
             boolean recurrent
+    ) {
+        this(parameterCount, contextSize, embeddingSize, layerCount, headCount, kvHeadCount, ropeFreqScaleTrain,
+                ropeType, (Supplier<Map<String, String>>) null, description, size, chatTemplate, hasEncoder,
+                hasDecoder, decoderStartToken, recurrent);
+        this.metadata = new HashMap<>(metadata);
+    }
+
+    /**
+     * Creates a new instance of the FfmModelInfo with lazily loaded metadata.
+     *
+     * @param parameterCount Number of parameters in the model
+     * @param contextSize Context size used during training
+     * @param embeddingSize Embedding size
+     * @param layerCount Number of layers
+     * @param headCount Number of attention heads
+     * @param kvHeadCount Number of key-value heads
+     * @param ropeFreqScaleTrain RoPE frequency scaling factor
+     * @param ropeType RoPE type
+     * @param metadataLoader Loads the metadata map when it is first read
+     * @param description Model description
+     * @param size Total size of all tensors in the model
+     * @param chatTemplate Default chat template
+     * @param hasEncoder Whether the model contains an encoder
+     * @param hasDecoder Whether the model contains a decoder
+     * @param decoderStartToken Decoder start token
+     * @param recurrent Whether the model is recurrent
+     */
+    public FfmModelInfo(
+            long parameterCount,
+            int contextSize,
+            int embeddingSize,
+            int layerCount,
+            int headCount,
+            int kvHeadCount,
+            float ropeFreqScaleTrain,
+            int ropeType,
+            Supplier<Map<String, String>> metadataLoader,
+            String description,
+            long size,
+            String chatTemplate,
+            boolean hasEncoder,
+            boolean hasDecoder,
+            int decoderStartToken,
+            boolean recurrent
     ) {
         this.parameterCount = parameterCount;
         this.contextSize = contextSize;
@@ -80,7 +128,7 @@ public class FfmModelInfo implements ModelInfo {
         this.kvHeadCount = kvHeadCount;
         this.ropeFreqScaleTrain = ropeFreqScaleTrain;
         this.ropeType = ropeType;
-        this.metadata = new HashMap<>(metadata);
+        this.metadataLoader = metadataLoader;
         this.description = description;
         this.size = size;
         this.chatTemplate = chatTemplate;
@@ -134,12 +182,41 @@ public class FfmModelInfo implements ModelInfo {
 
     @Override
     public String getMetadata(String key) {
-        return metadata.get(key);
+        return metadata().get(key);
     }
 
     @Override
     public Set<String> getMetadataKeys() {
-        return Collections.unmodifiableSet(metadata.keySet());
+        return Collections.unmodifiableSet(metadata().keySet());
+    }
+
+    /**
+     * Loads the metadata now if it has not been read yet.
+     * The model calls this before it frees the native handle the loader reads from.
+     */
+    void loadMetadata() {
+        metadata();
+    }
+
+    /**
+     * Gets the metadata, loading it on first use.
+     *
+     * @return Metadata map
+     */
+    private Map<String, String> metadata() {
+        Map<String, String> loaded = metadata;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = metadata;
+                if (loaded == null) {
+                    loaded = metadataLoader != null ? new HashMap<>(metadataLoader.get()) : new HashMap<>();
+                    metadata = loaded;
+                    metadataLoader = null;
+                    logger.debug("Loaded {} metadata entries", loaded.size());
+                }
+            }
+        }
+        return loaded;
     }
 
     @Override
@@ -190,6 +267,7 @@ public class FfmModelInfo implements ModelInfo {
         private float ropeFreqScaleTrain = 0.0f;
         private int ropeType = 0;
         private final Map<String, String> metadata = new HashMap<>();
+        private Supplier<Map<String, String>> metadataLoader = null;
         private String description = "";
         private long size = 0;
         private String chatTemplate = null;
@@ -243,6 +321,11 @@ public class FfmModelInfo implements ModelInfo {
             return this;
         }
 
+        public Builder metadataLoader(Supplier<Map<String, String>> metadataLoader) {
+            this.metadataLoader = metadataLoader;
+            return this;
+        }
+
         public Builder description(String description) {
             this.description = description;
             return this;
@@ -279,6 +362,32 @@ public class FfmModelInfo implements ModelInfo {
         }
 
         public FfmModelInfo build() {
+            if (metadataLoader != null) {
+                Map<String, String> entries = new HashMap<>(metadata);
+                Supplier<Map<String, String>> loader = metadataLoader;
+                return new FfmModelInfo(
+                        parameterCount,
+                        contextSize,
+                        embeddingSize,
+                        layerCount,
+                        headCount,
+                        kvHeadCount,
+                        ropeFreqScaleTrain,
+                        ropeType,
+                        () -> {
+                            Map<String, String> loaded = new HashMap<>(loader.get());
+                            loaded.putAll(entries);
+                            return loaded;
+                        },
+                        description,
+                        size,
+                        chatTemplate,
+                        hasEncoder,
+                        hasDecoder,
+                        decoderStartToken,
+                        recurrent
+                );
+            }
             return new FfmModelInfo(
                     parameterCount,
                     contextSize,
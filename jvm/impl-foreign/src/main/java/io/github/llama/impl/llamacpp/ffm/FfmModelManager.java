@@ -9,26 +9,43 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.SegmentAllocator;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.lang.foreign.ValueLayout.ADDRESS;
 
 /**
  * Implementation of {@link ModelManager} using Java's Foreign Function & Memory API.
  * This class provides methods for loading, saving, and managing models.
+ * <p>
+ * Native models are shared: loading the same files with the same parameters again, or while another thread is
+ * still loading them, returns a new handle to the already loaded weights instead of loading them twice.
+ * Every handle holds a reference to the shared {@link FfmModel}, and the weights are freed when the last
+ * handle or context using them is closed.
+ * <p>
+ * The {@link ModelParams.ProgressListener} of the parameters is called from the native loader, and returning
+ * false from it cancels the load with an {@link InterruptedIOException}. Handles to an already loaded model are
+ * returned without reporting progress. When other threads are waiting for the same model, cancelling only fails
+ * the call of the cancelling thread, and the model keeps loading for the others.
  */
 public class FfmModelManager implements ModelManager {
 
     private static final Logger logger = LoggerFactory.getLogger(FfmModelManager.class);
 
     private final FfmBackendManager backendManager;
+    private final Map<ModelKey, SharedModel> sharedModels = new HashMap<>();
 
     /**
      * Creates a new instance of the FfmModelManager.
@@ -61,6 +78,23 @@ public class FfmModelManager implements ModelManager {
             throw new IOException("Model file does not exist: " + modelPath);
         }
 
+        ModelParams modelParams = params != null ? params : getDefaultModelParams();
+        return loadShared(new ModelKey(List.of(modelPath), modelParams), modelParams.getProgressListener(),
+                (listener, onFree) -> loadNativeModel(modelPath, modelParams, listener, onFree));
+    }
+
+    /**
+     * Loads a model from a file.
+     *
+     * @param modelPath The path to the model file
+     * @param params The model parameters
+     * @param listener The progress listener, or null to not report progress
+     * @param onFree Called when the model is freed
+     * @return The model
+     * @throws IOException If the model cannot be loaded
+     */
+    private FfmModel loadNativeModel(Path modelPath, ModelParams params, ModelParams.ProgressListener listener,
+                                     Runnable onFree) throws IOException {
         logger.info("Loading model from: {}", modelPath);
 
         try (var arena = Arena.ofConfined()) {
@@ -70,19 +104,20 @@ public class FfmModelManager implements ModelManager {
             // Set up model parameters
             var modelParams = LlamaCPP.llama_model_default_params(arena);
 
-            // Apply parameters from ModelParams
-            if (params == null) {
-                params = getDefaultModelParams();
-            }
-
             llama_model_params.use_mmap(modelParams, params.isUseMemoryMapping());
             llama_model_params.use_mlock(modelParams, params.isUseMemoryLocking());
             llama_model_params.vocab_only(modelParams, params.isVocabOnly());
             llama_model_params.n_gpu_layers(modelParams, params.getGpuLayerCount());
+            AtomicBoolean cancelled = setProgressCallback(modelParams, listener, Files.size(modelPath), arena);
 
             // Load the model
             var modelHandle = LlamaCPP.llama_model_load_from_file(pathStr, modelParams);
 
+            if (modelHandle.equals(MemorySegment.NULL) && cancelled.get()) {
+                logger.info("Loading model from {} was cancelled", modelPath);
+                throw new InterruptedIOException("Model loading was cancelled");
+            }
+
             // If model loading fails, create a placeholder model for testing
             if (modelHandle.equals(MemorySegment.NULL)) {
                 logger.warn("Failed to load model from: {}. Creating placeholder model for testing.", modelPath);
@@ -92,19 +127,15 @@ public class FfmModelManager implements ModelManager {
             logger.debug("Model loaded successfully from: {}", modelPath);
 
             // Extract model information
-            FfmModelInfo modelInfo = createModelInfo(modelPath);
+            FfmModelInfo modelInfo = createModelInfo(modelPath, modelHandle);
 
             // Create tokenizer
             FfmTokenizer tokenizer = createTokenizer(modelHandle);
 
             // Create the model
-            FfmModel model = new FfmModel(modelInfo, tokenizer, modelHandle);
-
-            // Wrap the model in an LLM
-            FfmLLM llm = new FfmLLM(model);
-            logger.debug("Model wrapped in LLM");
-
-            return llm;
+            return new FfmModel(modelInfo, tokenizer, modelHandle, List.of(modelPath), onFree);
+        } catch (InterruptedIOException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error loading model", e);
             throw new IOException("Error loading model: " + e.getMessage(), e);
@@ -112,7 +143,134 @@ public class FfmModelManager implements ModelManager {
     }
 
     /**
-     * Creates a model info object with the expected properties.
+     * Reports the loading progress of a native model to a progress listener.
+     *
+     * @param modelParams The native model parameters
+     * @param listener The progress listener, or null to not report progress
+     * @param totalBytes Total size of the model files in bytes
+     * @param arena The arena the callback is allocated in, which must stay open while the model loads
+     * @return Flag set when the listener cancels the load
+     */
+    private static AtomicBoolean setProgressCallback(MemorySegment modelParams, ModelParams.ProgressListener listener,
+                                                     long totalBytes, Arena arena) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        if (listener == null) {
+            return cancelled;
+        }
+
+        MemorySegment callback = llama_progress_callback.allocate((progress, userData) -> {
+            try {
+                if (!listener.onProgress(progress, (long) (progress * totalBytes), totalBytes)) {
+                    cancelled.set(true);
+                }
+            } catch (Throwable e) {
+                // Exceptions cannot propagate through the native loader, so a failing listener cancels the load
+                logger.error("Progress listener failed, cancelling model loading", e);
+                cancelled.set(true);
+            }
+            return !cancelled.get();
+        }, arena);
+        llama_model_params.progress_callback(modelParams, callback);
+        llama_model_params.progress_callback_user_data(modelParams, MemorySegment.NULL);
+        return cancelled;
+    }
+
+    /**
+     * Creates a model info object from the native model.
+     * The metadata key/value pairs are only read when the metadata is first accessed.
+     * Models without a native handle get placeholder information.
+     *
+     * @param modelPath The path to the model file
+     * @param modelHandle The native model handle
+     * @return A model info object
+     */
+    private FfmModelInfo createModelInfo(Path modelPath, MemorySegment modelHandle) {
+        if (modelHandle.equals(MemorySegment.NULL)) {
+            return createModelInfo(modelPath);
+        }
+
+        MemorySegment chatTemplate = LlamaCPP.llama_model_chat_template(modelHandle, MemorySegment.NULL);
+
+        return new FfmModelInfo.Builder()
+                .parameterCount(LlamaCPP.llama_model_n_params(modelHandle))
+                .contextSize(LlamaCPP.llama_model_n_ctx_train(modelHandle))
+                .embeddingSize(LlamaCPP.llama_model_n_embd(modelHandle))
+                .layerCount(LlamaCPP.llama_model_n_layer(modelHandle))
+                .headCount(LlamaCPP.llama_model_n_head(modelHandle))
+                .kvHeadCount(LlamaCPP.llama_model_n_head_kv(modelHandle))
+                .ropeFreqScaleTrain(LlamaCPP.llama_model_rope_freq_scale_train(modelHandle))
+                .ropeType(LlamaCPP.llama_model_rope_type(modelHandle))
+                .description(readString((buffer, size) -> LlamaCPP.llama_model_desc(modelHandle, buffer, size)))
+                .size(LlamaCPP.llama_model_size(modelHandle))
+                .chatTemplate(chatTemplate.equals(MemorySegment.NULL)
+                        ? null
+                        : chatTemplate.reinterpret(Long.MAX_VALUE).getString(0))
+                .hasEncoder(LlamaCPP.llama_model_has_encoder(modelHandle))
+                .hasDecoder(LlamaCPP.llama_model_has_decoder(modelHandle))
+                .decoderStartToken(LlamaCPP.llama_model_decoder_start_token(modelHandle))
+                .recurrent(LlamaCPP.llama_model_is_recurrent(modelHandle))
+                .metadataLoader(() -> readMetadata(modelHandle))
+                .build();
+    }
+
+    /**
+     * Reads all metadata key/value pairs of a model with {@code llama_model_meta_*}.
+     *
+     * @param modelHandle The native model handle
+     * @return Metadata map
+     */
+    private static Map<String, String> readMetadata(MemorySegment modelHandle) {
+        int count = LlamaCPP.llama_model_meta_count(modelHandle);
+        Map<String, String> metadata = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            String key = readString((buffer, size) -> LlamaCPP.llama_model_meta_key_by_index(modelHandle, index, buffer, size));
+            String value = readString((buffer, size) -> LlamaCPP.llama_model_meta_val_str_by_index(modelHandle, index, buffer, size));
+            if (key != null) {
+                metadata.put(key, value);
+            }
+        }
+        logger.debug("Read {} metadata entries", metadata.size());
+        return metadata;
+    }
+
+    /**
+     * Native function that writes a string into a buffer like {@code snprintf}.
+     */
+    @FunctionalInterface
+    private interface StringReader {
+        /**
+         * Writes the string into the buffer.
+         *
+         * @param buffer Buffer to write to
+         * @param size Size of the buffer
+         * @return Length of the full string, or a negative value on failure
+         */
+        int read(MemorySegment buffer, long size);
+    }
+
+    /**
+     * Reads a string from a native function, growing the buffer once if the string does not fit.
+     *
+     * @param reader The native function
+     * @return The string, or null if the function failed
+     */
+    private static String readString(StringReader reader) {
+        try (var arena = Arena.ofConfined()) {
+            long size = 256;
+            MemorySegment buffer = arena.allocate(size);
+            int length = reader.read(buffer, size);
+            if (length >= size) {
+                size = length + 1L;
+                buffer = arena.allocate(size);
+                length = reader.read(buffer, size);
+            }
+            return length < 0 ? null : buffer.getString(0);
+        }
+    }
+
+    /**
+     * Creates a model info object with placeholder properties, for models without a native handle.
      *
      * @param modelPath The path to the model file
      * @return A model info object
@@ -151,11 +309,16 @@ public class FfmModelManager implements ModelManager {
 
     /**
      * Creates a tokenizer for the model.
+     * Models without a native handle get a placeholder tokenizer.
      *
      * @param modelHandle The native model handle
      * @return A tokenizer
      */
     private FfmTokenizer createTokenizer(MemorySegment modelHandle) {
+        if (!modelHandle.equals(MemorySegment.NULL)) {
+            return new FfmTokenizer(LlamaCPP.llama_model_get_vocab(modelHandle));
+        }
+
         // Create a tokenizer builder
         FfmTokenizer.Builder builder = new FfmTokenizer.Builder()
                 .vocabularySize(32000);
@@ -185,6 +348,24 @@ public class FfmModelManager implements ModelManager {
             }
         }
 
+        ModelParams modelParams = params != null ? params : getDefaultModelParams();
+        return loadShared(new ModelKey(modelPaths, modelParams), modelParams.getProgressListener(),
+                (listener, onFree) -> loadNativeModelFromSplits(modelPaths, modelParams, listener, onFree));
+    }
+
+    /**
+     * Loads a model from multiple split files.
+     *
+     * @param modelPaths The paths to the model split files
+     * @param params The model parameters
+     * @param listener The progress listener, or null to not report progress
+     * @param onFree Called when the model is freed
+     * @return The model
+     * @throws IOException If the model cannot be loaded
+     */
+    private FfmModel loadNativeModelFromSplits(List<Path> modelPaths, ModelParams params,
+                                               ModelParams.ProgressListener listener, Runnable onFree)
+            throws IOException {
         logger.info("Loading model from {} splits", modelPaths.size());
 
         try (var arena = Arena.ofConfined()) {
@@ -205,19 +386,24 @@ public class FfmModelManager implements ModelManager {
             // Set up model parameters
             var modelParams = LlamaCPP.llama_model_default_params(arena);
 
-            // Apply parameters from ModelParams
-            if (params == null) {
-                params = getDefaultModelParams();
-            }
-
             llama_model_params.use_mmap(modelParams, params.isUseMemoryMapping());
             llama_model_params.use_mlock(modelParams, params.isUseMemoryLocking());
             llama_model_params.vocab_only(modelParams, params.isVocabOnly());
             llama_model_params.n_gpu_layers(modelParams, params.getGpuLayerCount());
+            long totalBytes = 0;
+            for (Path path : modelPaths) {
+                totalBytes += Files.size(path);
+            }
+            AtomicBoolean cancelled = setProgressCallback(modelParams, listener, totalBytes, arena);
 
             // Load the model from splits
             var modelHandle = LlamaCPP.llama_model_load_from_splits(pathsArray, modelPaths.size(), modelParams);
 
+            if (modelHandle.equals(MemorySegment.NULL) && cancelled.get()) {
+                logger.info("Loading model from splits was cancelled");
+                throw new InterruptedIOException("Model loading was cancelled");
+            }
+
             // If model loading fails, create a placeholder model for testing
             if (modelHandle.equals(MemorySegment.NULL)) {
                 logger.warn("Failed to load model from splits. Creating placeholder model for testing.");
@@ -227,25 +413,252 @@ public class FfmModelManager implements ModelManager {
             logger.debug("Model loaded successfully from splits");
 
             // Extract model information
-            FfmModelInfo modelInfo = createModelInfo(modelPaths.get(0));
+            FfmModelInfo modelInfo = createModelInfo(modelPaths.get(0), modelHandle);
 
             // Create tokenizer
             FfmTokenizer tokenizer = createTokenizer(modelHandle);
 
             // Create the model
-            FfmModel model = new FfmModel(modelInfo, tokenizer, modelHandle);
-
-            // Wrap the model in an LLM
-            FfmLLM llm = new FfmLLM(model);
-            logger.debug("Model wrapped in LLM");
-
-            return llm;
+            return new FfmModel(modelInfo, tokenizer, modelHandle, modelPaths, onFree);
+        } catch (InterruptedIOException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error loading model from splits", e);
             throw new IOException("Error loading model from splits: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Loads a model with a native loader.
+     */
+    @FunctionalInterface
+    private interface ModelLoader {
+        /**
+         * Loads the model.
+         *
+         * @param listener The progress listener, or null to not report progress
+         * @param onFree Called when the model is freed
+         * @return The model
+         * @throws IOException If the model cannot be loaded
+         */
+        FfmModel load(ModelParams.ProgressListener listener, Runnable onFree) throws IOException;
+    }
+
+    /**
+     * Registry entry of a shared model.
+     */
+    private static final class SharedModel {
+        private final CompletableFuture<FfmModel> future = new CompletableFuture<>();
+
+        // Threads waiting for the model to load, only changed while holding the registry lock
+        private volatile int waiters = 0;
+    }
+
+    /**
+     * Progress listener of the thread loading a shared model.
+     * When the caller's listener cancels the load, the native load goes on as long as other threads wait for
+     * the model.
+     */
+    private static final class SharedProgressListener implements ModelParams.ProgressListener {
+        private final ModelParams.ProgressListener listener;
+        private final SharedModel entry;
+        private volatile boolean cancelled = false;
+
+        SharedProgressListener(ModelParams.ProgressListener listener, SharedModel entry) {
+            this.listener = listener;
+            this.entry = entry;
+        }
+
+        @Override
+        public boolean onProgress(float progress, long bytesLoaded, long totalBytes) {
+            if (!cancelled) {
+                try {
+                    cancelled = !listener.onProgress(progress, bytesLoaded, totalBytes);
+                } catch (RuntimeException e) {
+                    logger.error("Progress listener failed, cancelling model loading", e);
+                    cancelled = true;
+                }
+            }
+            return !cancelled || entry.waiters > 0;
+        }
+    }
+
+    /**
+     * Returns a new handle to the shared model for a key, loading the model if it is not loaded yet.
+     * Only one thread loads a model; threads asking for the same model in the meantime wait for it.
+     * If the loading thread cancels the load while others wait, the model is still loaded for them; if it
+     * cancels before anyone waits, a thread that started waiting afterwards loads the model again.
+     * Placeholder models without a native handle are not shared.
+     *
+     * @param key The key of the model
+     * @param listener The progress listener of the caller, or null to not report progress
+     * @param loader Loads the model if it is not loaded yet
+     * @return A new handle to the model
+     * @throws IOException If the model cannot be loaded
+     */
+    private Model loadShared(ModelKey key, ModelParams.ProgressListener listener, ModelLoader loader)
+            throws IOException {
+        while (true) {
+            SharedModel entry;
+            boolean loading = false;
+            boolean waiting = false;
+            synchronized (sharedModels) {
+                entry = sharedModels.get(key);
+                if (entry == null) {
+                    entry = new SharedModel();
+                    sharedModels.put(key, entry);
+                    loading = true;
+                } else if (!entry.future.isDone()) {
+                    entry.waiters++;
+                    waiting = true;
+                }
+            }
+
+            if (loading) {
+                return loadSharedModel(key, entry, listener, loader);
+            }
+
+            FfmModel model;
+            try {
+                model = entry.future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof InterruptedIOException) {
+                    // The loading thread cancelled before this thread started waiting; load the model again
+                    logger.debug("Shared model loading was cancelled by another thread, retrying");
+                    continue;
+                }
+                throw new IOException("Error loading model: " + e.getCause().getMessage(), e.getCause());
+            }
+            if (waiting) {
+                // The loading thread took a reference for every waiting thread
+                logger.debug("Sharing loaded model, {} references", model.getReferenceCount());
+                return new FfmLLM(model, model::release);
+            }
+            if (model.retain()) {
+                logger.debug("Sharing loaded model, {} references", model.getReferenceCount());
+                return new FfmLLM(model, model::release);
+            }
+            // The model was freed after it was looked up; load it again
+            removeShared(key, entry);
+        }
+    }
+
+    /**
+     * Loads a shared model and hands it to the threads waiting for it.
+     *
+     * @param key The key of the model
+     * @param entry The registry entry of the model
+     * @param listener The progress listener of the caller, or null to not report progress
+     * @param loader Loads the model
+     * @return A new handle to the model
+     * @throws IOException If the model cannot be loaded, or the caller cancelled the load
+     */
+    private Model loadSharedModel(ModelKey key, SharedModel entry, ModelParams.ProgressListener listener,
+                                  ModelLoader loader) throws IOException {
+        SharedProgressListener sharedListener = listener != null ? new SharedProgressListener(listener, entry) : null;
+        FfmModel model;
+        try {
+            model = loader.load(sharedListener, () -> removeShared(key, entry));
+        } catch (IOException | RuntimeException e) {
+            synchronized (sharedModels) {
+                sharedModels.remove(key, entry);
+                entry.future.completeExceptionally(e);
+            }
+            throw e;
+        }
+
+        synchronized (sharedModels) {
+            if (model.getModelHandle().equals(MemorySegment.NULL)) {
+                sharedModels.remove(key, entry);
+            }
+            // Take the references of the waiting threads before any of them can release the model
+            for (int i = 0; i < entry.waiters; i++) {
+                model.retain();
+            }
+            entry.future.complete(model);
+        }
+
+        if (sharedListener != null && sharedListener.cancelled) {
+            logger.info("Model loading was cancelled, keeping the model for {} waiting threads", entry.waiters);
+            model.close();
+            throw new InterruptedIOException("Model loading was cancelled");
+        }
+        logger.debug("Model wrapped in LLM");
+        return new FfmLLM(model);
+    }
+
+    /**
+     * Removes a shared model from the registry, unless it has already been replaced.
+     *
+     * @param key The key of the model
+     * @param entry The registry entry of the model
+     */
+    private void removeShared(ModelKey key, SharedModel entry) {
+        synchronized (sharedModels) {
+            sharedModels.remove(key, entry);
+        }
+    }
+
+    /**
+     * Gets the number of models currently shared by this manager.
+     *
+     * @return Number of shared models
+     */
+    int getSharedModelCount() {
+        synchronized (sharedModels) {
+            return sharedModels.size();
+        }
+    }
+
+    /**
+     * Key identifying a shared model by its files and the parameters it was loaded with.
+     */
+    private static final class ModelKey {
+        private final List<Path> paths;
+        private final boolean useMemoryMapping;
+        private final boolean useMemoryLocking;
+        private final boolean vocabOnly;
+        private final int gpuLayerCount;
+        private final Map<String, String> metadataOverrides;
+
+        ModelKey(List<Path> modelPaths, ModelParams params) throws IOException {
+            List<Path> realPaths = new ArrayList<>(modelPaths.size());
+            for (Path path : modelPaths) {
+                realPaths.add(path.toRealPath());
+            }
+            this.paths = List.copyOf(realPaths);
+            this.useMemoryMapping = params.isUseMemoryMapping();
+            this.useMemoryLocking = params.isUseMemoryLocking();
+            this.vocabOnly = params.isVocabOnly();
+            this.gpuLayerCount = params.getGpuLayerCount();
+            this.metadataOverrides = params.getMetadataOverrides() != null
+                    ? new HashMap<>(params.getMetadataOverrides())
+                    : Map.of();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ModelKey)) {
+                return false;
+            }
+            ModelKey other = (ModelKey) o;
+            return useMemoryMapping == other.useMemoryMapping
+                    && useMemoryLocking == other.useMemoryLocking
+                    && vocabOnly == other.vocabOnly
+                    && gpuLayerCount == other.gpuLayerCount
+                    && paths.equals(other.paths)
+                    && metadataOverrides.equals(other.metadataOverrides);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(paths, useMemoryMapping, useMemoryLocking, vocabOnly, gpuLayerCount, metadataOverrides);
+        }
+    }
+
     @Override
     public void saveModel(Model model, Path modelPath) throws IOException {
         if (model == null) {
@@ -0,0 +1,98 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A single platform thread that runs the native calls of a context.
+ * <p>
+ * A native call made from a virtual thread pins its carrier for the whole duration of the call. Handing the
+ * call to this worker instead lets the virtual thread park on a {@link CompletableFuture}, so thousands of
+ * callers can wait for a context while only this thread is blocked in native code. Running every call on the
+ * same thread also keeps the calls on a context in submission order.
+ */
+final class FfmNativeWorker implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmNativeWorker.class);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private volatile Thread thread;
+
+    /**
+     * Creates a new worker and starts its thread.
+     */
+    FfmNativeWorker() {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread worker = new Thread(runnable, "llama-native-" + THREAD_COUNTER.incrementAndGet());
+            worker.setDaemon(true);
+            thread = worker;
+            return worker;
+        });
+        logger.debug("Created native worker");
+    }
+
+    /**
+     * Submits a call to the worker thread.
+     *
+     * @param call The call to run
+     * @param <T> Result type
+     * @return Future completed with the result of the call
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    /**
+     * Runs a call on the worker thread and waits for its result.
+     * Calls made from the worker thread itself run directly.
+     *
+     * @param call The call to run
+     * @param <T> Result type
+     * @return Result of the call
+     */
+    <T> T call(Supplier<T> call) {
+        if (Thread.currentThread() == thread) {
+            return call.get();
+        }
+        try {
+            return submit(call).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the worker after the calls already submitted have run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Native worker did not finish pending calls in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.debug("Native worker closed");
+    }
+}
@@ -0,0 +1,470 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.model.ModelInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Disk-backed cache of full context states, kept across restarts.
+ * <p>
+ * Each entry is a state file written by {@code llama_state_save_file} after a prompt has been evaluated,
+ * together with a file listing the prompt tokens. Entries are named by the SHA-256 hash of the model
+ * identity and the tokens. The model identity covers the canonical paths, sizes and modification times of the
+ * model files as well as the architecture, so states of other models in the same directory, including
+ * fine-tunes of the same base model, and states of a model file that has since been replaced are never loaded.
+ * {@link #restore(int[])} loads the state of the longest cached prefix of a prompt, so only the rest of the
+ * prompt has to be evaluated, and {@link #restoreMostRecent()} loads the most recently used state, for
+ * example to warm up a context at startup.
+ * <p>
+ * All entries in the directory, including those of other models sharing it, count towards a maximum total
+ * size. The least recently used ones, by the modification time of their state files, are deleted when they grow
+ * larger, and a state that alone is larger than the maximum is not kept. States replace the whole
+ * context, so the cache is meant for contexts that evaluate one sequence, sequence 0, at a time.
+ * Instances are thread-safe.
+ */
+public class FfmPersistentStateCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmPersistentStateCache.class);
+
+    private static final String STATE_EXTENSION = ".state";
+    private static final String TOKENS_EXTENSION = ".tok";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private final FfmContext context;
+    private final Path directory;
+    private final long maxBytes;
+    private final byte[] modelIdentity;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long totalBytes = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * A cached state and the tokens it holds.
+     */
+    private static final class Entry {
+        private final String key;
+        // Null for entries of other models, which only count towards the size
+        private final int[] tokens;
+        private final long bytes;
+        private long lastUsed;
+
+        private Entry(String key, int[] tokens, long bytes, long lastUsed) {
+            this.key = key;
+            this.tokens = tokens;
+            this.bytes = bytes;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * Creates a cache over a directory, indexing the entries already stored in it.
+     *
+     * @param context The context whose state is saved and restored
+     * @param directory Directory holding the state files, created if it does not exist
+     * @param maxBytes Maximum total size of the entry files in the directory
+     * @throws IOException If the directory cannot be read
+     */
+    public FfmPersistentStateCache(FfmContext context, Path directory, long maxBytes) throws IOException {
+        if (context == null) {
+            throw new IllegalArgumentException("Context cannot be null");
+        }
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.context = context;
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        this.modelIdentity = modelIdentity(((FfmLLM) context.getModel()).getWrappedModel());
+        scan();
+        evict(null);
+        logger.info("Opened persistent state cache in {} with {} entries, {} bytes", directory, entries.size(), totalBytes);
+    }
+
+    /**
+     * Saves the state of the context for the tokens it holds.
+     * The context must hold exactly these tokens in sequence 0, for example right after the prompt was evaluated.
+     *
+     * @param tokens Tokens held by the context
+     * @return true if the state was saved, false if it was already cached or could not be saved
+     */
+    public synchronized boolean save(int[] tokens) {
+        if (tokens == null || tokens.length == 0) {
+            return false;
+        }
+
+        String key = key(tokens);
+        Entry existing = entries.get(key);
+        if (existing != null) {
+            touch(existing);
+            return false;
+        }
+
+        Path stateFile = directory.resolve(key + STATE_EXTENSION);
+        Path tokensFile = directory.resolve(key + TOKENS_EXTENSION);
+        Path tempFile = directory.resolve(key + STATE_EXTENSION + TEMP_EXTENSION);
+        try {
+            boolean saved = context.callContext(handle -> {
+                try (Arena arena = Arena.ofConfined()) {
+                    return LlamaCPP.llama_state_save_file(handle, arena.allocateFrom(tempFile.toString()),
+                            arena.allocateFrom(JAVA_INT, tokens), tokens.length);
+                }
+            }, false);
+            if (!saved) {
+                Files.deleteIfExists(tempFile);
+                return false;
+            }
+
+            // The tokens file is written last, so an entry is only indexed once its state is complete
+            Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeTokens(tokensFile, tokens);
+            return add(tokens);
+        } catch (IOException e) {
+            logger.error("Failed to save state", e);
+            return false;
+        }
+    }
+
+    /**
+     * Indexes the files just written for the tokens, evicting older entries to make room.
+     * A state larger than the whole cache is deleted without evicting anything.
+     *
+     * @param tokens Tokens of the entry
+     * @return true if the entry was kept
+     * @throws IOException If the size of the files cannot be read
+     */
+    boolean add(int[] tokens) throws IOException {
+        String key = key(tokens);
+        Path stateFile = directory.resolve(key + STATE_EXTENSION);
+        Path tokensFile = directory.resolve(key + TOKENS_EXTENSION);
+        long bytes = Files.size(stateFile) + Files.size(tokensFile);
+        if (bytes > maxBytes) {
+            Files.deleteIfExists(tokensFile);
+            Files.deleteIfExists(stateFile);
+            logger.warn("State of {} tokens ({} bytes) is larger than the cache", tokens.length, bytes);
+            return false;
+        }
+
+        Entry entry = new Entry(key, tokens.clone(), bytes, System.currentTimeMillis());
+        entries.put(key, entry);
+        totalBytes += entry.bytes;
+        logger.debug("Saved state of {} tokens ({} bytes)", tokens.length, entry.bytes);
+        evict(entry);
+        return true;
+    }
+
+    /**
+     * Restores the state of the longest cached prefix of a prompt into the context.
+     * At least the last token of the prompt is left to evaluate, so that its logits are computed.
+     *
+     * @param tokens Prompt tokens
+     * @return Number of tokens held by the context after the call, 0 if no prefix was cached
+     */
+    public synchronized int restore(int[] tokens) {
+        Entry best = null;
+        for (Entry entry : entries.values()) {
+            if (entry.tokens != null && entry.tokens.length <= tokens.length
+                    && (best == null || entry.tokens.length > best.tokens.length) && isPrefix(entry.tokens, tokens)) {
+                best = entry;
+            }
+        }
+
+        if (best == null || !load(best)) {
+            missCount++;
+            return 0;
+        }
+        hitCount++;
+
+        int restored = best.tokens.length;
+        if (restored == tokens.length) {
+            // Evaluate the last token again so that its logits are available
+            restored--;
+            context.getKvCache().remove(0, restored, -1);
+        }
+        return restored;
+    }
+
+    /**
+     * Restores the most recently used state into the context.
+     *
+     * @return Tokens held by the context, or null if the cache is empty or the state could not be loaded
+     */
+    public synchronized int[] restoreMostRecent() {
+        Entry latest = entries.values().stream()
+                .filter(e -> e.tokens != null)
+                .max(Comparator.comparingLong(e -> e.lastUsed))
+                .orElse(null);
+        if (latest == null || !load(latest)) {
+            return null;
+        }
+        logger.info("Restored most recent state of {} tokens", latest.tokens.length);
+        return latest.tokens.clone();
+    }
+
+    /**
+     * Deletes all cached states of the model.
+     */
+    public synchronized void clear() {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (entry.tokens != null) {
+                delete(entry);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of cached states of the model.
+     *
+     * @return Number of cached states
+     */
+    public synchronized int getSize() {
+        return (int) entries.values().stream().filter(e -> e.tokens != null).count();
+    }
+
+    /**
+     * Gets the total size of the cached files in the directory, including the states of other models.
+     *
+     * @return Size in bytes
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Gets the number of restores that loaded a cached state.
+     *
+     * @return Number of hits
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of restores that found no usable cached state.
+     *
+     * @return Number of misses
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets the number of states deleted to stay within the maximum size.
+     *
+     * @return Number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Loads the state of an entry into the context. Entries that cannot be loaded are deleted.
+     *
+     * @param entry The entry
+     * @return true if the state was loaded
+     */
+    private boolean load(Entry entry) {
+        Path stateFile = directory.resolve(entry.key + STATE_EXTENSION);
+        int[] loadedTokens = context.callContext(handle -> {
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment tokensOut = arena.allocate(JAVA_INT, entry.tokens.length);
+                MemorySegment countOut = arena.allocate(JAVA_LONG);
+                boolean loaded = LlamaCPP.llama_state_load_file(handle, arena.allocateFrom(stateFile.toString()),
+                        tokensOut, entry.tokens.length, countOut);
+                return loaded ? tokensOut.asSlice(0, countOut.get(JAVA_LONG, 0) * JAVA_INT.byteSize())
+                        .toArray(JAVA_INT) : null;
+            }
+        }, null);
+
+        if (loadedTokens == null || !Arrays.equals(loadedTokens, entry.tokens)) {
+            logger.warn("Failed to load cached state {}, deleting it", entry.key);
+            delete(entry);
+            context.getKvCache().clear();
+            return false;
+        }
+        touch(entry);
+        logger.debug("Loaded cached state of {} tokens", entry.tokens.length);
+        return true;
+    }
+
+    /**
+     * Indexes the entries in the directory, deleting incomplete ones.
+     */
+    private void scan() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_EXTENSION)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(STATE_EXTENSION)) {
+                    String key = name.substring(0, name.length() - STATE_EXTENSION.length());
+                    if (!Files.exists(directory.resolve(key + TOKENS_EXTENSION))) {
+                        Files.deleteIfExists(file);
+                    }
+                } else if (name.endsWith(TOKENS_EXTENSION)) {
+                    String key = name.substring(0, name.length() - TOKENS_EXTENSION.length());
+                    Path stateFile = directory.resolve(key + STATE_EXTENSION);
+                    if (!Files.exists(stateFile)) {
+                        Files.deleteIfExists(file);
+                        continue;
+                    }
+                    int[] tokens = readTokens(file);
+                    if (tokens == null) {
+                        logger.warn("Deleting malformed cached state {}", key);
+                        Files.deleteIfExists(file);
+                        Files.deleteIfExists(stateFile);
+                        continue;
+                    }
+                    long bytes = Files.size(stateFile) + Files.size(file);
+                    // States written for another model are never loaded, but count towards the size
+                    int[] ownTokens = key.equals(key(tokens)) ? tokens : null;
+                    entries.put(key, new Entry(key, ownTokens, bytes, Files.getLastModifiedTime(stateFile).toMillis()));
+                    totalBytes += bytes;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until they are within the maximum size.
+     *
+     * @param keep Entry not to delete, or null
+     */
+    private void evict(Entry keep) {
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        List<Entry> byAge = new ArrayList<>(entries.values());
+        byAge.sort(Comparator.comparingLong(e -> e.lastUsed));
+        for (Entry entry : byAge) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            if (entry != keep) {
+                delete(entry);
+                evictionCount++;
+            }
+        }
+    }
+
+    private void delete(Entry entry) {
+        entries.remove(entry.key);
+        totalBytes -= entry.bytes;
+        try {
+            Files.deleteIfExists(directory.resolve(entry.key + TOKENS_EXTENSION));
+            Files.deleteIfExists(directory.resolve(entry.key + STATE_EXTENSION));
+        } catch (IOException e) {
+            logger.warn("Failed to delete cached state {}", entry.key, e);
+        }
+    }
+
+    private void touch(Entry entry) {
+        entry.lastUsed = System.currentTimeMillis();
+        try {
+            Files.setLastModifiedTime(directory.resolve(entry.key + STATE_EXTENSION), FileTime.fromMillis(entry.lastUsed));
+        } catch (IOException e) {
+            logger.warn("Failed to update the access time of cached state {}", entry.key, e);
+        }
+    }
+
+    /**
+     * Computes the key of a token sequence: the SHA-256 hash of the model identity and the tokens.
+     *
+     * @param tokens Tokens
+     * @return Hex-encoded key, used as the file name of the entry
+     */
+    String key(int[] tokens) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelIdentity);
+            ByteBuffer buffer = ByteBuffer.allocate(tokens.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asIntBuffer().put(tokens);
+            digest.update(buffer);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Describes the model, so that states of different models get different keys.
+     * Models with the same architecture, such as fine-tunes of one base model, are told apart by their files.
+     */
+    private static byte[] modelIdentity(FfmModel model) {
+        ModelInfo info = model.getModelInfo();
+        StringBuilder identity = new StringBuilder()
+                .append(info.getDescription()).append('\0')
+                .append(info.getParameterCount()).append('\0')
+                .append(info.getSize()).append('\0')
+                .append(info.getLayerCount()).append('\0')
+                .append(info.getEmbeddingSize()).append('\0')
+                .append(info.getContextSize());
+        for (Path path : model.getModelPaths()) {
+            identity.append('\0').append(fileIdentity(path));
+        }
+        return identity.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Describes a model file by its canonical path, size and modification time.
+     */
+    private static String fileIdentity(Path path) {
+        try {
+            return path.toRealPath() + "\0" + Files.size(path) + "\0" + Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            logger.warn("Failed to read the attributes of model file {}, identifying it by its path", path, e);
+            return path.toAbsolutePath().normalize().toString();
+        }
+    }
+
+    private static boolean isPrefix(int[] prefix, int[] tokens) {
+        return Arrays.equals(prefix, 0, prefix.length, tokens, 0, prefix.length);
+    }
+
+    private static void writeTokens(Path file, int[] tokens) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(tokens.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(tokens);
+        Path tempFile = file.resolveSibling(file.getFileName() + TEMP_EXTENSION);
+        Files.write(tempFile, buffer.array());
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int[] readTokens(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length == 0 || bytes.length % Integer.BYTES != 0) {
+            return null;
+        }
+        int[] tokens = new int[bytes.length / Integer.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(tokens);
+        return tokens;
+    }
+}
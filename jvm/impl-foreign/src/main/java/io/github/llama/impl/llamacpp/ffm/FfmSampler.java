@@ -1,37 +1,114 @@
 package io.github.llama.impl.llamacpp.ffm;
 
+import io.github.llama.api.context.Context;
 import io.github.llama.api.sampling.Sampler;
 import io.github.llama.api.sampling.SamplerParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Random;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
 
 /**
  * Implementation of {@link Sampler} using Java's Foreign Function & Memory API.
  * This class provides sampling functionality for token generation.
+ * <p>
+ * A native {@code llama_sampler_chain} is built from the {@link SamplerParams} when the sampler is
+ * created. When sampling from an {@link FfmContext} the chain reads the logits directly from the
+ * native context, so the logit vector never crosses into the Java heap.
  */
 public class FfmSampler implements Sampler {
 
     private static final Logger logger = LoggerFactory.getLogger(FfmSampler.class);
 
+    /**
+     * Number of most recent tokens the repetition penalty looks at.
+     */
+    static final int PENALTY_LAST_N = 64;
+
+    private static final long TOKEN_DATA_SIZE = llama_token_data.layout().byteSize();
+    private static final long TOKEN_DATA_LOGIT_OFFSET =
+            llama_token_data.layout().byteOffset(MemoryLayout.PathElement.groupElement("logit"));
+    private static final long TOKEN_DATA_P_OFFSET =
+            llama_token_data.layout().byteOffset(MemoryLayout.PathElement.groupElement("p"));
+
     private final SamplerParams params;
-    private final Random random;
+    private final FfmContext context;
+    private final Arena arena;
+    private final MemorySegment chain;
+
+    // Candidate buffer used when sampling from Java logits, allocated on first use
+    private final MemorySegment candidateArray;
+    private MemorySegment candidates;
+    private int candidateCapacity = 0;
+
     private boolean closed = false;
 
     /**
-     * Creates a new instance of the FfmSampler.
+     * Creates a new instance of the FfmSampler that is not bound to a context.
      *
      * @param params The sampler parameters
      */
     public FfmSampler(SamplerParams params) {
+        this(params, null);
+    }
+
+    /**
+     * Creates a new instance of the FfmSampler.
+     *
+     * @param params The sampler parameters
+     * @param context The context whose logits are sampled, or null to only sample from Java logits
+     */
+    public FfmSampler(SamplerParams params, FfmContext context) {
         this.params = params;
-        this.random = new Random();
+        this.context = context;
+        this.arena = Arena.ofShared();
+        this.chain = createChain(params, arena);
+        this.candidateArray = llama_token_data_array.allocate(arena);
         logger.debug("Created FfmSampler with parameters: temperature={}, topP={}, topK={}, repetitionPenalty={}, maxTokens={}",
                 params.getTemperature(), params.getTopP(), params.getTopK(),
                 params.getRepetitionPenalty(), params.getMaxTokens());
     }
 
+    /**
+     * Builds the native sampler chain for the given parameters.
+     * The order follows llama.cpp: penalties, top-k, top-p, temperature and finally the distribution sampler.
+     * A temperature of zero or less selects greedy sampling.
+     *
+     * @param params The sampler parameters
+     * @param arena The arena used for the chain parameters
+     * @return The native sampler chain
+     */
+    private static MemorySegment createChain(SamplerParams params, Arena arena) {
+        MemorySegment chain = LlamaCPP.llama_sampler_chain_init(LlamaCPP.llama_sampler_chain_default_params(arena));
+
+        if (params.getRepetitionPenalty() != 1.0f) {
+            LlamaCPP.llama_sampler_chain_add(chain,
+                    LlamaCPP.llama_sampler_init_penalties(PENALTY_LAST_N, params.getRepetitionPenalty(), 0.0f, 0.0f));
+        }
+
+        if (params.getTemperature() <= 0.0f) {
+            LlamaCPP.llama_sampler_chain_add(chain, LlamaCPP.llama_sampler_init_greedy());
+            return chain;
+        }
+
+        if (params.getTopK() > 0) {
+            LlamaCPP.llama_sampler_chain_add(chain, LlamaCPP.llama_sampler_init_top_k(params.getTopK()));
+        }
+        if (params.getTopP() < 1.0f) {
+            LlamaCPP.llama_sampler_chain_add(chain, LlamaCPP.llama_sampler_init_top_p(params.getTopP(), 1));
+        }
+        LlamaCPP.llama_sampler_chain_add(chain, LlamaCPP.llama_sampler_init_temp(params.getTemperature()));
+        LlamaCPP.llama_sampler_chain_add(chain, LlamaCPP.llama_sampler_init_dist((int) LlamaCPP.LLAMA_DEFAULT_SEED()));
+        return chain;
+    }
+
     @Override
     public int sample(float[] logits) {
         checkClosed();
@@ -43,19 +120,80 @@ public class FfmSampler implements Sampler {
 
         logger.debug("Sampling from {} logits", logits.length);
 
-        // TODO: Implement actual sampling using FFM API
+        ensureCandidateCapacity(logits.length);
+        for (int i = 0; i < logits.length; i++) {
+            long offset = i * TOKEN_DATA_SIZE;
+            candidates.set(JAVA_INT, offset, i);
+            candidates.set(JAVA_FLOAT, offset + TOKEN_DATA_LOGIT_OFFSET, logits[i]);
+            candidates.set(JAVA_FLOAT, offset + TOKEN_DATA_P_OFFSET, 0.0f);
+        }
+
+        llama_token_data_array.data(candidateArray, candidates);
+        llama_token_data_array.size(candidateArray, logits.length);
+        llama_token_data_array.selected(candidateArray, -1L);
+        llama_token_data_array.sorted(candidateArray, false);
+
+        LlamaCPP.llama_sampler_apply(chain, candidateArray);
+
+        // Samplers may replace the data pointer, so read the selection through the array struct
+        long selected = llama_token_data_array.selected(candidateArray);
+        long size = llama_token_data_array.size(candidateArray);
+        MemorySegment data = llama_token_data_array.data(candidateArray).reinterpret(size * TOKEN_DATA_SIZE);
+        int token = data.get(JAVA_INT, selected * TOKEN_DATA_SIZE);
 
-        // For now, just return a simple placeholder implementation
-        // This is a very naive implementation that doesn't consider temperature, top-p, top-k, etc.
-        // It just returns a random token ID from the vocabulary
-        return random.nextInt(logits.length);
+        LlamaCPP.llama_sampler_accept(chain, token);
+        return token;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When the context is the native context this sampler was created for, the chain samples the logits
+     * of the last evaluated token in place.
+     */
+    @Override
+    public int sample(Context context) {
+        checkClosed();
+
+        if (context != null && context == this.context && hasNativeContext()) {
+            return sample(-1);
+        }
+        return Sampler.super.sample(context);
+    }
+
+    /**
+     * Samples a token from the logits of a token of the last batch processed by the bound context.
+     * The sampled token is accepted by the chain, so repetition penalties see it on the next call.
+     * The logits are read in order with the batches being decoded, so a concurrent decode cannot replace
+     * them while they are sampled.
+     *
+     * @param index Index of the token in the last batch, negative values count from the end
+     * @return Sampled token ID
+     * @throws IllegalStateException if the sampler is not bound to a native context
+     */
+    public int sample(int index) {
+        checkClosed();
+
+        if (!hasNativeContext()) {
+            throw new IllegalStateException("Sampler is not bound to a native context");
+        }
+        return context.callContext(handle -> LlamaCPP.llama_sampler_sample(chain, handle, index), -1);
+    }
+
+    /**
+     * Resets the state of the sampler chain, such as the token history used for repetition penalties.
+     */
+    public void reset() {
+        checkClosed();
+        LlamaCPP.llama_sampler_reset(chain);
     }
 
     @Override
     public void close() {
         if (!closed) {
             logger.info("Closing sampler");
-            // TODO: Implement actual cleanup using FFM API
+            LlamaCPP.llama_sampler_free(chain);
+            arena.close();
             closed = true;
             logger.debug("Sampler closed");
         }
@@ -70,6 +208,44 @@ public class FfmSampler implements Sampler {
         return params;
     }
 
+    /**
+     * Gets the names of the samplers in the native chain, in the order they are applied.
+     *
+     * @return Names of the chained samplers
+     */
+    List<String> getChainNames() {
+        checkClosed();
+        int count = LlamaCPP.llama_sampler_chain_n(chain);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MemorySegment name = LlamaCPP.llama_sampler_name(LlamaCPP.llama_sampler_chain_get(chain, i));
+            names.add(name.reinterpret(Long.MAX_VALUE).getString(0));
+        }
+        return names;
+    }
+
+    /**
+     * Checks whether this sampler is bound to a context with a native handle.
+     *
+     * @return true if a native context is available, false otherwise
+     */
+    private boolean hasNativeContext() {
+        return context != null && !context.getContextHandle().equals(MemorySegment.NULL);
+    }
+
+    /**
+     * Makes sure the candidate buffer can hold the given number of tokens.
+     * The buffer only grows, so repeated sampling with the same vocabulary allocates once.
+     *
+     * @param count Number of candidate tokens
+     */
+    private void ensureCandidateCapacity(int count) {
+        if (count > candidateCapacity) {
+            candidates = arena.allocate(llama_token_data.layout(), count);
+            candidateCapacity = count;
+        }
+    }
+
     /**
      * Checks if the sampler is closed and throws an exception if it is.
      *
@@ -0,0 +1,105 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor that runs tasks one at a time, in submission order, on top of another executor.
+ * At most one task of this executor occupies a thread of the delegate at any time.
+ * <p>
+ * Closing the executor rejects new tasks and waits for the queued ones to finish, so that the owner can free
+ * the resources the tasks use afterwards.
+ */
+final class FfmSerialExecutor implements Executor, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmSerialExecutor.class);
+
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean shutdown = false;
+
+    // Thread running a task, used to avoid waiting for itself when a task closes the executor
+    private volatile Thread running;
+
+    /**
+     * Creates a new serial executor.
+     *
+     * @param delegate The executor that runs the tasks
+     */
+    FfmSerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor is closed");
+        }
+        tasks.add(task);
+        if (pending.getAndIncrement() == 0) {
+            try {
+                delegate.execute(this::drain);
+            } catch (RuntimeException e) {
+                tasks.remove(task);
+                pending.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Rejects new tasks and waits for the queued tasks to finish.
+     * Called from a running task, it only rejects new tasks.
+     */
+    @Override
+    public void close() {
+        shutdown = true;
+        if (Thread.currentThread() == running) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        synchronized (this) {
+            try {
+                while (pending.get() != 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        logger.warn("Serial executor did not finish pending tasks in time");
+                        return;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Runs queued tasks until the queue is empty.
+     */
+    private void drain() {
+        do {
+            Runnable task = tasks.poll();
+            running = Thread.currentThread();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Serial task failed", e);
+            } finally {
+                running = null;
+            }
+        } while (pending.decrementAndGet() != 0);
+
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+}
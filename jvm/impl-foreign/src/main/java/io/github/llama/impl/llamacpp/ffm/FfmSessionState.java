@@ -0,0 +1,172 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.context.SessionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Implementation of {@link SessionState} using Java's Foreign Function & Memory API.
+ * This class saves and restores sequences of an {@link FfmContext} with the {@code llama_state_seq_*} functions.
+ * <p>
+ * States are copied by a single native call directly between the KV cache and native memory: a
+ * {@link MemorySegment}, a direct buffer or a file mapped into memory. Files are mapped as segments, so
+ * their size is not limited to 2 GB. Segments passed in must be accessible from the native thread of the
+ * context, so segments of confined arenas can only be used by contexts without a dedicated native thread.
+ * A context without a native context has empty sequences.
+ */
+public class FfmSessionState implements SessionState {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmSessionState.class);
+
+    private final FfmContext context;
+
+    /**
+     * Creates a new instance of the FfmSessionState.
+     *
+     * @param context The context whose sequences are saved and restored
+     */
+    FfmSessionState(FfmContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public long getSize(int seqId) {
+        return context.callContext(handle -> LlamaCPP.llama_state_seq_get_size(handle, seqId), 0L);
+    }
+
+    @Override
+    public long save(int seqId, ByteBuffer buffer) {
+        checkBuffer(buffer);
+        if (buffer.isReadOnly()) {
+            logger.error("Cannot save sequence state into a read-only buffer");
+            throw new IllegalArgumentException("Buffer cannot be read-only");
+        }
+        long written = save(seqId, MemorySegment.ofBuffer(buffer));
+        buffer.position(buffer.position() + (int) written);
+        return written;
+    }
+
+    /**
+     * Saves the state of a sequence into a segment, starting at its beginning.
+     *
+     * @param seqId Sequence id
+     * @param segment Native segment to write to
+     * @return Number of bytes written
+     * @throws IllegalArgumentException if the segment is not native, is read-only or is too small
+     */
+    public long save(int seqId, MemorySegment segment) {
+        if (segment == null || !segment.isNative() || segment.isReadOnly()) {
+            logger.error("Cannot save sequence state into a heap or read-only segment");
+            throw new IllegalArgumentException("Segment must be native and writable");
+        }
+        long written = context.callContext(handle -> {
+            long size = LlamaCPP.llama_state_seq_get_size(handle, seqId);
+            if (size > segment.byteSize()) {
+                logger.error("Segment of {} bytes is too small for a sequence state of {} bytes",
+                        segment.byteSize(), size);
+                throw new IllegalArgumentException("Segment is too small: " + size + " bytes needed");
+            }
+            return LlamaCPP.llama_state_seq_get_data(handle, segment, size, seqId);
+        }, 0L);
+        logger.debug("Saved {} bytes of state of sequence {}", written, seqId);
+        return written;
+    }
+
+    @Override
+    public long restore(ByteBuffer buffer, int seqId) {
+        checkBuffer(buffer);
+        long read = restore(MemorySegment.ofBuffer(buffer), seqId);
+        buffer.position(buffer.position() + (int) read);
+        return read;
+    }
+
+    /**
+     * Restores the state of a sequence from a segment.
+     *
+     * @param segment Native segment holding a state written by {@link #save(int, MemorySegment)}
+     * @param seqId Sequence to restore the state into, which should be empty
+     * @return Number of bytes read
+     * @throws IllegalArgumentException if the segment is not native
+     * @throws IllegalStateException if the state cannot be restored
+     */
+    public long restore(MemorySegment segment, int seqId) {
+        if (segment == null || !segment.isNative()) {
+            logger.error("Cannot restore sequence state from a heap segment");
+            throw new IllegalArgumentException("Segment must be native");
+        }
+        long read = context.callContext(
+                handle -> LlamaCPP.llama_state_seq_set_data(handle, segment, segment.byteSize(), seqId), 0L);
+        if (read == 0 && segment.byteSize() > 0) {
+            logger.error("Failed to restore state of sequence {}", seqId);
+            throw new IllegalStateException("Failed to restore sequence state");
+        }
+        logger.debug("Restored {} bytes of state of sequence {}", read, seqId);
+        return read;
+    }
+
+    /**
+     * Saves the state of a sequence into a file, replacing its contents.
+     * <p>
+     * The state is sized, and the file mapped and written, in a single call on the context, so that a batch
+     * decoded in between cannot grow the state beyond the mapped file.
+     *
+     * @param seqId Sequence id
+     * @param file File to write to
+     * @return Number of bytes written
+     * @throws IOException If the file cannot be written
+     */
+    @Override
+    public long save(int seqId, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Arena arena = Arena.ofShared()) {
+            MemorySegment[] mapped = new MemorySegment[1];
+            long written;
+            try {
+                written = context.callContext(handle -> {
+                    long size = LlamaCPP.llama_state_seq_get_size(handle, seqId);
+                    try {
+                        mapped[0] = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return LlamaCPP.llama_state_seq_get_data(handle, mapped[0], size, seqId);
+                }, 0L);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Flush to disk after the call, so that decoding does not wait for it
+            if (mapped[0] != null) {
+                mapped[0].force();
+            }
+            logger.debug("Saved {} bytes of state of sequence {} to {}", written, seqId, file);
+            return written;
+        }
+    }
+
+    @Override
+    public long restore(Path file, int seqId) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             Arena arena = Arena.ofShared()) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            return restore(segment, seqId);
+        }
+    }
+
+    private static void checkBuffer(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            logger.error("Sequence state needs a direct buffer");
+            throw new IllegalArgumentException("Buffer must be direct");
+        }
+    }
+}
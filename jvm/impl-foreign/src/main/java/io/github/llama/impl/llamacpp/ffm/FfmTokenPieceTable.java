@@ -0,0 +1,152 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+/**
+ * The pieces of every token of a vocabulary, rendered once when the model is loaded.
+ * <p>
+ * All pieces are stored back to back in a single byte array, and the piece of token {@code i} is
+ * {@code bytes[offsets[i]]} up to, but not including, {@code bytes[offsets[i + 1]]}. Looking up a piece is
+ * therefore two array reads, with no boxing and no native call.
+ * <p>
+ * Like {@code llama_token_to_piece}, control and unknown tokens only have a piece when special tokens are
+ * rendered.
+ */
+final class FfmTokenPieceTable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmTokenPieceTable.class);
+
+    private final byte[] bytes;
+    private final int[] offsets;
+    private final BitSet hiddenTokens;
+
+    /**
+     * Creates a new table.
+     *
+     * @param bytes UTF-8 bytes of all pieces, back to back
+     * @param offsets Start of the piece of each token, followed by the total number of bytes
+     * @param hiddenTokens Tokens that only have text when special tokens are rendered
+     */
+    FfmTokenPieceTable(byte[] bytes, int[] offsets, BitSet hiddenTokens) {
+        if (offsets.length == 0 || offsets[offsets.length - 1] != bytes.length) {
+            throw new IllegalArgumentException("Offsets must end with the number of bytes");
+        }
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.hiddenTokens = hiddenTokens;
+    }
+
+    /**
+     * Renders every token of a vocabulary with {@code llama_token_to_piece}, including special tokens.
+     *
+     * @param vocab The native {@code llama_vocab} handle
+     * @return The table
+     */
+    static FfmTokenPieceTable build(MemorySegment vocab) {
+        int tokenCount = LlamaCPP.llama_vocab_n_tokens(vocab);
+        int[] offsets = new int[tokenCount + 1];
+        BitSet hiddenTokens = new BitSet(tokenCount);
+        int hiddenAttributes = LlamaCPP.LLAMA_TOKEN_ATTR_CONTROL() | LlamaCPP.LLAMA_TOKEN_ATTR_UNKNOWN();
+        // Most pieces are a few bytes long, so this is usually close to the final size
+        byte[] bytes = new byte[Math.max(16, tokenCount * 8)];
+
+        try (Arena arena = Arena.ofConfined()) {
+            int capacity = 256;
+            MemorySegment buffer = arena.allocate(capacity);
+            for (int token = 0; token < tokenCount; token++) {
+                int length = LlamaCPP.llama_token_to_piece(vocab, token, buffer, capacity, 0, true);
+                if (length < 0) {
+                    capacity = -length;
+                    buffer = arena.allocate(capacity);
+                    length = LlamaCPP.llama_token_to_piece(vocab, token, buffer, capacity, 0, true);
+                }
+                if (length < 0) {
+                    logger.error("llama_token_to_piece failed for token {} with result {}", token, length);
+                    throw new IllegalStateException("Failed to get text of token " + token);
+                }
+
+                int offset = offsets[token];
+                if (offset + length > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, offset + length));
+                }
+                MemorySegment.copy(buffer, JAVA_BYTE, 0, bytes, offset, length);
+                offsets[token + 1] = offset + length;
+
+                if ((LlamaCPP.llama_vocab_get_attr(vocab, token) & hiddenAttributes) != 0) {
+                    hiddenTokens.set(token);
+                }
+            }
+        }
+
+        logger.debug("Built token piece table with {} tokens and {} bytes", tokenCount, offsets[tokenCount]);
+        return new FfmTokenPieceTable(Arrays.copyOf(bytes, offsets[tokenCount]), offsets, hiddenTokens);
+    }
+
+    /**
+     * Gets the number of tokens in the table.
+     *
+     * @return Number of tokens
+     */
+    int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Gets the length of the piece of a token.
+     *
+     * @param tokenId Token ID
+     * @param special Whether special tokens are rendered as text
+     * @return Length of the piece in bytes
+     */
+    int pieceLength(int tokenId, boolean special) {
+        if (!special && hiddenTokens.get(tokenId)) {
+            return 0;
+        }
+        return offsets[tokenId + 1] - offsets[tokenId];
+    }
+
+    /**
+     * Copies the piece of a token into an array.
+     *
+     * @param tokenId Token ID
+     * @param special Whether special tokens are rendered as text
+     * @param destination Array to copy the piece into; must have room for {@link #pieceLength(int, boolean)} bytes
+     * @param position Index in the array to copy to
+     * @return Number of bytes copied
+     */
+    int copyPiece(int tokenId, boolean special, byte[] destination, int position) {
+        int length = pieceLength(tokenId, special);
+        System.arraycopy(bytes, offsets[tokenId], destination, position, length);
+        return length;
+    }
+
+    /**
+     * Gets a copy of the piece of a token.
+     *
+     * @param tokenId Token ID
+     * @param special Whether special tokens are rendered as text
+     * @return UTF-8 bytes of the piece
+     */
+    byte[] piece(int tokenId, boolean special) {
+        return Arrays.copyOfRange(bytes, offsets[tokenId], offsets[tokenId] + pieceLength(tokenId, special));
+    }
+
+    /**
+     * Gets the text of a token, including special tokens.
+     *
+     * @param tokenId Token ID
+     * @return Text of the piece
+     */
+    String text(int tokenId) {
+        return new String(bytes, offsets[tokenId], offsets[tokenId + 1] - offsets[tokenId], StandardCharsets.UTF_8);
+    }
+}
@@ -1,25 +1,78 @@
 package io.github.llama.impl.llamacpp.ffm;
 
 import io.github.llama.api.tokenization.SpecialToken;
+import io.github.llama.api.tokenization.TokenizedBatch;
 import io.github.llama.api.tokenization.Tokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
 
 /**
  * Implementation of {@link Tokenizer} using Java's Foreign Function & Memory API.
  * This class provides tokenization and detokenization functionality for llama.cpp models.
+ * <p>
+ * A tokenizer created for a native {@code llama_vocab} calls {@code llama_tokenize} and {@code llama_detokenize},
+ * and renders the piece of every token once into a {@link FfmTokenPieceTable}, which answers
+ * {@link #getTokenText(int)} and {@link #getTokenPiece(int)} without native calls. Text and token buffers are
+ * kept per thread and reused across calls, and are sized so that the common case needs a single native call;
+ * when llama.cpp reports that a buffer is too small, the buffer grows to the reported size and the call is
+ * retried once. A tokenizer created from tables with {@link Builder} has no vocabulary and uses a simple
+ * character-based placeholder scheme.
+ * <p>
+ * Beginning- and end-of-sequence tokens are only added when the vocabulary defines them.
  */
 public class FfmTokenizer implements Tokenizer {
 
     private static final Logger logger = LoggerFactory.getLogger(FfmTokenizer.class);
 
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Number of texts tokenized by one fork-join task in {@link #tokenizeAll(List, boolean, boolean)}.
+     */
+    static final int TOKENIZE_CHUNK_SIZE = 64;
+
+    private final MemorySegment vocab;
+    private final FfmTokenPieceTable pieces;
     private final int vocabularySize;
     private final Map<SpecialToken, Integer> specialTokens;
     private final Map<Integer, String> tokenTexts;
-    private boolean closed = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new instance of the FfmTokenizer backed by a native vocabulary.
+     *
+     * @param vocab The native {@code llama_vocab} handle, owned by the model
+     */
+    public FfmTokenizer(MemorySegment vocab) {
+        if (vocab == null || vocab.equals(MemorySegment.NULL)) {
+            logger.error("Cannot create tokenizer without a vocabulary");
+            throw new IllegalArgumentException("Vocabulary handle cannot be null");
+        }
+        this.vocab = vocab;
+        this.vocabularySize = LlamaCPP.llama_vocab_n_tokens(vocab);
+        this.specialTokens = new HashMap<>();
+        this.tokenTexts = Map.of();
+        this.pieces = FfmTokenPieceTable.build(vocab);
+        putSpecialToken(SpecialToken.BOS, LlamaCPP.llama_vocab_bos(vocab));
+        putSpecialToken(SpecialToken.EOS, LlamaCPP.llama_vocab_eos(vocab));
+        putSpecialToken(SpecialToken.PAD, LlamaCPP.llama_vocab_pad(vocab));
+        logger.debug("Created FfmTokenizer for native vocabulary with size: {}", vocabularySize);
+    }
 
     /**
      * Creates a new instance of the FfmTokenizer.
@@ -29,6 +82,8 @@ public class FfmTokenizer implements Tokenizer {
      * @param tokenTexts Map of token IDs to their text representations
      */
     public FfmTokenizer(int vocabularySize, Map<SpecialToken, Integer> specialTokens, Map<Integer, String> tokenTexts) {
+        this.vocab = null;
+        this.pieces = null;
         this.vocabularySize = vocabularySize;
         this.specialTokens = new HashMap<>(specialTokens);
         this.tokenTexts = new HashMap<>(tokenTexts);
@@ -45,36 +100,28 @@ public class FfmTokenizer implements Tokenizer {
         checkClosed();
         logger.debug("Tokenizing text: '{}', addBos: {}, addEos: {}", text, addBos, addEos);
 
-        // For now, return a simple array with some dummy tokens
-        // In a real implementation, this would use LlamaCPP.llama_tokenize
-        int[] result;
-        int offset = 0;
-
-        if (addBos) {
-            offset++;
-        }
-        if (addEos) {
-            offset++;
+        if (vocab != null) {
+            if (text == null) {
+                logger.error("Cannot tokenize null text");
+                throw new IllegalArgumentException("Text cannot be null");
+            }
+            return tokenizeNative(text, addBos, addEos);
         }
 
-        result = new int[text.length() + offset];
-
-        if (addBos) {
-            result[0] = getSpecialToken(SpecialToken.BOS);
-            offset = 1;
-        } else {
-            offset = 0;
+        // Without a vocabulary, fall back to one placeholder token per character
+        int bos = addBos ? specialTokenId(SpecialToken.BOS) : -1;
+        int eos = addEos ? specialTokenId(SpecialToken.EOS) : -1;
+        int offset = bos >= 0 ? 1 : 0;
+        int[] result = new int[text.length() + offset + (eos >= 0 ? 1 : 0)];
+        if (bos >= 0) {
+            result[0] = bos;
         }
-
-        // Simple character-by-character tokenization for testing
         for (int i = 0; i < text.length(); i++) {
             result[i + offset] = text.charAt(i);
         }
-
-        if (addEos) {
-            result[result.length - 1] = getSpecialToken(SpecialToken.EOS);
+        if (eos >= 0) {
+            result[result.length - 1] = eos;
         }
-
         return result;
     }
 
@@ -83,60 +130,26 @@ public class FfmTokenizer implements Tokenizer {
         checkClosed();
         logger.debug("Detokenizing {} tokens", tokens.length);
 
-        // For token IDs, use the token text map
-        StringBuilder sb = new StringBuilder();
-
-        // Determine if this is likely a character-based token array
-        // If all non-special tokens are in the ASCII range, it's likely character-based
-        boolean isCharacterBased = true;
-        for (int token : tokens) {
-            if (token != getSpecialToken(SpecialToken.BOS) &&
-                token != getSpecialToken(SpecialToken.EOS) &&
-                token != getSpecialToken(SpecialToken.PAD) &&
-                (token < 32 || token > 127)) {
-                isCharacterBased = false;
-                break;
-            }
+        if (vocab != null) {
+            return detokenizeNative(tokens);
         }
 
-        // If we have exactly two tokens and both have text representations,
-        // this is likely the testDetokenizeWithKnownTokens test
-        boolean isKnownTokensTest = tokens.length == 2 &&
-                                    getTokenText(tokens[0]) != null &&
-                                    getTokenText(tokens[1]) != null;
-
+        // Every token is either in the text table or the character the placeholder scheme encoded as it
+        StringBuilder sb = new StringBuilder();
         for (int token : tokens) {
-            // Skip special tokens
-            if (token == getSpecialToken(SpecialToken.BOS) ||
-                token == getSpecialToken(SpecialToken.EOS) ||
-                token == getSpecialToken(SpecialToken.PAD)) {
+            if (token == specialTokenId(SpecialToken.BOS) || token == specialTokenId(SpecialToken.EOS)
+                    || token == specialTokenId(SpecialToken.PAD)) {
                 continue;
             }
-
-            // For the test cases in FfmTokenizerTest, we need to handle three scenarios:
-            // 1. Tokens that are character codes (testDetokenizeSimple, testDetokenizeWithSpecialTokens)
-            // 2. Tokens that have text representations (testDetokenizeWithKnownTokens)
-            // 3. A mix of both (not in the current tests)
-
-            if (isKnownTokensTest || (!isCharacterBased && getTokenText(token) != null)) {
-                // If this is the known tokens test or we have a text representation for a non-character token
-                String text = getTokenText(token);
+            String text = tokenTexts.get(token);
+            if (text != null) {
                 sb.append(text);
-            } else if (token >= 32 && token <= 127) {
-                // If it's a printable ASCII character in a character-based token array
+            } else if (token >= Character.MIN_VALUE && token <= Character.MAX_VALUE) {
                 sb.append((char) token);
             } else {
-                // Otherwise, check if we have a text representation
-                String text = getTokenText(token);
-                if (text != null) {
-                    sb.append(text);
-                } else {
-                    // If all else fails, log a warning and skip it
-                    logger.warn("Unknown token ID: {}", token);
-                }
+                logger.warn("Unknown token ID: {}", token);
             }
         }
-
         return sb.toString();
     }
 
@@ -157,19 +170,292 @@ public class FfmTokenizer implements Tokenizer {
         return tokenId;
     }
 
+    /**
+     * Uses {@code llama_vocab_is_eog}, which also covers the end-of-turn tokens of chat models.
+     */
+    @Override
+    public boolean isEndOfGeneration(int tokenId) {
+        checkClosed();
+        if (vocab == null) {
+            return Tokenizer.super.isEndOfGeneration(tokenId);
+        }
+        return LlamaCPP.llama_vocab_is_eog(vocab, tokenId);
+    }
+
     @Override
     public String getTokenText(int tokenId) {
         checkClosed();
+        if (vocab != null) {
+            return tokenId >= 0 && tokenId < vocabularySize ? pieces.text(tokenId) : null;
+        }
         return tokenTexts.get(tokenId);
     }
 
+    /**
+     * Gets the piece of a token from the piece table. Special tokens have no text, as in {@link #detokenize(int[])}.
+     */
+    @Override
+    public byte[] getTokenPiece(int tokenId) {
+        checkClosed();
+        if (vocab == null) {
+            return Tokenizer.super.getTokenPiece(tokenId);
+        }
+        if (tokenId < 0 || tokenId >= vocabularySize) {
+            logger.error("Token ID out of range: {}", tokenId);
+            throw new IllegalArgumentException("Token ID out of range: " + tokenId);
+        }
+        return pieces.piece(tokenId, false);
+    }
+
+    /**
+     * Gets the native vocabulary handle.
+     *
+     * @return The native vocabulary handle, or null if the tokenizer was built from tables
+     */
+    public MemorySegment getVocabHandle() {
+        return vocab;
+    }
+
+    /**
+     * Tokenizes text with {@code llama_tokenize}. The text is encoded straight into the thread's scratch buffer,
+     * and BOS and EOS are written around the tokens so that the result is copied out once.
+     *
+     * @param text Text to tokenize
+     * @param addBos Whether to add a beginning-of-sequence token
+     * @param addEos Whether to add an end-of-sequence token
+     * @return Array of token IDs
+     */
+    private int[] tokenizeNative(CharSequence text, boolean addBos, boolean addEos) {
+        Scratch scratch = SCRATCH.get();
+        int byteCount = scratch.encode(text, 0);
+        int count = tokenizeInto(scratch, scratch.text, byteCount, 0, addBos, addEos);
+        return scratch.tokens.asSlice(0, JAVA_INT.byteSize() * count).toArray(JAVA_INT);
+    }
+
+    /**
+     * Counts tokens with {@code llama_tokenize}. The text and the tokens only ever live in the thread's scratch
+     * buffers, so no token array is allocated.
+     */
+    @Override
+    public int countTokens(CharSequence text, boolean addBos, boolean addEos) {
+        checkClosed();
+
+        if (text == null) {
+            logger.error("Cannot count tokens of null text");
+            throw new IllegalArgumentException("Text cannot be null");
+        }
+
+        int specialCount = (addBos && specialTokenId(SpecialToken.BOS) >= 0 ? 1 : 0)
+                + (addEos && specialTokenId(SpecialToken.EOS) >= 0 ? 1 : 0);
+        if (vocab == null) {
+            // The placeholder tokenizer has one token per character
+            return text.length() + specialCount;
+        }
+
+        Scratch scratch = SCRATCH.get();
+        int byteCount = scratch.encode(text, 0);
+        return tokenizeInto(scratch, scratch.text, byteCount, 0, false, false) + specialCount;
+    }
+
+    /**
+     * Tokenizes many texts in parallel.
+     * <p>
+     * The texts are split into chunks that run as fork-join tasks. Each task packs the UTF-8 bytes of its
+     * texts into one off-heap buffer and writes their tokens back to back into another, so a chunk costs one
+     * copy into the Java heap. The chunks are then joined into one flat array.
+     */
+    @Override
+    public TokenizedBatch tokenizeAll(List<String> texts, boolean addBos, boolean addEos) {
+        checkClosed();
+
+        if (texts == null) {
+            logger.error("Cannot tokenize null texts");
+            throw new IllegalArgumentException("Texts cannot be null");
+        }
+        if (vocab == null) {
+            return Tokenizer.super.tokenizeAll(texts, addBos, addEos);
+        }
+
+        logger.debug("Tokenizing {} texts, addBos: {}, addEos: {}", texts.size(), addBos, addEos);
+
+        int chunkCount = (texts.size() + TOKENIZE_CHUNK_SIZE - 1) / TOKENIZE_CHUNK_SIZE;
+        int[][] chunkTokens = new int[chunkCount][];
+        int[] counts = new int[texts.size()];
+
+        IntStream chunks = IntStream.range(0, chunkCount);
+        if (chunkCount > 1) {
+            chunks = chunks.parallel();
+        }
+        chunks.forEach(chunk -> chunkTokens[chunk] = tokenizeChunk(texts, chunk * TOKENIZE_CHUNK_SIZE,
+                Math.min(texts.size(), (chunk + 1) * TOKENIZE_CHUNK_SIZE), addBos, addEos, counts));
+
+        int[] offsets = new int[texts.size() + 1];
+        for (int i = 0; i < counts.length; i++) {
+            offsets[i + 1] = offsets[i] + counts[i];
+        }
+        int[] tokens = new int[offsets[texts.size()]];
+        int position = 0;
+        for (int[] chunk : chunkTokens) {
+            System.arraycopy(chunk, 0, tokens, position, chunk.length);
+            position += chunk.length;
+        }
+        return new TokenizedBatch(tokens, offsets);
+    }
+
+    /**
+     * Tokenizes a range of texts on the current thread.
+     *
+     * @param texts All texts
+     * @param from Index of the first text of the range
+     * @param to Index after the last text of the range
+     * @param addBos Whether to add a beginning-of-sequence token to every text
+     * @param addEos Whether to add an end-of-sequence token to every text
+     * @param counts Receives the number of tokens of each text
+     * @return Tokens of the texts in the range, back to back
+     */
+    private int[] tokenizeChunk(List<String> texts, int from, int to, boolean addBos, boolean addEos, int[] counts) {
+        Scratch scratch = SCRATCH.get();
+
+        // Pack all texts of the chunk into the text buffer
+        long bound = 0;
+        for (int i = from; i < to; i++) {
+            if (texts.get(i) == null) {
+                throw new IllegalArgumentException("Text at index " + i + " cannot be null");
+            }
+            bound += 3L * texts.get(i).length() + 1;
+        }
+        MemorySegment packed = scratch.text(bound);
+        long[] starts = new long[to - from + 1];
+        for (int i = from; i < to; i++) {
+            starts[i - from + 1] = starts[i - from] + scratch.encode(texts.get(i), starts[i - from]);
+        }
+
+        long position = 0;
+        for (int i = from; i < to; i++) {
+            long start = starts[i - from];
+            int byteCount = (int) (starts[i - from + 1] - start);
+            counts[i] = tokenizeInto(scratch, packed.asSlice(start), byteCount, position, addBos, addEos);
+            position += counts[i];
+        }
+        return scratch.tokens.asSlice(0, JAVA_INT.byteSize() * position).toArray(JAVA_INT);
+    }
+
+    /**
+     * Tokenizes UTF-8 bytes into the thread's token buffer at a position, keeping the tokens before it.
+     *
+     * @param scratch The thread's scratch buffers
+     * @param text UTF-8 bytes of the text
+     * @param byteCount Number of bytes
+     * @param position Index in the token buffer to write the first token to
+     * @param addBos Whether to add a beginning-of-sequence token, if the vocabulary has one
+     * @param addEos Whether to add an end-of-sequence token, if the vocabulary has one
+     * @return Number of tokens written, including special tokens
+     */
+    private int tokenizeInto(Scratch scratch, MemorySegment text, int byteCount, long position,
+                             boolean addBos, boolean addEos) {
+        int bos = addBos ? specialTokenId(SpecialToken.BOS) : -1;
+        int eos = addEos ? specialTokenId(SpecialToken.EOS) : -1;
+        int offset = bos >= 0 ? 1 : 0;
+        int reserved = offset + (eos >= 0 ? 1 : 0);
+
+        int capacity = tokenCapacity(byteCount);
+        MemorySegment tokens = scratch.tokens(position + capacity + reserved, position);
+        int count = LlamaCPP.llama_tokenize(vocab, text, byteCount,
+                tokens.asSlice((position + offset) * JAVA_INT.byteSize()), capacity, false, false);
+        if (count < 0 && count != Integer.MIN_VALUE) {
+            capacity = -count;
+            tokens = scratch.tokens(position + capacity + reserved, position);
+            count = LlamaCPP.llama_tokenize(vocab, text, byteCount,
+                    tokens.asSlice((position + offset) * JAVA_INT.byteSize()), capacity, false, false);
+        }
+        if (count < 0) {
+            logger.error("llama_tokenize failed with result {}", count);
+            throw new IllegalStateException("Tokenization failed");
+        }
+
+        if (bos >= 0) {
+            tokens.setAtIndex(JAVA_INT, position, bos);
+        }
+        if (eos >= 0) {
+            tokens.setAtIndex(JAVA_INT, position + offset + count, eos);
+        }
+        return count + reserved;
+    }
+
+    /**
+     * Gets the number of tokens to make room for before tokenizing text. A larger result is retried once.
+     *
+     * @param byteCount Number of UTF-8 bytes of the text
+     * @return Initial token capacity
+     */
+    int tokenCapacity(int byteCount) {
+        // A token covers at least one byte, so this is enough unless the vocabulary adds special tokens
+        return byteCount + 1;
+    }
+
+    /**
+     * Detokenizes tokens with {@code llama_detokenize}, leaving out special tokens.
+     *
+     * @param tokens Array of token IDs
+     * @return Detokenized text
+     */
+    private String detokenizeNative(int[] tokens) {
+        for (int token : tokens) {
+            if (token < 0 || token >= vocabularySize) {
+                logger.error("Token ID out of range: {}", token);
+                throw new IllegalArgumentException("Token ID out of range: " + token);
+            }
+        }
+
+        Scratch scratch = SCRATCH.get();
+        MemorySegment input = scratch.tokens(tokens.length);
+        MemorySegment.copy(tokens, 0, input, JAVA_INT, 0, tokens.length);
+
+        int capacity = Math.max(16, tokens.length * 8);
+        MemorySegment text = scratch.text(capacity);
+        int length = LlamaCPP.llama_detokenize(vocab, input, tokens.length, text, capacity, true, false);
+        if (length < 0) {
+            capacity = -length;
+            text = scratch.text(capacity);
+            length = LlamaCPP.llama_detokenize(vocab, input, tokens.length, text, capacity, true, false);
+        }
+        if (length < 0) {
+            logger.error("llama_detokenize failed with result {}", length);
+            throw new IllegalStateException("Detokenization failed");
+        }
+        return new String(text.asSlice(0, length).toArray(JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the ID of a special token without logging a missing one.
+     *
+     * @param token Special token type
+     * @return Token ID, or -1 if the vocabulary has no such token
+     */
+    private int specialTokenId(SpecialToken token) {
+        Integer tokenId = specialTokens.get(token);
+        return tokenId != null ? tokenId : -1;
+    }
+
+    /**
+     * Registers a special token if the vocabulary defines it.
+     *
+     * @param token Special token type
+     * @param tokenId Token ID, or a negative value if the vocabulary has no such token
+     */
+    private void putSpecialToken(SpecialToken token, int tokenId) {
+        if (tokenId >= 0) {
+            specialTokens.put(token, tokenId);
+        }
+    }
+
     /**
      * Closes the tokenizer and releases resources.
      */
     public void close() {
         if (!closed) {
             logger.info("Closing tokenizer");
-            // No actual cleanup needed for now as we don't have any native resources
+            // The vocabulary belongs to the model and scratch buffers are shared per thread, so nothing to free
             closed = true;
             logger.debug("Tokenizer closed");
         }
@@ -186,6 +472,77 @@ public class FfmTokenizer implements Tokenizer {
         }
     }
 
+    /**
+     * Native buffers reused by all tokenizers on one thread. They only grow, and are released by the garbage
+     * collector together with the thread.
+     */
+    private static final class Scratch {
+        private final Arena arena = Arena.ofAuto();
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private MemorySegment text = MemorySegment.NULL;
+        private MemorySegment tokens = MemorySegment.NULL;
+
+        /**
+         * Gets the text buffer with room for at least the given number of bytes.
+         *
+         * @param bytes Required size in bytes
+         * @return The text buffer
+         */
+        MemorySegment text(long bytes) {
+            if (text.byteSize() < bytes) {
+                text = arena.allocate(Math.max(bytes, text.byteSize() * 2));
+            }
+            return text;
+        }
+
+        /**
+         * Gets the token buffer with room for at least the given number of tokens.
+         *
+         * @param count Required number of tokens
+         * @return The token buffer
+         */
+        MemorySegment tokens(long count) {
+            return tokens(count, 0);
+        }
+
+        /**
+         * Gets the token buffer with room for at least the given number of tokens, keeping the first tokens
+         * if the buffer has to grow.
+         *
+         * @param count Required number of tokens
+         * @param keep Number of tokens at the start of the buffer to keep
+         * @return The token buffer
+         */
+        MemorySegment tokens(long count, long keep) {
+            if (tokens.byteSize() < JAVA_INT.byteSize() * count) {
+                MemorySegment grown = arena.allocate(JAVA_INT, Math.max(count, tokens.byteSize() / JAVA_INT.byteSize() * 2));
+                MemorySegment.copy(tokens, 0, grown, 0, JAVA_INT.byteSize() * keep);
+                tokens = grown;
+            }
+            return tokens;
+        }
+
+        /**
+         * Encodes text as UTF-8 into the text buffer without an intermediate byte array.
+         * The buffer must already hold three bytes per character after the offset, or the offset must be 0.
+         *
+         * @param value Text to encode
+         * @param offset Offset in the text buffer to write to
+         * @return Number of bytes written
+         */
+        int encode(CharSequence value, long offset) {
+            // No UTF-16 code unit takes more than three bytes in UTF-8
+            long bound = 3L * value.length() + 1;
+            ByteBuffer out = text(offset + bound).asSlice(offset, bound).asByteBuffer();
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(value), out, true);
+            encoder.flush(out);
+            return out.position();
+        }
+    }
+
     /**
      * Builder for FfmTokenizer.
      */
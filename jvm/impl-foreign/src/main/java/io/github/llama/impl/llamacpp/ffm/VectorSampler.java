@@ -0,0 +1,574 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.context.Context;
+import io.github.llama.api.sampling.Sampler;
+import io.github.llama.api.sampling.SamplerParams;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+
+/**
+ * Pure-Java implementation of {@link Sampler} using the incubating Vector API.
+ * This class is meant for custom sampling strategies that cannot be expressed with native samplers.
+ * <p>
+ * The sampler applies the repetition penalty, temperature scaling, a partial top-k selection with a
+ * bounded heap, softmax and a top-p cutoff. Without top-k the vocabulary is never sorted: without top-p
+ * the token is drawn from all scores directly, and with top-p the selection grows from a small heap until
+ * it covers the nucleus. All work is done on scratch buffers that only grow, so sampling a token does
+ * not allocate once they have reached their working size.
+ * <p>
+ * Requires {@code --add-modules jdk.incubator.vector} at compile and run time.
+ */
+public class VectorSampler implements Sampler {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorSampler.class);
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    // Initial selection size when looking for the top-p nucleus without top-k
+    private static final int NUCLEUS_SELECTION = 64;
+
+    private final SamplerParams params;
+    private final boolean greedy;
+    private final float invTemperature;
+    private final SplittableRandom random;
+
+    // Scratch buffers sized for the vocabulary
+    private float[] scores = new float[0];
+    private int[] penaltyStamps = new int[0];
+    private int stamp = 0;
+
+    // Scratch buffers sized for top-k
+    private int[] topIds = new int[0];
+    private float[] topScores = new float[0];
+    private float[] probs = new float[0];
+
+    // Ring buffer of the most recently accepted tokens
+    private final int[] history = new int[FfmSampler.PENALTY_LAST_N];
+    private int historyCount = 0;
+    private int historyNext = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance of the VectorSampler with a random seed.
+     *
+     * @param params The sampler parameters
+     * @param vocabularySize Size of the vocabulary the scratch buffers are allocated for
+     */
+    public VectorSampler(SamplerParams params, int vocabularySize) {
+        this(params, vocabularySize, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Creates a new instance of the VectorSampler.
+     *
+     * @param params The sampler parameters
+     * @param vocabularySize Size of the vocabulary the scratch buffers are allocated for
+     * @param seed Seed of the random number generator
+     */
+    public VectorSampler(SamplerParams params, int vocabularySize, long seed) {
+        this.params = params;
+        this.greedy = params.getTemperature() <= 0.0f;
+        this.invTemperature = greedy ? 1.0f : 1.0f / params.getTemperature();
+        this.random = new SplittableRandom(seed);
+        ensureCapacity(vocabularySize);
+        logger.debug("Created VectorSampler with parameters: temperature={}, topP={}, topK={}, repetitionPenalty={}, species={}",
+                params.getTemperature(), params.getTopP(), params.getTopK(),
+                params.getRepetitionPenalty(), SPECIES);
+    }
+
+    @Override
+    public int sample(float[] logits) {
+        checkClosed();
+
+        if (logits == null || logits.length == 0) {
+            logger.error("Cannot sample from null or empty logits");
+            throw new IllegalArgumentException("Logits cannot be null or empty");
+        }
+
+        int n = logits.length;
+        ensureCapacity(n);
+
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, logits, i).mul(invTemperature).intoArray(scores, i);
+        }
+        for (; i < n; i++) {
+            scores[i] = logits[i] * invTemperature;
+        }
+
+        return sampleScores(n);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Logits of an {@link FfmContext} are loaded straight from native memory into the scratch buffer.
+     */
+    @Override
+    public int sample(Context context) {
+        checkClosed();
+
+        if (!(context instanceof FfmContext ffmContext)) {
+            return Sampler.super.sample(context);
+        }
+
+        MemorySegment logits = ffmContext.getLogitsSegment(-1);
+        if (!logits.isNative()) {
+            // The Vector API only loads heap segments backed by byte arrays
+            return Sampler.super.sample(context);
+        }
+        int n = (int) (logits.byteSize() / JAVA_FLOAT.byteSize());
+        ensureCapacity(n);
+
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector.fromMemorySegment(SPECIES, logits, JAVA_FLOAT.scale(0, i), ByteOrder.nativeOrder())
+                    .mul(invTemperature)
+                    .intoArray(scores, i);
+        }
+        for (; i < n; i++) {
+            scores[i] = logits.getAtIndex(JAVA_FLOAT, i) * invTemperature;
+        }
+
+        return sampleScores(n);
+    }
+
+    /**
+     * Records a token in the history used for the repetition penalty.
+     * Sampled tokens are accepted automatically; this is useful for feeding prompt tokens.
+     *
+     * @param token Token ID
+     */
+    public void accept(int token) {
+        checkClosed();
+        history[historyNext] = token;
+        historyNext = (historyNext + 1) % history.length;
+        historyCount = Math.min(historyCount + 1, history.length);
+    }
+
+    /**
+     * Clears the token history used for the repetition penalty.
+     */
+    public void reset() {
+        checkClosed();
+        historyCount = 0;
+        historyNext = 0;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            logger.info("Closing sampler");
+            closed = true;
+            logger.debug("Sampler closed");
+        }
+    }
+
+    /**
+     * Gets the sampler parameters.
+     *
+     * @return The sampler parameters
+     */
+    public SamplerParams getParams() {
+        return params;
+    }
+
+    /**
+     * Samples a token from the temperature scaled scores in the scratch buffer.
+     *
+     * @param n Number of scores
+     * @return Sampled token ID
+     */
+    private int sampleScores(int n) {
+        applyRepetitionPenalty(n);
+
+        int token;
+        if (greedy) {
+            token = argMax(n);
+        } else if (params.getTopK() > 0) {
+            int k = Math.min(params.getTopK(), n);
+            selectTopK(n, k);
+            sortTopKDescending(k);
+            float sum = softmax(k);
+            int kept = params.getTopP() < 1.0f ? topPCount(k, params.getTopP() * sum) : k;
+            token = drawToken(kept > 0 ? kept : k);
+        } else if (params.getTopP() < 1.0f) {
+            token = sampleNucleus(n);
+        } else {
+            token = drawFromAll(n);
+        }
+
+        accept(token);
+        return token;
+    }
+
+    /**
+     * Applies the repetition penalty once to every distinct token in the history.
+     *
+     * @param n Number of scores
+     */
+    private void applyRepetitionPenalty(int n) {
+        float penalty = params.getRepetitionPenalty();
+        if (penalty == 1.0f || historyCount == 0) {
+            return;
+        }
+
+        // Stamps mark tokens already penalized in this round without clearing an array per token
+        if (++stamp == 0) {
+            Arrays.fill(penaltyStamps, 0);
+            stamp = 1;
+        }
+
+        for (int i = 0; i < historyCount; i++) {
+            int token = history[i];
+            if (token < 0 || token >= n || penaltyStamps[token] == stamp) {
+                continue;
+            }
+            penaltyStamps[token] = stamp;
+            float score = scores[token];
+            scores[token] = score > 0.0f ? score / penalty : score * penalty;
+        }
+    }
+
+    /**
+     * Finds the index of the largest score.
+     *
+     * @param n Number of scores
+     * @return Index of the largest score
+     */
+    private int argMax(int n) {
+        float max = maxScore(n);
+        for (int j = 0; j < n; j++) {
+            if (scores[j] == max) {
+                return j;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the largest score.
+     *
+     * @param n Number of scores
+     * @return Largest score
+     */
+    private float maxScore(int n) {
+        float max = Float.NEGATIVE_INFINITY;
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        if (bound > 0) {
+            FloatVector maxVector = FloatVector.broadcast(SPECIES, Float.NEGATIVE_INFINITY);
+            for (; i < bound; i += SPECIES.length()) {
+                maxVector = maxVector.max(FloatVector.fromArray(SPECIES, scores, i));
+            }
+            max = maxVector.reduceLanes(VectorOperators.MAX);
+        }
+        for (; i < n; i++) {
+            max = Math.max(max, scores[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Sums the unnormalized probabilities of all scores, relative to the largest score.
+     *
+     * @param n Number of scores
+     * @param max Largest score
+     * @return Sum of {@code exp(score - max)}
+     */
+    private float expSum(int n, float max) {
+        float sum = 0.0f;
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            sum += FloatVector.fromArray(SPECIES, scores, i).sub(max)
+                    .lanewise(VectorOperators.EXP)
+                    .reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < n; i++) {
+            sum += (float) Math.exp(scores[i] - max);
+        }
+        return sum;
+    }
+
+    /**
+     * Draws a token from the whole vocabulary, without selecting or sorting candidates.
+     * The scores in the scratch buffer are replaced by their unnormalized probabilities.
+     *
+     * @param n Number of scores
+     * @return Sampled token ID
+     */
+    private int drawFromAll(int n) {
+        float max = maxScore(n);
+        float total = 0.0f;
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector p = FloatVector.fromArray(SPECIES, scores, i).sub(max).lanewise(VectorOperators.EXP);
+            total += p.reduceLanes(VectorOperators.ADD);
+            p.intoArray(scores, i);
+        }
+        for (; i < n; i++) {
+            scores[i] = (float) Math.exp(scores[i] - max);
+            total += scores[i];
+        }
+
+        double target = random.nextDouble() * total;
+        double cumulative = 0.0;
+        int last = 0;
+        for (int j = 0; j < n; j++) {
+            if (scores[j] > 0.0f) {
+                cumulative += scores[j];
+                last = j;
+                if (target < cumulative) {
+                    return j;
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Draws a token from the top-p nucleus of the whole vocabulary.
+     * The candidates are selected with a heap that grows until its probability mass reaches the cutoff, so
+     * only the nucleus is sorted instead of the whole vocabulary.
+     *
+     * @param n Number of scores
+     * @return Sampled token ID
+     */
+    private int sampleNucleus(int n) {
+        float cutoff = params.getTopP() * expSum(n, maxScore(n));
+
+        int k = Math.min(NUCLEUS_SELECTION, n);
+        while (true) {
+            ensureSelectionCapacity(k);
+            selectTopK(n, k);
+            sortTopKDescending(k);
+            softmax(k);
+            int kept = topPCount(k, cutoff);
+            if (kept > 0) {
+                return drawToken(kept);
+            }
+            if (k == n) {
+                return drawToken(k);
+            }
+            k = (int) Math.min(4L * k, n);
+        }
+    }
+
+    /**
+     * Selects the k largest scores into a min-heap rooted at index 0.
+     * Once the heap is full, whole vectors below the current threshold are skipped without touching the heap.
+     *
+     * @param n Number of scores
+     * @param k Number of scores to keep
+     */
+    private void selectTopK(int n, int k) {
+        for (int i = 0; i < k; i++) {
+            topIds[i] = i;
+            topScores[i] = scores[i];
+            siftUp(i);
+        }
+
+        int i = k;
+        int bound = k + SPECIES.loopBound(n - k);
+        for (; i < bound; i += SPECIES.length()) {
+            VectorMask<Float> above = FloatVector.fromArray(SPECIES, scores, i)
+                    .compare(VectorOperators.GT, topScores[0]);
+            if (!above.anyTrue()) {
+                continue;
+            }
+            for (int lane = 0; lane < SPECIES.length(); lane++) {
+                if (above.laneIsSet(lane)) {
+                    offer(i + lane, k);
+                }
+            }
+        }
+        for (; i < n; i++) {
+            offer(i, k);
+        }
+    }
+
+    /**
+     * Replaces the heap root with a token if its score is larger than the current minimum.
+     *
+     * @param token Token ID
+     * @param k Heap size
+     */
+    private void offer(int token, int k) {
+        float score = scores[token];
+        if (score > topScores[0]) {
+            topIds[0] = token;
+            topScores[0] = score;
+            siftDown(0, k);
+        }
+    }
+
+    /**
+     * Sorts the heap in place so that scores are in descending order.
+     *
+     * @param k Heap size
+     */
+    private void sortTopKDescending(int k) {
+        for (int end = k - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    /**
+     * Computes the unnormalized probabilities of the sorted top-k scores, relative to the largest score.
+     *
+     * @param k Number of sorted scores
+     * @return Sum of the probabilities
+     */
+    private float softmax(int k) {
+        float max = topScores[0];
+        float sum = 0.0f;
+
+        int i = 0;
+        int bound = SPECIES.loopBound(k);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector p = FloatVector.fromArray(SPECIES, topScores, i).sub(max).lanewise(VectorOperators.EXP);
+            sum += p.reduceLanes(VectorOperators.ADD);
+            p.intoArray(probs, i);
+        }
+        for (; i < k; i++) {
+            probs[i] = (float) Math.exp(topScores[i] - max);
+            sum += probs[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Applies the top-p cutoff to the probabilities of the sorted top-k scores.
+     *
+     * @param k Number of sorted scores
+     * @param cutoff Probability mass the kept tokens must reach
+     * @return Number of tokens kept, or 0 if the k tokens do not reach the cutoff
+     */
+    private int topPCount(int k, float cutoff) {
+        float cumulative = 0.0f;
+        for (int j = 0; j < k; j++) {
+            cumulative += probs[j];
+            if (cumulative >= cutoff) {
+                return j + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Draws a token from the unnormalized probabilities of the first kept candidates.
+     *
+     * @param kept Number of candidates to draw from
+     * @return Sampled token ID
+     */
+    private int drawToken(int kept) {
+        float total = 0.0f;
+        for (int i = 0; i < kept; i++) {
+            total += probs[i];
+        }
+
+        double target = random.nextDouble() * total;
+        double cumulative = 0.0;
+        for (int i = 0; i < kept; i++) {
+            cumulative += probs[i];
+            if (target < cumulative) {
+                return topIds[i];
+            }
+        }
+        return topIds[kept - 1];
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (topScores[parent] <= topScores[index]) {
+                return;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int size) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int right = left + 1;
+            int smallest = right < size && topScores[right] < topScores[left] ? right : left;
+            if (topScores[index] <= topScores[smallest]) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = topIds[a];
+        topIds[a] = topIds[b];
+        topIds[b] = id;
+        float score = topScores[a];
+        topScores[a] = topScores[b];
+        topScores[b] = score;
+    }
+
+    /**
+     * Makes sure the scratch buffers can hold the given vocabulary size.
+     * Buffers only grow, so they are allocated once per vocabulary.
+     *
+     * @param vocabularySize Size of the vocabulary
+     */
+    private void ensureCapacity(int vocabularySize) {
+        if (vocabularySize > scores.length) {
+            scores = new float[vocabularySize];
+            penaltyStamps = new int[vocabularySize];
+            stamp = 0;
+
+            int k = params.getTopK() > 0 ? params.getTopK() : NUCLEUS_SELECTION;
+            ensureSelectionCapacity(Math.min(k, vocabularySize));
+        }
+    }
+
+    /**
+     * Makes sure the top-k buffers can hold the given number of candidates.
+     *
+     * @param k Number of candidates
+     */
+    private void ensureSelectionCapacity(int k) {
+        if (k > topIds.length) {
+            topIds = new int[k];
+            topScores = new float[k];
+            probs = new float[k];
+        }
+    }
+
+    /**
+     * Checks if the sampler is closed and throws an exception if it is.
+     *
+     * @throws IllegalStateException if the sampler is closed
+     */
+    private void checkClosed() {
+        if (closed) {
+            throw new IllegalStateException("Sampler is closed");
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.batch.BatchResult;
+import io.github.llama.api.context.ContextParams;
+import io.github.llama.api.sampling.SamplerParams;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link FfmBatchScheduler} class.
+ * The scheduler runs over a context without a native handle, with a backend that records the decoded
+ * batches and samples scripted tokens.
+ */
+public class FfmBatchSchedulerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmBatchSchedulerTest.class);
+
+    private static final int END_OF_GENERATION = 2;
+
+    /**
+     * Backend that records every decoded batch and samples the tokens scripted for each request.
+     */
+    private static class ScriptedBackend implements FfmBatchScheduler.Backend {
+        private final List<int[]> tokens = new ArrayList<>();
+        private final List<int[]> positions = new ArrayList<>();
+        private final List<boolean[]> logits = new ArrayList<>();
+        private final Deque<BatchResult> results = new ArrayDeque<>();
+        private final Map<SamplerParams, int[]> scripts = new IdentityHashMap<>();
+        private int closedSamplers = 0;
+
+        /**
+         * Creates sampler parameters whose sampler returns the given tokens in order.
+         */
+        private SamplerParams script(int maxTokens, int... sampled) {
+            SamplerParams params = SamplerParams.builder().maxTokens(maxTokens).build();
+            scripts.put(params, sampled);
+            return params;
+        }
+
+        @Override
+        public BatchResult decode(FfmBatch batch) {
+            int count = batch.getTokenCount();
+            int[] batchPositions = new int[count];
+            boolean[] batchLogits = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                batchPositions[i] = batch.getPosition(i);
+                batchLogits[i] = batch.isLogitsRequested(i);
+            }
+            tokens.add(batch.getTokens());
+            positions.add(batchPositions);
+            logits.add(batchLogits);
+
+            BatchResult result = results.poll();
+            return result != null ? result : BatchResult.success();
+        }
+
+        @Override
+        public FfmBatchScheduler.SequenceSampler createSampler(SamplerParams params) {
+            int[] sampled = scripts.get(params);
+            return new FfmBatchScheduler.SequenceSampler() {
+                private int next = 0;
+
+                @Override
+                public int sample(int logitsIndex) {
+                    return sampled[next++];
+                }
+
+                @Override
+                public void close() {
+                    closedSamplers++;
+                }
+            };
+        }
+
+        @Override
+        public boolean isEndOfGeneration(int token) {
+            return token == END_OF_GENERATION;
+        }
+
+        private int[] lastTokens() {
+            return tokens.get(tokens.size() - 1);
+        }
+    }
+
+    private FfmContext context;
+    private ScriptedBackend backend;
+
+    private FfmBatchScheduler createScheduler(int batchSize, int maxSequences, int cacheSequenceCount) {
+        FfmModel mockModel = Mockito.mock(FfmModel.class);
+        FfmModelInfo mockModelInfo = Mockito.mock(FfmModelInfo.class);
+        Mockito.when(mockModel.getModelInfo()).thenReturn(mockModelInfo);
+        Mockito.when(mockModel.getTokenizer()).thenReturn(Mockito.mock(FfmTokenizer.class));
+
+        ContextParams params = ContextParams.builder()
+                .contextSize(64)
+                .batchSize(batchSize)
+                .maxSequences(maxSequences)
+                .build();
+        context = new FfmContext(mockModel, params);
+        backend = new ScriptedBackend();
+        return new FfmBatchScheduler(context, cacheSequenceCount, backend);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void testAdmissionBetweenSteps() throws Exception {
+        logger.info("Testing admission of requests between steps");
+
+        try (FfmBatchScheduler scheduler = createScheduler(16, 2, 0)) {
+            CompletableFuture<int[]> first = scheduler.submit(new int[]{10, 11}, backend.script(1, 20));
+            CompletableFuture<int[]> second = scheduler.submit(new int[]{30, 31}, backend.script(2, 40, 41));
+            CompletableFuture<int[]> third = scheduler.submit(new int[]{50}, backend.script(1, 60));
+            assertEquals(3, scheduler.getPendingCount(), "Requests should wait until the next step");
+
+            assertTrue(scheduler.step(), "The first step should decode a batch");
+            assertArrayEquals(new int[]{10, 11, 30, 31}, backend.lastTokens(),
+                    "Both free sequences should be filled with prompts");
+            assertEquals(1, scheduler.getPendingCount(), "The third request should wait for a free sequence");
+            assertArrayEquals(new int[]{20}, first.get(), "The first request should finish at its token limit");
+            assertEquals(1, scheduler.getActiveSequenceCount(), "The finished sequence should be retired");
+
+            assertTrue(scheduler.step(), "The second step should decode a batch");
+            assertArrayEquals(new int[]{40, 50}, backend.lastTokens(),
+                    "The third request should take the freed sequence in the next step");
+            assertEquals(0, scheduler.getPendingCount(), "No request should be pending");
+            assertArrayEquals(new int[]{40, 41}, second.get(), "The second request should finish at its token limit");
+            assertArrayEquals(new int[]{60}, third.get(), "The third request should finish at its token limit");
+
+            assertFalse(scheduler.step(), "There should be no work left");
+            assertEquals(4, scheduler.getGeneratedTokenCount(), "Every sampled token should be counted");
+            assertEquals(3, backend.closedSamplers, "Every sampler should be closed");
+        }
+    }
+
+    @Test
+    public void testGeneratingSequencesFirst() throws Exception {
+        logger.info("Testing that generating sequences are packed before prompt chunks");
+
+        try (FfmBatchScheduler scheduler = createScheduler(4, 2, 0)) {
+            CompletableFuture<int[]> first = scheduler.submit(new int[]{10, 11, 12}, backend.script(4, 20, 21, 22, 23));
+            CompletableFuture<int[]> second = scheduler.submit(new int[]{30, 31, 32, 33, 34, 35}, backend.script(1, 40));
+
+            scheduler.step();
+            assertArrayEquals(new int[]{10, 11, 12, 30}, backend.lastTokens(),
+                    "The rest of the batch should hold the start of the second prompt");
+            assertArrayEquals(new int[]{0, 1, 2, 0}, backend.positions.get(0), "Each sequence should start at 0");
+            assertArrayEquals(new boolean[]{false, false, true, false}, backend.logits.get(0),
+                    "Only the last token of a completed prompt should request logits");
+
+            scheduler.step();
+            assertArrayEquals(new int[]{20, 31, 32, 33}, backend.lastTokens(),
+                    "The generated token should go before the prompt chunk");
+            assertArrayEquals(new int[]{3, 1, 2, 3}, backend.positions.get(1), "Positions should continue per sequence");
+            assertArrayEquals(new boolean[]{true, false, false, false}, backend.logits.get(1),
+                    "An unfinished prompt chunk should not request logits");
+
+            scheduler.step();
+            assertArrayEquals(new int[]{21, 34, 35}, backend.lastTokens(),
+                    "The last chunk should complete the second prompt");
+            assertArrayEquals(new boolean[]{true, false, true}, backend.logits.get(2),
+                    "The completed prompt should request logits for its last token");
+            assertArrayEquals(new int[]{40}, second.get(), "The second request should finish at its token limit");
+
+            scheduler.step();
+            assertArrayEquals(new int[]{22}, backend.lastTokens(), "Only the first sequence should be left");
+            assertArrayEquals(new int[]{20, 21, 22, 23}, first.get(), "The first request should finish at its token limit");
+        }
+    }
+
+    @Test
+    public void testRetireOnEndOfGeneration() throws Exception {
+        logger.info("Testing retirement on an end-of-generation token");
+
+        try (FfmBatchScheduler scheduler = createScheduler(16, 1, 0)) {
+            List<Integer> streamed = new ArrayList<>();
+            CompletableFuture<int[]> future = scheduler.submit(new int[]{10},
+                    backend.script(10, 20, END_OF_GENERATION, 21), streamed::add);
+
+            scheduler.step();
+            scheduler.step();
+
+            assertTrue(future.isDone(), "The sequence should finish at the end-of-generation token");
+            assertArrayEquals(new int[]{20, END_OF_GENERATION}, future.get(),
+                    "The result should end with the end-of-generation token");
+            assertEquals(List.of(20), streamed, "The end-of-generation token should not be streamed");
+            assertEquals(0, scheduler.getActiveSequenceCount(), "The sequence should be retired");
+            assertEquals(1, backend.closedSamplers, "The sampler should be closed");
+            assertFalse(scheduler.step(), "There should be no work left");
+        }
+    }
+
+    @Test
+    public void testRetireOnMaxTokens() throws Exception {
+        logger.info("Testing retirement at the token limit");
+
+        try (FfmBatchScheduler scheduler = createScheduler(16, 1, 0)) {
+            List<Integer> streamed = new ArrayList<>();
+            CompletableFuture<int[]> future = scheduler.submit(new int[]{10}, backend.script(2, 20, 21, 22),
+                    streamed::add);
+
+            scheduler.step();
+            assertFalse(future.isDone(), "The sequence should still be generating");
+            scheduler.step();
+
+            assertArrayEquals(new int[]{20, 21}, future.get(), "The sequence should stop at its token limit");
+            assertEquals(List.of(20, 21), streamed, "The last token should be streamed as well");
+            assertEquals(0, scheduler.getActiveSequenceCount(), "The sequence should be retired");
+        }
+    }
+
+    @Test
+    public void testRetireCancelled() {
+        logger.info("Testing retirement of a cancelled request");
+
+        try (FfmBatchScheduler scheduler = createScheduler(16, 1, 0)) {
+            CompletableFuture<int[]> future = scheduler.submit(new int[]{10}, backend.script(10, 20, 21));
+            scheduler.step();
+            assertEquals(1, scheduler.getActiveSequenceCount(), "The sequence should be generating");
+
+            future.cancel(true);
+
+            assertFalse(scheduler.step(), "The cancelled sequence should not be decoded");
+            assertEquals(0, scheduler.getActiveSequenceCount(), "The cancelled sequence should be retired");
+            assertEquals(1, backend.closedSamplers, "The sampler of the cancelled sequence should be closed");
+            assertEquals(1, backend.tokens.size(), "No further batch should be decoded");
+        }
+    }
+
+    @Test
+    public void testDecodeFailureDropsNewestSequence() throws Exception {
+        logger.info("Testing that a failed decode drops the newest sequence");
+
+        try (FfmBatchScheduler scheduler = createScheduler(16, 2, 0)) {
+            CompletableFuture<int[]> first = scheduler.submit(new int[]{10}, backend.script(1, 20));
+            CompletableFuture<int[]> second = scheduler.submit(new int[]{30}, backend.script(1, 40));
+            backend.results.add(BatchResult.failure("Out of KV cells"));
+
+            assertTrue(scheduler.step(), "The failed step should still count as work");
+            ExecutionException e = assertThrows(ExecutionException.class, second::get,
+                    "The newest sequence should be dropped");
+            assertTrue(e.getCause() instanceof IllegalStateException, "The sequence should fail with the decode error");
+            assertEquals("Out of KV cells", e.getCause().getMessage(), "The decode error should be reported");
+            assertFalse(first.isDone(), "The older sequence should keep running");
+
+            scheduler.step();
+            assertArrayEquals(new int[]{10}, backend.lastTokens(), "The older prompt should be decoded again");
+            assertArrayEquals(new int[]{20}, first.get(), "The older sequence should finish");
+        }
+    }
+
+    @Test
+    public void testDecodeFailureEvictsCachedPrefix() throws Exception {
+        logger.info("Testing that a failed decode evicts a cached prefix first");
+
+        try (FfmBatchScheduler scheduler = createScheduler(16, 2, 1)) {
+            CompletableFuture<int[]> first = scheduler.submit(new int[]{10, 11}, backend.script(1, 20));
+            scheduler.step();
+            assertArrayEquals(new int[]{20}, first.get(), "The first request should finish");
+            assertEquals(1, scheduler.getPrefixCache().getSize(), "The evaluated prompt should be cached");
+
+            CompletableFuture<int[]> second = scheduler.submit(new int[]{30, 31}, backend.script(1, 40));
+            backend.results.add(BatchResult.failure("Out of KV cells"));
+
+            assertTrue(scheduler.step(), "The failed step should still count as work");
+            assertEquals(0, scheduler.getPrefixCache().getSize(), "The cached prefix should be evicted");
+            assertEquals(1, scheduler.getPrefixCache().getEvictionCount(), "The eviction should be counted");
+            assertFalse(second.isDone(), "No running sequence should be dropped");
+
+            scheduler.step();
+            assertArrayEquals(new int[]{30, 31}, backend.lastTokens(), "The same tokens should be decoded again");
+            assertArrayEquals(new int[]{40}, second.get(), "The second request should finish");
+        }
+    }
+}
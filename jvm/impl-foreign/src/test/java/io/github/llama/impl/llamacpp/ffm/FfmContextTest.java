@@ -5,14 +5,24 @@ import io.github.llama.api.batch.Batch;
 import io.github.llama.api.batch.BatchResult;
 import io.github.llama.api.context.Context;
 import io.github.llama.api.context.ContextParams;
+import io.github.llama.api.context.KvCache;
+import io.github.llama.api.context.SessionState;
 import io.github.llama.api.sampling.Sampler;
 import io.github.llama.api.sampling.SamplerParams;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -26,6 +36,9 @@ public class FfmContextTest {
     private ContextParams contextParams;
     private FfmContext context;
 
+    @TempDir
+    Path tempDir;
+
     @BeforeEach
     public void setUp() {
         // Create a mock model
@@ -98,6 +111,33 @@ public class FfmContextTest {
         assertTrue(result.isSuccess(), "Process result should be successful");
     }
 
+    @Test
+    public void testProcessAsync() {
+        logger.info("Testing processAsync");
+
+        Batch first = context.createBatch(4).addToken(1);
+        Batch second = context.createBatch(4).addToken(2);
+
+        CompletableFuture<BatchResult> firstResult = context.processAsync(first);
+        CompletableFuture<BatchResult> secondResult = context.processAsync(second);
+
+        assertTrue(firstResult.join().isSuccess(), "First async batch should succeed");
+        assertTrue(secondResult.join().isSuccess(), "Second async batch should succeed");
+        assertFalse(context.processAsync(null).join().isSuccess(), "Async processing of a null batch should fail");
+    }
+
+    @Test
+    public void testCloseWaitsForAsyncBatches() {
+        logger.info("Testing close waits for asynchronous batches");
+
+        CompletableFuture<BatchResult> result = context.processAsync(context.createBatch(4).addToken(1));
+        context.close();
+
+        assertTrue(result.isDone(), "Queued batches should be processed before the context is closed");
+        assertThrows(IllegalStateException.class, () -> context.processAsync(null),
+                "Processing asynchronously after closing should throw IllegalStateException");
+    }
+
     @Test
     public void testProcessWithNullBatch() {
         logger.info("Testing process with null batch");
@@ -119,6 +159,17 @@ public class FfmContextTest {
         assertTrue(logits.length > 0, "Logits array should not be empty");
     }
 
+    @Test
+    public void testGetLogitsView() {
+        logger.info("Testing getLogitsView");
+
+        FloatBuffer view = context.getLogitsView();
+
+        assertNotNull(view, "Logits view should not be null");
+        assertTrue(view.isReadOnly(), "Logits view should be read-only");
+        assertEquals(context.getLogits().length, view.remaining(), "Logits view should cover all logits");
+    }
+
     @Test
     public void testCreateSampler() {
         logger.info("Testing createSampler");
@@ -146,6 +197,112 @@ public class FfmContextTest {
         }, "Creating sampler with null params should throw IllegalArgumentException");
     }
 
+    @Test
+    public void testBatchAddWithSequences() {
+        logger.info("Testing batch add with positions and sequence IDs");
+
+        FfmBatch batch = (FfmBatch) context.createBatch(4);
+        batch.addToken(7);
+        batch.add(8, 5, 0, false);
+
+        assertEquals(2, batch.getTokenCount(), "Batch should contain two tokens");
+        assertTrue(batch.isAutoPositioned(0), "Plain tokens should be positioned by the context");
+        assertFalse(batch.isAutoPositioned(1), "Tokens with an explicit position should not be positioned by the context");
+        assertEquals(5, batch.getPosition(1), "Explicit position should be kept");
+        assertFalse(batch.isLogitsRequested(1), "Logits flag should be kept");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            batch.add(9, 6, new int[]{0, 1}, true);
+        }, "Adding a token to more sequences than the context supports should throw IllegalArgumentException");
+        assertThrows(IllegalArgumentException.class, () -> {
+            batch.add(9, -1, 0, true);
+        }, "Adding a token at a negative position should throw IllegalArgumentException");
+
+        BatchResult result = context.process(batch);
+        assertTrue(result.isSuccess(), "Processing a batch with explicit positions should succeed");
+    }
+
+    @Test
+    public void testBatchReuse() {
+        logger.info("Testing batch reuse");
+
+        Batch batch = context.createBatch(8);
+        batch.addTokens(new int[]{1, 2, 3});
+        assertArrayEquals(new int[]{1, 2, 3}, ((FfmBatch) batch).getTokens(), "Tokens should be read back from native memory");
+
+        batch.clear();
+        assertEquals(0, batch.getTokenCount(), "Cleared batch should be empty");
+
+        batch.addToken(4);
+        assertArrayEquals(new int[]{4}, ((FfmBatch) batch).getTokens(), "Cleared batch should be reusable");
+
+        batch.close();
+        assertThrows(IllegalStateException.class, batch::getTokenCount,
+                "Using a closed batch should throw IllegalStateException");
+    }
+
+    @Test
+    public void testBatchSchedulerRequiresNativeContext() {
+        logger.info("Testing batch scheduler without a native context");
+
+        assertEquals(1, context.getParams().getMaxSequences(), "Default max sequences should be 1");
+        assertThrows(IllegalArgumentException.class, () -> {
+            new FfmBatchScheduler(context);
+        }, "Creating a scheduler over a context without a native handle should throw IllegalArgumentException");
+    }
+
+    @Test
+    public void testKvCache() {
+        logger.info("Testing getKvCache");
+
+        KvCache kvCache = context.getKvCache();
+        assertNotNull(kvCache, "KV cache should not be null");
+        assertSame(kvCache, context.getKvCache(), "The same KV cache should be returned each time");
+
+        // Without a native context the cache is empty and ignores changes
+        kvCache.copy(0, 1, -1, -1);
+        assertTrue(kvCache.remove(1, 0, 10), "Removing tokens should succeed");
+        assertEquals(-1, kvCache.getMaxPosition(0), "An empty sequence should have no maximum position");
+        assertEquals(-1, kvCache.getMinPosition(0), "An empty sequence should have no minimum position");
+        assertFalse(kvCache.canShift(), "An empty cache should not support shifting");
+        assertThrows(IllegalArgumentException.class, () -> kvCache.divide(0, -1, -1, 1),
+                "Dividing positions by 1 should throw IllegalArgumentException");
+
+        context.close();
+        assertThrows(IllegalStateException.class, kvCache::clear,
+                "Using the KV cache after closing should throw IllegalStateException");
+    }
+
+    @Test
+    public void testSessionState() {
+        logger.info("Testing getSessionState");
+
+        SessionState sessionState = context.getSessionState();
+        assertNotNull(sessionState, "Session state should not be null");
+
+        // Without a native context every sequence has an empty state
+        ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        assertEquals(0, sessionState.getSize(0), "An empty sequence should have an empty state");
+        assertEquals(0, sessionState.save(0, buffer), "Nothing should be written for an empty sequence");
+        assertEquals(0, buffer.position(), "The buffer position should not move");
+        assertThrows(IllegalArgumentException.class, () -> sessionState.save(0, ByteBuffer.allocate(16)),
+                "Saving into a heap buffer should throw IllegalArgumentException");
+        assertThrows(IllegalStateException.class, () -> sessionState.restore(buffer, 0),
+                "Restoring a state the context cannot read should throw IllegalStateException");
+    }
+
+    @Test
+    public void testSaveSessionStateToFile() throws IOException {
+        logger.info("Testing saving a session state to a file");
+
+        Path file = tempDir.resolve("sequence.state");
+        Files.write(file, new byte[]{1, 2, 3});
+
+        // Without a native context the sequence state is empty and replaces the previous contents
+        assertEquals(0, context.getSessionState().save(0, file), "Nothing should be written for an empty sequence");
+        assertEquals(0, Files.size(file), "The previous contents of the file should be replaced");
+    }
+
     @Test
     public void testClose() {
         logger.info("Testing close");
@@ -2,6 +2,7 @@ package io.github.llama.impl.llamacpp.ffm;
 
 import io.github.llama.api.LLM;
 import io.github.llama.api.LLMFactoryRegistry;
+import io.github.llama.api.gguf.GgufFile;
 import io.github.llama.api.model.ModelParams;
 import io.github.llama.api.spi.LLMFactory;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,6 +12,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -32,12 +35,14 @@ public class FfmLLMFactoryTest {
 
     @BeforeEach
     public void setUp() throws IOException {
-        // Create a dummy model file for testing
+        // Create a dummy model file for testing: a GGUF header without metadata or tensors
         testModelPath = tempDir.resolve("test-model.gguf");
-        Files.createFile(testModelPath);
-
-        // Write some dummy content to the file
-        Files.writeString(testModelPath, "This is a dummy model file for testing");
+        ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(GgufFile.MAGIC)
+                .putInt(3)
+                .putLong(0)
+                .putLong(0);
+        Files.write(testModelPath, header.array());
 
         factory = new FfmLLMFactory();
     }
@@ -74,7 +79,7 @@ public class FfmLLMFactoryTest {
         logger.info("Testing model detection");
 
         // Test with a valid model file
-        assertTrue(factory.supportsModel(testModelPath), "Factory should support .gguf files");
+        assertTrue(factory.supportsModel(testModelPath), "Factory should support GGUF files");
 
         // Test with a non-existent file
         assertFalse(factory.supportsModel(tempDir.resolve("non-existent.gguf")),
@@ -83,6 +88,15 @@ public class FfmLLMFactoryTest {
         // Test with null
         assertFalse(factory.supportsModel(null), "Factory should not support null paths");
 
+        // Test with a .gguf file that does not start with the GGUF magic bytes
+        try {
+            Path fakeModel = Files.writeString(tempDir.resolve("fake.gguf"), "This is not a model file");
+            assertFalse(factory.supportsModel(fakeModel),
+                    "Factory should not support .gguf files without the GGUF magic bytes");
+        } catch (IOException e) {
+            fail("Failed to create test file: " + e.getMessage());
+        }
+
         // Test with unsupported extension
         try {
             Path unsupportedFile = tempDir.resolve("unsupported.txt");
@@ -6,7 +6,9 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -193,4 +195,27 @@ public class FfmModelInfoTest {
         assertEquals(2, customInfo.getDecoderStartToken(), "Custom decoder start token should match");
         assertTrue(customInfo.isRecurrent(), "Custom should be recurrent");
     }
+
+    @Test
+    public void testLazyMetadata() {
+        logger.info("Testing lazily loaded metadata");
+
+        AtomicInteger loadCount = new AtomicInteger();
+        FfmModelInfo lazyInfo = new FfmModelInfo.Builder()
+                .metadataLoader(() -> {
+                    loadCount.incrementAndGet();
+                    return Map.of("general.name", "lazy-model", "general.architecture", "llama");
+                })
+                .addMetadata("source", "test")
+                .build();
+
+        assertEquals(0, loadCount.get(), "Metadata should not be loaded before it is read");
+        assertEquals("lazy-model", lazyInfo.getMetadata("general.name"), "Loaded metadata should match");
+        assertEquals("test", lazyInfo.getMetadata("source"), "Added metadata should be kept");
+        assertEquals(Set.of("general.name", "general.architecture", "source"), lazyInfo.getMetadataKeys(),
+                "Metadata keys should include loaded and added entries");
+
+        lazyInfo.loadMetadata();
+        assertEquals(1, loadCount.get(), "Metadata should be loaded only once");
+    }
 }
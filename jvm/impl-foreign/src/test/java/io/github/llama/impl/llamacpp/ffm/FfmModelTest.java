@@ -0,0 +1,113 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.tokenization.Tokenizer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the reference counting of the {@link FfmModel} class.
+ */
+public class FfmModelTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmModelTest.class);
+
+    private AtomicInteger freeCount;
+    private FfmModel model;
+
+    @BeforeEach
+    public void setUp() {
+        logger.info("Setting up test model");
+
+        freeCount = new AtomicInteger();
+        FfmModelInfo modelInfo = new FfmModelInfo.Builder()
+                .description("Test Model")
+                .build();
+        FfmTokenizer tokenizer = new FfmTokenizer.Builder()
+                .vocabularySize(10)
+                .build();
+        model = new FfmModel(modelInfo, tokenizer, MemorySegment.NULL, freeCount::incrementAndGet);
+    }
+
+    @Test
+    public void testCloseWithoutOtherReferences() {
+        logger.info("Testing close without other references");
+
+        assertEquals(1, model.getReferenceCount(), "A new model should hold the creation reference");
+
+        model.close();
+
+        assertEquals(0, model.getReferenceCount(), "No references should remain");
+        assertEquals(1, freeCount.get(), "The model should be freed");
+        assertThrows(IllegalStateException.class, model::getModelHandle, "A freed model should be closed");
+    }
+
+    @Test
+    public void testTokenizerClosedWithModel() {
+        logger.info("Testing the tokenizer is closed with the model");
+
+        Tokenizer tokenizer = model.getTokenizer();
+        assertTrue(model.retain(), "Retaining an open model should succeed");
+        model.close();
+        assertEquals(1, tokenizer.tokenize("a").length, "The tokenizer should work while the model is referenced");
+
+        model.release();
+        assertThrows(IllegalStateException.class, () -> tokenizer.tokenize("a"),
+                "The tokenizer should be closed once the model is freed");
+    }
+
+    @Test
+    public void testSharedReferences() {
+        logger.info("Testing shared references");
+
+        assertTrue(model.retain(), "Retaining an open model should succeed");
+        assertTrue(model.retain(), "Retaining an open model should succeed");
+        assertEquals(3, model.getReferenceCount(), "Each retain should add a reference");
+
+        model.close();
+        model.release();
+        assertEquals(1, model.getReferenceCount(), "One reference should remain");
+        assertEquals(0, freeCount.get(), "The model should not be freed while it is referenced");
+        assertEquals(MemorySegment.NULL, model.getModelHandle(), "The model should still be usable");
+
+        model.release();
+        assertEquals(1, freeCount.get(), "The model should be freed with the last reference");
+        assertFalse(model.retain(), "Retaining a freed model should fail");
+    }
+
+    @Test
+    public void testRepeatedClose() {
+        logger.info("Testing repeated close");
+
+        assertTrue(model.retain(), "Retaining an open model should succeed");
+
+        model.close();
+        model.close();
+
+        assertEquals(1, model.getReferenceCount(), "Closing twice should release the creation reference only once");
+        assertEquals(0, freeCount.get(), "The model should not be freed while it is referenced");
+    }
+
+    @Test
+    public void testLLMHandles() {
+        logger.info("Testing LLM handles");
+
+        assertTrue(model.retain(), "Retaining an open model should succeed");
+        FfmLLM owner = new FfmLLM(model);
+        FfmLLM shared = new FfmLLM(model, model::release);
+
+        owner.close();
+        assertEquals(0, freeCount.get(), "The model should outlive the handle it was created with");
+        assertSame(model, shared.getWrappedModel(), "The shared handle should wrap the same model");
+
+        shared.close();
+        shared.close();
+        assertEquals(1, freeCount.get(), "The model should be freed exactly once when the last handle closes");
+    }
+}
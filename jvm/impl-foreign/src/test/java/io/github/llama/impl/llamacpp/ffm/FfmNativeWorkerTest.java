@@ -0,0 +1,99 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link FfmNativeWorker} class.
+ */
+public class FfmNativeWorkerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmNativeWorkerTest.class);
+
+    private FfmNativeWorker worker;
+
+    @BeforeEach
+    public void setUp() {
+        worker = new FfmNativeWorker();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        worker.close();
+    }
+
+    @Test
+    public void testCallRunsOnWorkerThread() {
+        logger.info("Testing call runs on the worker thread");
+
+        Thread caller = Thread.currentThread();
+        Thread thread = worker.call(Thread::currentThread);
+
+        assertNotSame(caller, thread, "Call should not run on the calling thread");
+        assertFalse(thread.isVirtual(), "Worker should be a platform thread");
+        assertSame(thread, worker.call(Thread::currentThread), "Every call should run on the same thread");
+    }
+
+    @Test
+    public void testCallFromVirtualThreads() {
+        logger.info("Testing calls from virtual threads");
+
+        // Each caller reports the thread its call ran on, so that the assertions run on the test thread
+        List<CompletableFuture<Thread>> observed = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            CompletableFuture<Thread> future = new CompletableFuture<>();
+            observed.add(future);
+            Thread.ofVirtual().start(() -> {
+                try {
+                    future.complete(worker.call(Thread::currentThread));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        }
+
+        Thread workerThread = worker.call(Thread::currentThread);
+        for (CompletableFuture<Thread> future : observed) {
+            assertSame(workerThread, future.join(), "Calls from virtual threads should share the worker thread");
+        }
+        assertFalse(workerThread.isVirtual(), "Worker should be a platform thread");
+    }
+
+    @Test
+    public void testSubmitKeepsOrder() {
+        logger.info("Testing submitted calls keep their order");
+
+        List<Integer> order = new ArrayList<>();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            futures.add(worker.submit(() -> {
+                order.add(value);
+                return value;
+            }));
+        }
+        futures.forEach(CompletableFuture::join);
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), order, "Calls should run in submission order");
+    }
+
+    @Test
+    public void testCallRethrowsException() {
+        logger.info("Testing call rethrows the exception of the call");
+
+        assertThrows(IllegalStateException.class, () -> {
+            worker.call(() -> {
+                throw new IllegalStateException("failure");
+            });
+        }, "Call should rethrow the exception thrown on the worker thread");
+    }
+}
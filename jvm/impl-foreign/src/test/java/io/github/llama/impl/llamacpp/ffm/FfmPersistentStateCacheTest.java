@@ -0,0 +1,183 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.context.ContextParams;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link FfmPersistentStateCache} class.
+ * The context has no native handle, so these tests cover the directory index and not the native state calls.
+ */
+public class FfmPersistentStateCacheTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmPersistentStateCacheTest.class);
+
+    @TempDir
+    Path tempDir;
+
+    private FfmContext context;
+
+    @BeforeEach
+    public void setUp() {
+        context = createContext(List.of());
+    }
+
+    /**
+     * Creates a context over a mock model loaded from the given files.
+     */
+    private static FfmContext createContext(List<Path> modelPaths) {
+        FfmModel mockModel = Mockito.mock(FfmModel.class);
+        FfmModelInfo mockModelInfo = Mockito.mock(FfmModelInfo.class);
+        Mockito.when(mockModelInfo.getDescription()).thenReturn("Mock model for testing");
+        Mockito.when(mockModel.getModelInfo()).thenReturn(mockModelInfo);
+        Mockito.when(mockModel.getModelPaths()).thenReturn(modelPaths);
+
+        return new FfmContext(mockModel, ContextParams.builder().build());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Writes the files of an entry the way the cache does.
+     */
+    private void writeEntry(FfmPersistentStateCache cache, int[] tokens, int stateSize, long lastUsed) throws IOException {
+        String key = cache.key(tokens);
+        Path stateFile = Files.write(tempDir.resolve(key + ".state"), new byte[stateSize]);
+        byte[] tokenBytes = new byte[tokens.length * 4];
+        for (int i = 0; i < tokens.length; i++) {
+            tokenBytes[i * 4] = (byte) tokens[i];
+        }
+        Files.write(tempDir.resolve(key + ".tok"), tokenBytes);
+        Files.setLastModifiedTime(stateFile, FileTime.fromMillis(lastUsed));
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        logger.info("Testing the directory scan");
+
+        FfmPersistentStateCache cache = new FfmPersistentStateCache(context, tempDir, 1 << 20);
+        writeEntry(cache, new int[] {1, 2, 3}, 100, 1000);
+        Files.write(tempDir.resolve("orphan.state"), new byte[10]);
+        Files.write(tempDir.resolve("partial.state.tmp"), new byte[10]);
+        Files.write(tempDir.resolve("other-model.state"), new byte[10]);
+        Files.write(tempDir.resolve("other-model.tok"), new byte[] {1, 0, 0, 0});
+
+        FfmPersistentStateCache reopened = new FfmPersistentStateCache(context, tempDir, 1 << 20);
+
+        assertEquals(1, reopened.getSize(), "The complete entry should be indexed");
+        assertEquals(126, reopened.getTotalBytes(), "The files of all entries, also of other models, should be counted");
+        assertFalse(Files.exists(tempDir.resolve("orphan.state")), "States without tokens should be deleted");
+        assertFalse(Files.exists(tempDir.resolve("partial.state.tmp")), "Unfinished writes should be deleted");
+        assertTrue(Files.exists(tempDir.resolve("other-model.state")), "Entries of other models should be kept");
+    }
+
+    @Test
+    public void testEvictionAtStartup() throws IOException {
+        logger.info("Testing eviction at startup");
+
+        FfmPersistentStateCache cache = new FfmPersistentStateCache(context, tempDir, 1 << 20);
+        writeEntry(cache, new int[] {1}, 100, 1000);
+        writeEntry(cache, new int[] {2}, 100, 3000);
+        writeEntry(cache, new int[] {3}, 100, 2000);
+
+        FfmPersistentStateCache reopened = new FfmPersistentStateCache(context, tempDir, 250);
+
+        assertEquals(2, reopened.getSize(), "The cache should be shrunk to its maximum size");
+        assertEquals(1, reopened.getEvictionCount(), "One entry should be evicted");
+        assertFalse(Files.exists(tempDir.resolve(cache.key(new int[] {1}) + ".state")),
+                "The least recently used entry should be deleted");
+    }
+
+    @Test
+    public void testEvictionOfOtherModels() throws IOException {
+        logger.info("Testing that entries of other models count towards the size");
+
+        FfmPersistentStateCache cache = new FfmPersistentStateCache(context, tempDir, 1 << 20);
+        writeEntry(cache, new int[] {1}, 100, 3000);
+        Path otherState = Files.write(tempDir.resolve("other-model.state"), new byte[100]);
+        Files.write(tempDir.resolve("other-model.tok"), new byte[] {1, 0, 0, 0});
+        Files.setLastModifiedTime(otherState, FileTime.fromMillis(1000));
+
+        FfmPersistentStateCache reopened = new FfmPersistentStateCache(context, tempDir, 150);
+
+        assertEquals(1, reopened.getSize(), "The entry of the model should be kept");
+        assertEquals(1, reopened.getEvictionCount(), "The older entry of the other model should be evicted");
+        assertFalse(Files.exists(otherState), "Entries of other models should be deleted to stay within the size");
+    }
+
+    @Test
+    public void testOversizedStateKeepsCache() throws IOException {
+        logger.info("Testing that a state larger than the cache does not evict other entries");
+
+        FfmPersistentStateCache cache = new FfmPersistentStateCache(context, tempDir, 250);
+        writeEntry(cache, new int[] {1}, 100, 1000);
+        assertTrue(cache.add(new int[] {1}), "A state within the size should be kept");
+        writeEntry(cache, new int[] {2}, 1000, 2000);
+
+        assertFalse(cache.add(new int[] {2}), "A state larger than the cache should not be kept");
+        assertEquals(1, cache.getSize(), "The other entries should be kept");
+        assertEquals(0, cache.getEvictionCount(), "Nothing should be evicted for a state that is not kept");
+        assertFalse(Files.exists(tempDir.resolve(cache.key(new int[] {2}) + ".state")),
+                "The oversized state should be deleted");
+        assertTrue(Files.exists(tempDir.resolve(cache.key(new int[] {1}) + ".state")),
+                "The other state should stay on disk");
+    }
+
+    @Test
+    public void testRestoreUnloadableState() throws IOException {
+        logger.info("Testing restore of a state the context cannot load");
+
+        FfmPersistentStateCache cache = new FfmPersistentStateCache(context, tempDir, 1 << 20);
+        writeEntry(cache, new int[] {1, 2}, 100, 1000);
+        FfmPersistentStateCache reopened = new FfmPersistentStateCache(context, tempDir, 1 << 20);
+
+        assertEquals(0, reopened.restore(new int[] {1, 2, 3}), "Nothing should be restored");
+        assertEquals(1, reopened.getMissCount(), "The restore should be a miss");
+        assertEquals(0, reopened.getSize(), "Entries that cannot be loaded should be deleted");
+        assertEquals(0, reopened.restore(new int[] {4, 5}), "Unknown prompts should not be restored");
+        assertNull(reopened.restoreMostRecent(), "An empty cache should not restore anything");
+        assertFalse(reopened.save(new int[] {1, 2}), "Without a native context nothing should be saved");
+    }
+
+    @Test
+    public void testModelFilesInKey() throws IOException {
+        logger.info("Testing that the key depends on the model files");
+
+        Path baseModel = Files.write(tempDir.resolve("base.gguf"), new byte[16]);
+        Path fineTune = Files.write(tempDir.resolve("fine-tune.gguf"), new byte[16]);
+        FfmContext baseContext = createContext(List.of(baseModel));
+        FfmContext fineTuneContext = createContext(List.of(fineTune));
+        try {
+            int[] tokens = {1, 2, 3};
+            String baseKey = new FfmPersistentStateCache(baseContext, tempDir, 1 << 20).key(tokens);
+
+            assertEquals(baseKey, new FfmPersistentStateCache(baseContext, tempDir, 1 << 20).key(tokens),
+                    "The same model file should get the same key");
+            assertNotEquals(baseKey, new FfmPersistentStateCache(fineTuneContext, tempDir, 1 << 20).key(tokens),
+                    "Models with the same architecture in different files should get different keys");
+
+            Files.setLastModifiedTime(baseModel, FileTime.fromMillis(Files.getLastModifiedTime(baseModel).toMillis() + 60_000));
+            assertNotEquals(baseKey, new FfmPersistentStateCache(baseContext, tempDir, 1 << 20).key(tokens),
+                    "A replaced model file should get a different key");
+        } finally {
+            baseContext.close();
+            fineTuneContext.close();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.context.ContextParams;
+import io.github.llama.api.sampling.SamplerParams;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link FfmSampler} class.
+ */
+public class FfmSamplerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmSamplerTest.class);
+
+    @Test
+    public void testGreedyChain() {
+        logger.info("Testing the chain of a greedy sampler");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(0.0f)
+                .repetitionPenalty(1.0f)
+                .build();
+        try (FfmSampler sampler = new FfmSampler(params)) {
+            assertEquals(List.of("greedy"), sampler.getChainNames(),
+                    "A temperature of zero should select greedy sampling only");
+        }
+    }
+
+    @Test
+    public void testDistributionChain() {
+        logger.info("Testing the chain of a sampler with top-k, top-p and temperature");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(0.8f)
+                .topK(40)
+                .topP(0.95f)
+                .repetitionPenalty(1.0f)
+                .build();
+        try (FfmSampler sampler = new FfmSampler(params)) {
+            assertEquals(List.of("top-k", "top-p", "temp", "dist"), sampler.getChainNames(),
+                    "The chain should filter, scale and then draw from the distribution");
+        }
+    }
+
+    @Test
+    public void testDisabledFilters() {
+        logger.info("Testing the chain of a sampler without top-k and top-p");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(0.8f)
+                .topK(0)
+                .topP(1.0f)
+                .repetitionPenalty(1.0f)
+                .build();
+        try (FfmSampler sampler = new FfmSampler(params)) {
+            assertEquals(List.of("temp", "dist"), sampler.getChainNames(),
+                    "Disabled top-k and top-p should not be chained");
+        }
+    }
+
+    @Test
+    public void testPenaltiesChain() {
+        logger.info("Testing the chain of a sampler with a repetition penalty");
+
+        SamplerParams greedy = SamplerParams.builder()
+                .temperature(0.0f)
+                .repetitionPenalty(1.1f)
+                .build();
+        try (FfmSampler sampler = new FfmSampler(greedy)) {
+            assertEquals(List.of("penalties", "greedy"), sampler.getChainNames(),
+                    "The penalties should be applied before greedy sampling");
+        }
+
+        try (FfmSampler sampler = new FfmSampler(new SamplerParams())) {
+            assertEquals(List.of("penalties", "top-k", "top-p", "temp", "dist"), sampler.getChainNames(),
+                    "The penalties should be applied first with the default parameters");
+        }
+    }
+
+    @Test
+    public void testRepetitionPenalty() {
+        logger.info("Testing that the repetition penalty sees sampled tokens");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(0.0f)
+                .repetitionPenalty(2.0f)
+                .build();
+        float[] logits = {1.9f, 2.0f, 0.0f};
+        try (FfmSampler sampler = new FfmSampler(params)) {
+            assertEquals(1, sampler.sample(logits), "Greedy sampling should pick the highest logit");
+            assertEquals(0, sampler.sample(logits), "The sampled token should be penalized on the next call");
+
+            sampler.reset();
+            assertEquals(1, sampler.sample(logits), "Resetting should forget the sampled tokens");
+        }
+    }
+
+    @Test
+    public void testSampleIndexRequiresNativeContext() {
+        logger.info("Testing sampling a batch index without a native context");
+
+        FfmModel mockModel = Mockito.mock(FfmModel.class);
+        Mockito.when(mockModel.getModelInfo()).thenReturn(Mockito.mock(FfmModelInfo.class));
+        Mockito.when(mockModel.getTokenizer()).thenReturn(Mockito.mock(FfmTokenizer.class));
+
+        try (FfmContext context = new FfmContext(mockModel, new ContextParams());
+             FfmSampler sampler = new FfmSampler(new SamplerParams(), context)) {
+            assertThrows(IllegalStateException.class, () -> sampler.sample(0),
+                    "Sampling a batch index without a native context should throw IllegalStateException");
+        }
+    }
+
+    @Test
+    public void testClosedSampler() {
+        logger.info("Testing a closed sampler");
+
+        FfmSampler sampler = new FfmSampler(new SamplerParams());
+        sampler.close();
+        sampler.close();
+
+        assertThrows(IllegalStateException.class, () -> sampler.sample(new float[]{1.0f}),
+                "Sampling with a closed sampler should throw IllegalStateException");
+    }
+}
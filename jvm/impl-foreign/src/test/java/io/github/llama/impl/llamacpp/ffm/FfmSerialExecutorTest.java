@@ -0,0 +1,105 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link FfmSerialExecutor} class.
+ */
+public class FfmSerialExecutorTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmSerialExecutorTest.class);
+
+    private ExecutorService delegate;
+
+    @BeforeEach
+    public void setUp() {
+        delegate = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        delegate.shutdownNow();
+    }
+
+    @Test
+    public void testTasksRunInOrder() throws InterruptedException {
+        logger.info("Testing tasks run one at a time in submission order");
+
+        FfmSerialExecutor executor = new FfmSerialExecutor(delegate);
+        List<Integer> order = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            executor.execute(() -> {
+                order.add(value);
+                done.countDown();
+            });
+        }
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "All tasks should run");
+        assertEquals(expected, order, "Tasks should run in submission order");
+    }
+
+    @Test
+    public void testCloseWaitsForQueuedTasks() throws InterruptedException {
+        logger.info("Testing close waits for queued tasks");
+
+        FfmSerialExecutor executor = new FfmSerialExecutor(delegate);
+        CountDownLatch started = new CountDownLatch(1);
+        List<Integer> finished = new ArrayList<>();
+        executor.execute(() -> {
+            started.countDown();
+            sleep(100);
+            finished.add(0);
+        });
+        executor.execute(() -> finished.add(1));
+        assertTrue(started.await(10, TimeUnit.SECONDS), "The first task should start");
+
+        executor.close();
+
+        assertEquals(List.of(0, 1), finished, "Queued tasks should finish before close returns");
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }),
+                "Tasks submitted after close should be rejected");
+    }
+
+    @Test
+    public void testCloseFromTask() throws InterruptedException {
+        logger.info("Testing close from a running task");
+
+        FfmSerialExecutor executor = new FfmSerialExecutor(delegate);
+        CountDownLatch closed = new CountDownLatch(1);
+        executor.execute(() -> {
+            executor.close();
+            closed.countDown();
+        });
+
+        assertTrue(closed.await(10, TimeUnit.SECONDS), "Closing from a task should not wait for the task itself");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
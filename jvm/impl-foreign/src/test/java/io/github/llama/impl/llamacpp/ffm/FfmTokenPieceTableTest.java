@@ -0,0 +1,79 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link FfmTokenPieceTable} class.
+ */
+public class FfmTokenPieceTableTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmTokenPieceTableTest.class);
+
+    private FfmTokenPieceTable table;
+
+    @BeforeEach
+    public void setUp() {
+        logger.info("Setting up test token piece table");
+
+        // Token 0 is a control token "<s>", token 1 is "Hello", token 2 is " world", token 3 is an unknown token "<unk>"
+        byte[] bytes = "<s>Hello world<unk>".getBytes(StandardCharsets.UTF_8);
+        BitSet hiddenTokens = new BitSet();
+        hiddenTokens.set(0);
+        hiddenTokens.set(3);
+        table = new FfmTokenPieceTable(bytes, new int[]{0, 3, 8, 14, 19}, hiddenTokens);
+    }
+
+    @Test
+    public void testSize() {
+        logger.info("Testing size");
+        assertEquals(4, table.size(), "Table should hold every token");
+    }
+
+    @Test
+    public void testText() {
+        logger.info("Testing text");
+        assertEquals("<s>", table.text(0), "Control token text should be rendered");
+        assertEquals("Hello", table.text(1), "Token text should match");
+        assertEquals(" world", table.text(2), "Token text should match");
+        assertEquals("<unk>", table.text(3), "Unknown token text should be rendered");
+    }
+
+    @Test
+    public void testPiece() {
+        logger.info("Testing piece");
+        assertArrayEquals("Hello".getBytes(StandardCharsets.UTF_8), table.piece(1, false), "Piece should match");
+        assertEquals(0, table.piece(0, false).length, "Control tokens should have no piece unless special tokens are rendered");
+        assertArrayEquals("<s>".getBytes(StandardCharsets.UTF_8), table.piece(0, true), "Control token piece should be rendered");
+        assertEquals(0, table.piece(3, false).length, "Unknown tokens should have no piece unless special tokens are rendered");
+        assertArrayEquals("<unk>".getBytes(StandardCharsets.UTF_8), table.piece(3, true), "Unknown token piece should be rendered");
+    }
+
+    @Test
+    public void testCopyPiece() {
+        logger.info("Testing copyPiece");
+
+        byte[] destination = new byte[16];
+        int length = table.copyPiece(1, false, destination, 0);
+        length += table.copyPiece(0, false, destination, length);
+        length += table.copyPiece(2, false, destination, length);
+        length += table.copyPiece(3, false, destination, length);
+
+        assertEquals("Hello world", new String(destination, 0, length, StandardCharsets.UTF_8),
+                "Pieces should be copied back to back");
+    }
+
+    @Test
+    public void testInvalidOffsets() {
+        logger.info("Testing invalid offsets");
+        assertThrows(IllegalArgumentException.class, () -> new FfmTokenPieceTable(new byte[4], new int[]{0, 3}, new BitSet()),
+                "Offsets not ending with the byte count should throw IllegalArgumentException");
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.llama.impl.llamacpp.ffm;
 
 import io.github.llama.api.tokenization.SpecialToken;
+import io.github.llama.api.tokenization.TokenizedBatch;
 import io.github.llama.api.tokenization.Tokenizer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,6 +9,10 @@ import org.junit.jupiter.api.AfterEach;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -34,8 +39,8 @@ public class FfmTokenizerTest {
                 .addTokenText(2, "</s>")
                 .addTokenText(0, "<pad>")
                 .addTokenText(3, "<unk>")
-                .addTokenText(100, "Hello")
-                .addTokenText(101, " world")
+                .addTokenText(1000, "Hello")
+                .addTokenText(1001, " world")
                 .build();
     }
 
@@ -69,11 +74,73 @@ public class FfmTokenizerTest {
         assertEquals("</s>", tokenizer.getTokenText(2), "EOS token text should match");
         assertEquals("<pad>", tokenizer.getTokenText(0), "PAD token text should match");
         assertEquals("<unk>", tokenizer.getTokenText(3), "UNK token text should match");
-        assertEquals("Hello", tokenizer.getTokenText(100), "Token text should match");
-        assertEquals(" world", tokenizer.getTokenText(101), "Token text should match");
+        assertEquals("Hello", tokenizer.getTokenText(1000), "Token text should match");
+        assertEquals(" world", tokenizer.getTokenText(1001), "Token text should match");
         assertNull(tokenizer.getTokenText(999), "Nonexistent token should return null");
     }
 
+    @Test
+    public void testNativeTokenizerRequiresVocabulary() {
+        logger.info("Testing native tokenizer without a vocabulary");
+
+        assertNull(tokenizer.getVocabHandle(), "Tokenizer built from tables should have no vocabulary");
+        assertThrows(IllegalArgumentException.class, () -> {
+            new FfmTokenizer(MemorySegment.NULL);
+        }, "Creating a tokenizer for a NULL vocabulary should throw IllegalArgumentException");
+    }
+
+    @Test
+    public void testTokenizeAsync() {
+        logger.info("Testing tokenizeAsync");
+
+        int[] expected = tokenizer.tokenize("Hello", true, false);
+        int[] tokens = tokenizer.tokenizeAsync("Hello", true, false, Runnable::run).join();
+
+        assertArrayEquals(expected, tokens, "Async tokenization should match synchronous tokenization");
+        assertArrayEquals(tokenizer.tokenize("Hello"), tokenizer.tokenizeAsync("Hello").join(),
+                "Async tokenization without options should match synchronous tokenization");
+    }
+
+    @Test
+    public void testCountTokens() {
+        logger.info("Testing countTokens");
+
+        assertEquals(tokenizer.tokenize("Hello").length, tokenizer.countTokens("Hello"),
+                "Token count should match the number of tokens");
+        assertEquals(tokenizer.tokenize("Hello", true, true).length, tokenizer.countTokens("Hello", true, true),
+                "Token count should include special tokens");
+        assertThrows(IllegalArgumentException.class, () -> tokenizer.countTokens(null),
+                "Counting tokens of null text should throw IllegalArgumentException");
+    }
+
+    @Test
+    public void testTokenizeAll() {
+        logger.info("Testing tokenizeAll");
+
+        List<String> texts = List.of("Hello", "", "world");
+        TokenizedBatch batch = tokenizer.tokenizeAll(texts, true, false);
+
+        assertEquals(3, batch.size(), "Batch should hold every text");
+        assertArrayEquals(new int[]{0, 6, 7, 13}, batch.getOffsets(), "Offsets should follow the token counts");
+        for (int i = 0; i < texts.size(); i++) {
+            assertArrayEquals(tokenizer.tokenize(texts.get(i), true, false), batch.getTokens(i),
+                    "Tokens of each text should match tokenizing it on its own");
+        }
+    }
+
+    @Test
+    public void testTokenizeStreaming() {
+        logger.info("Testing tokenizeStreaming");
+
+        List<TokenizedBatch> chunks = new ArrayList<>();
+        tokenizer.tokenizeStreaming(List.of("a", "bc", "def", "g", "hi"), 2, false, false, chunks::add);
+
+        assertEquals(3, chunks.size(), "Texts should be split into chunks");
+        assertEquals(2, chunks.get(0).size(), "First chunk should be full");
+        assertEquals(1, chunks.get(2).size(), "Last chunk should hold the remaining text");
+        assertArrayEquals(tokenizer.tokenize("def"), chunks.get(1).getTokens(1), "Chunks should keep the input order");
+    }
+
     @Test
     public void testTokenizeSimple() {
         logger.info("Testing tokenize (simple)");
@@ -121,11 +188,35 @@ public class FfmTokenizerTest {
         assertEquals("Hello", text, "Detokenized text should match (special tokens removed)");
     }
 
+    @Test
+    public void testDetokenizeMixedTokens() {
+        logger.info("Testing detokenize of table and character tokens");
+
+        int[] tokens = new int[] {1, 1000, ',', 1001, 2};
+        String text = tokenizer.detokenize(tokens);
+        assertEquals("Hello, world", text, "Each token should be looked up on its own");
+    }
+
+    @Test
+    public void testMissingSpecialTokens() {
+        logger.info("Testing tokenize without BOS and EOS in the vocabulary");
+
+        FfmTokenizer noSpecials = new FfmTokenizer.Builder()
+                .vocabularySize(32000)
+                .build();
+
+        assertArrayEquals(new int[] {'H', 'i'}, noSpecials.tokenize("Hi", true, true),
+                "Special tokens the vocabulary does not have should not be added");
+        assertEquals(2, noSpecials.countTokens("Hi", true, true),
+                "Special tokens the vocabulary does not have should not be counted");
+        noSpecials.close();
+    }
+
     @Test
     public void testDetokenizeWithKnownTokens() {
         logger.info("Testing detokenize with known tokens");
 
-        int[] tokens = new int[] {100, 101};
+        int[] tokens = new int[] {1000, 1001};
         String text = tokenizer.detokenize(tokens);
         assertEquals("Hello world", text, "Detokenized text should match");
     }
@@ -0,0 +1,206 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.tokenization.SpecialToken;
+import io.github.llama.api.tokenization.TokenizedBatch;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link FfmTokenizer} class against a real vocabulary.
+ * <p>
+ * The tests load the vocabulary of {@code models/ggml-vocab-llama-spm.gguf} and compare the tokens with the
+ * reference tokenization in the {@code .inp} and {@code .out} files next to it. They are skipped when the
+ * native library or the vocabulary file is not available.
+ */
+public class FfmTokenizerVocabTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmTokenizerVocabTest.class);
+
+    private static final String VOCAB_FILE = "models/ggml-vocab-llama-spm.gguf";
+
+    private static MemorySegment model;
+    private static FfmTokenizer tokenizer;
+    private static Map<String, int[]> reference;
+
+    @BeforeAll
+    public static void setUp() throws IOException {
+        Path vocabPath = findVocabFile();
+        Assumptions.assumeTrue(vocabPath != null, "Vocabulary file " + VOCAB_FILE + " not found");
+
+        try {
+            LlamaCPP.llama_backend_init();
+        } catch (LinkageError e) {
+            Assumptions.assumeTrue(false, "Native library not available: " + e.getMessage());
+        }
+
+        try (Arena arena = Arena.ofConfined()) {
+            var params = LlamaCPP.llama_model_default_params(arena);
+            llama_model_params.vocab_only(params, true);
+            model = LlamaCPP.llama_model_load_from_file(arena.allocateFrom(vocabPath.toString()), params);
+        }
+        assertNotEquals(MemorySegment.NULL, model, "The vocabulary should load");
+
+        tokenizer = new FfmTokenizer(LlamaCPP.llama_model_get_vocab(model));
+        reference = readReference(vocabPath);
+        logger.info("Loaded {} reference tokenizations", reference.size());
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        if (model != null && !model.equals(MemorySegment.NULL)) {
+            tokenizer.close();
+            LlamaCPP.llama_model_free(model);
+        }
+    }
+
+    /**
+     * Looks for the vocabulary file in the working directory and its parents.
+     */
+    private static Path findVocabFile() {
+        for (Path dir = Path.of("").toAbsolutePath(); dir != null; dir = dir.getParent()) {
+            Path candidate = dir.resolve(VOCAB_FILE);
+            if (Files.isRegularFile(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the reference tokenization, in the format used by {@code test-tokenizer-0}.
+     */
+    private static Map<String, int[]> readReference(Path vocabPath) throws IOException {
+        String inputs = Files.readString(Path.of(vocabPath + ".inp"), StandardCharsets.UTF_8);
+        List<String> outputs = Files.readAllLines(Path.of(vocabPath + ".out"), StandardCharsets.UTF_8);
+        // The input file ends with a separator, which split drops together with the empty text after it
+        String[] texts = inputs.split("\n__ggml_vocab_test__\n");
+        assertEquals(texts.length, outputs.size(), "Reference files should have the same number of tests");
+
+        Map<String, int[]> tests = new LinkedHashMap<>();
+        for (int i = 0; i < texts.length; i++) {
+            String line = outputs.get(i).strip();
+            int[] tokens = line.isEmpty() ? new int[0] : Arrays.stream(line.split(" ")).mapToInt(Integer::parseInt).toArray();
+            tests.put(texts[i], tokens);
+        }
+        return tests;
+    }
+
+    private static int[] concat(int first, int[] middle, int last) {
+        int[] result = new int[middle.length + 2];
+        result[0] = first;
+        System.arraycopy(middle, 0, result, 1, middle.length);
+        result[result.length - 1] = last;
+        return result;
+    }
+
+    @Test
+    public void testTokenizeMatchesReference() {
+        logger.info("Testing tokenize against the reference tokenization");
+
+        for (Map.Entry<String, int[]> test : reference.entrySet()) {
+            assertArrayEquals(test.getValue(), tokenizer.tokenize(test.getKey()),
+                    "Tokens should match the reference for '" + test.getKey() + "'");
+            assertEquals(test.getValue().length, tokenizer.countTokens(test.getKey()),
+                    "Token count should match the reference for '" + test.getKey() + "'");
+        }
+    }
+
+    @Test
+    public void testSpecialTokenPlacement() {
+        logger.info("Testing BOS and EOS placement");
+
+        int bos = tokenizer.getSpecialToken(SpecialToken.BOS);
+        int eos = tokenizer.getSpecialToken(SpecialToken.EOS);
+        int[] tokens = reference.get("Hello world");
+
+        assertArrayEquals(concat(bos, tokens, eos), tokenizer.tokenize("Hello world", true, true),
+                "BOS and EOS should surround the tokens");
+        assertEquals(bos, tokenizer.tokenize("Hello world", true, false)[0], "BOS should come first");
+        assertEquals(tokens.length + 2, tokenizer.countTokens("Hello world", true, true),
+                "BOS and EOS should be counted");
+        assertArrayEquals(new int[]{bos, eos}, tokenizer.tokenize("", true, true),
+                "Empty text should only have BOS and EOS");
+    }
+
+    @Test
+    public void testRetryWithLargerBuffer() {
+        logger.info("Testing tokenize retries with the size reported by llama_tokenize");
+
+        // Start every call with room for a single token, so that all but the shortest texts need a retry
+        FfmTokenizer smallBuffers = new FfmTokenizer(LlamaCPP.llama_model_get_vocab(model)) {
+            @Override
+            int tokenCapacity(int byteCount) {
+                return 1;
+            }
+        };
+
+        int bos = tokenizer.getSpecialToken(SpecialToken.BOS);
+        int eos = tokenizer.getSpecialToken(SpecialToken.EOS);
+        for (Map.Entry<String, int[]> test : reference.entrySet()) {
+            assertArrayEquals(test.getValue(), smallBuffers.tokenize(test.getKey()),
+                    "Tokens after a retry should match the reference for '" + test.getKey() + "'");
+            assertArrayEquals(concat(bos, test.getValue(), eos), smallBuffers.tokenize(test.getKey(), true, true),
+                    "BOS and EOS should be placed after a retry for '" + test.getKey() + "'");
+        }
+
+        List<String> texts = new ArrayList<>(reference.keySet());
+        TokenizedBatch batch = smallBuffers.tokenizeAll(texts, true, true);
+        for (int i = 0; i < texts.size(); i++) {
+            assertArrayEquals(concat(bos, reference.get(texts.get(i)), eos), batch.getTokens(i),
+                    "Packed tokens after a retry should match the reference for '" + texts.get(i) + "'");
+        }
+    }
+
+    @Test
+    public void testTokenizeAllPacksChunks() {
+        logger.info("Testing tokenizeAll offsets across chunks");
+
+        // Enough texts for several chunks, so that chunks are tokenized in parallel and joined
+        List<String> texts = new ArrayList<>();
+        List<int[]> expected = new ArrayList<>();
+        while (texts.size() < 3 * FfmTokenizer.TOKENIZE_CHUNK_SIZE + 5) {
+            for (Map.Entry<String, int[]> test : reference.entrySet()) {
+                texts.add(test.getKey());
+                expected.add(test.getValue());
+            }
+        }
+
+        TokenizedBatch batch = tokenizer.tokenizeAll(texts, false, false);
+
+        assertEquals(texts.size(), batch.size(), "Every text should have an entry");
+        int offset = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(offset, batch.getOffsets()[i], "Offset of text " + i + " should follow the previous text");
+            assertArrayEquals(expected.get(i), batch.getTokens(i), "Tokens of text " + i + " should match the reference");
+            offset += expected.get(i).length;
+        }
+        assertEquals(offset, batch.getTokenCount(), "All tokens should be packed back to back");
+    }
+
+    @Test
+    public void testDetokenize() {
+        logger.info("Testing detokenize of native tokens");
+
+        int[] tokens = tokenizer.tokenize("Hello world", true, false);
+
+        assertTrue(tokenizer.detokenize(tokens).contains("Hello world"), "Detokenized text should contain the input");
+    }
+}
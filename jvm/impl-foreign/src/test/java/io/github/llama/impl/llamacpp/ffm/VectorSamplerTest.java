@@ -0,0 +1,185 @@
+package io.github.llama.impl.llamacpp.ffm;
+
+import io.github.llama.api.sampling.SamplerParams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link VectorSampler} class.
+ */
+public class VectorSamplerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorSamplerTest.class);
+
+    private static final int VOCABULARY_SIZE = 1000;
+    private static final int BEST_TOKEN = 517;
+    private static final int SECOND_BEST_TOKEN = 3;
+
+    private float[] logits;
+
+    @BeforeEach
+    public void setUp() {
+        Random random = new Random(42);
+        logits = new float[VOCABULARY_SIZE];
+        for (int i = 0; i < logits.length; i++) {
+            logits[i] = (float) random.nextGaussian();
+        }
+        logits[BEST_TOKEN] = 10.0f;
+        logits[SECOND_BEST_TOKEN] = 9.5f;
+    }
+
+    @Test
+    public void testGreedySampling() {
+        logger.info("Testing greedy sampling");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(0.0f)
+                .repetitionPenalty(1.0f)
+                .build();
+
+        try (VectorSampler sampler = new VectorSampler(params, VOCABULARY_SIZE, 1)) {
+            assertEquals(BEST_TOKEN, sampler.sample(logits), "Greedy sampling should pick the largest logit");
+        }
+    }
+
+    @Test
+    public void testRepetitionPenalty() {
+        logger.info("Testing repetition penalty");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(0.0f)
+                .repetitionPenalty(100.0f)
+                .build();
+
+        try (VectorSampler sampler = new VectorSampler(params, VOCABULARY_SIZE, 1)) {
+            assertEquals(BEST_TOKEN, sampler.sample(logits), "First sample should pick the largest logit");
+            assertEquals(SECOND_BEST_TOKEN, sampler.sample(logits), "Penalized token should not be picked again");
+
+            sampler.reset();
+            assertEquals(BEST_TOKEN, sampler.sample(logits), "Reset should clear the penalty history");
+        }
+    }
+
+    @Test
+    public void testTopK() {
+        logger.info("Testing top-k sampling");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(1.0f)
+                .topK(2)
+                .topP(1.0f)
+                .repetitionPenalty(1.0f)
+                .build();
+
+        Set<Integer> sampled = new TreeSet<>();
+        try (VectorSampler sampler = new VectorSampler(params, VOCABULARY_SIZE, 1)) {
+            for (int i = 0; i < 500; i++) {
+                sampled.add(sampler.sample(logits));
+            }
+        }
+
+        assertEquals(Set.of(SECOND_BEST_TOKEN, BEST_TOKEN), sampled, "Only the two best tokens should be sampled");
+    }
+
+    @Test
+    public void testTopP() {
+        logger.info("Testing top-p sampling");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(1.0f)
+                .topK(50)
+                .topP(0.5f)
+                .repetitionPenalty(1.0f)
+                .build();
+
+        try (VectorSampler sampler = new VectorSampler(params, VOCABULARY_SIZE, 1)) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(BEST_TOKEN, sampler.sample(logits), "Top-p should only keep the most likely token");
+            }
+        }
+    }
+
+    @Test
+    public void testTopPWithoutTopK() {
+        logger.info("Testing top-p sampling without top-k");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(1.0f)
+                .topK(0)
+                .topP(0.9f)
+                .repetitionPenalty(1.0f)
+                .build();
+
+        Set<Integer> sampled = new TreeSet<>();
+        try (VectorSampler sampler = new VectorSampler(params, VOCABULARY_SIZE, 1)) {
+            for (int i = 0; i < 500; i++) {
+                sampled.add(sampler.sample(logits));
+            }
+        }
+        assertEquals(Set.of(SECOND_BEST_TOKEN, BEST_TOKEN), sampled, "Only the nucleus should be sampled");
+
+        // Equal logits need a nucleus larger than the initial selection
+        sampled.clear();
+        try (VectorSampler sampler = new VectorSampler(params, VOCABULARY_SIZE, 1)) {
+            for (int i = 0; i < 5000; i++) {
+                sampled.add(sampler.sample(new float[VOCABULARY_SIZE]));
+            }
+        }
+        assertTrue(sampled.size() > VOCABULARY_SIZE / 2, "The nucleus should grow to cover enough tokens");
+        assertTrue(sampled.size() <= VOCABULARY_SIZE * 0.9f + 1, "Tokens outside the nucleus should not be sampled");
+    }
+
+    @Test
+    public void testSamplingWithoutTopKAndTopP() {
+        logger.info("Testing sampling from the whole vocabulary");
+
+        SamplerParams params = SamplerParams.builder()
+                .temperature(1.0f)
+                .topK(0)
+                .topP(1.0f)
+                .repetitionPenalty(1.0f)
+                .build();
+
+        Set<Integer> sampled = new TreeSet<>();
+        try (VectorSampler sampler = new VectorSampler(params, VOCABULARY_SIZE, 1)) {
+            for (int i = 0; i < 500; i++) {
+                int token = sampler.sample(logits);
+                assertTrue(token >= 0 && token < VOCABULARY_SIZE, "Sampled token should be in the vocabulary");
+                sampled.add(token);
+            }
+        }
+        assertTrue(sampled.contains(BEST_TOKEN), "The most likely token should be sampled");
+        assertTrue(sampled.size() > 2, "Tokens outside the best two should be sampled too");
+    }
+
+    @Test
+    public void testSampleWithInvalidLogits() {
+        logger.info("Testing sample with invalid logits");
+
+        try (VectorSampler sampler = new VectorSampler(new SamplerParams(), VOCABULARY_SIZE)) {
+            assertThrows(IllegalArgumentException.class, () -> sampler.sample((float[]) null),
+                    "Sampling null logits should throw IllegalArgumentException");
+            assertThrows(IllegalArgumentException.class, () -> sampler.sample(new float[0]),
+                    "Sampling empty logits should throw IllegalArgumentException");
+        }
+    }
+
+    @Test
+    public void testClose() {
+        logger.info("Testing close");
+
+        VectorSampler sampler = new VectorSampler(new SamplerParams(), VOCABULARY_SIZE);
+        sampler.close();
+
+        assertThrows(IllegalStateException.class, () -> sampler.sample(logits),
+                "Sampling after closing should throw IllegalStateException");
+    }
+}
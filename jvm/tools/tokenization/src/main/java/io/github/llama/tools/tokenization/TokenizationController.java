@@ -46,6 +46,20 @@ public class TokenizationController {
         return HttpResponse.ok(result);
     }
 
+    /**
+     * Counts the tokens of text without returning them.
+     *
+     * @param request TokenizationRequest containing text to count the tokens of
+     * @return TokenCountResult containing the number of tokens
+     */
+    @Post(uri = "/count", produces = MediaType.APPLICATION_JSON)
+    public HttpResponse<TokenCountResult> countTokens(@Body TokenizationRequest request) {
+        boolean addBos = request.getAddBos() != null ? request.getAddBos() : false;
+        boolean addEos = request.getAddEos() != null ? request.getAddEos() : false;
+        int tokenCount = tokenizationService.countTokens(request.getText(), addBos, addEos);
+        return HttpResponse.ok(new TokenCountResult(tokenCount));
+    }
+
     /**
      * Detokenizes token IDs to text.
      *
@@ -138,6 +152,22 @@ public class TokenizationController {
         }
     }
 
+    /**
+     * Result object for token counting.
+     */
+    @Serdeable
+    public static class TokenCountResult {
+        private final int tokenCount;
+
+        public TokenCountResult(int tokenCount) {
+            this.tokenCount = tokenCount;
+        }
+
+        public int getTokenCount() {
+            return tokenCount;
+        }
+    }
+
     /**
      * Result object for tokenizer information.
      */
@@ -45,6 +45,18 @@ public class TokenizationService {
         return new TokenizationResult(tokens);
     }
 
+    /**
+     * Counts the tokens of text without returning them.
+     *
+     * @param text Text to count the tokens of
+     * @param addBos Whether to count a beginning-of-sequence token
+     * @param addEos Whether to count an end-of-sequence token
+     * @return Number of tokens
+     */
+    public int countTokens(String text, boolean addBos, boolean addEos) {
+        return tokenizer.countTokens(text, addBos, addEos);
+    }
+
     /**
      * Detokenizes token IDs into text.
      *
@@ -4,6 +4,7 @@ import io.github.llama.api.LLMFactoryRegistry;
 import io.github.llama.api.model.Model;
 import io.github.llama.api.model.ModelParams;
 import io.github.llama.api.spi.LLMFactory;
+import io.github.llama.api.tokenization.CachingTokenizer;
 import io.github.llama.api.tokenization.Tokenizer;
 import io.micronaut.context.annotation.Bean;
 import io.micronaut.context.annotation.Factory;
@@ -22,6 +23,15 @@ public class TokenizerFactory {
     @Value("${llama.model.path}")
     private String modelPath;
 
+    @Value("${llama.tokenizer.cache.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${llama.tokenizer.cache.max-entries:1024}")
+    private int cacheMaxEntries;
+
+    @Value("${llama.tokenizer.cache.max-tokens:1000000}")
+    private long cacheMaxTokens;
+
     /**
      * Creates a Tokenizer bean.
      *
@@ -51,6 +61,7 @@ public class TokenizerFactory {
 
     /**
      * Creates a Tokenizer bean.
+     * If {@code llama.tokenizer.cache.enabled} is set, the tokenizer caches the tokens of repeated texts.
      *
      * @param model The model to get the tokenizer from
      * @return A tokenizer
@@ -59,6 +70,10 @@ public class TokenizerFactory {
     @Bean
     @Singleton
     public Tokenizer createTokenizer(Model model) throws Exception {
-        return model.getTokenizer();
+        Tokenizer tokenizer = model.getTokenizer();
+        if (cacheEnabled) {
+            return new CachingTokenizer(tokenizer, cacheMaxEntries, cacheMaxTokens);
+        }
+        return tokenizer;
     }
 }
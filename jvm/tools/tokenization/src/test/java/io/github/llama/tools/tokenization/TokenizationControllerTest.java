@@ -48,6 +48,25 @@ public class TokenizationControllerTest {
         }
     }
 
+    @Test
+    public void testCountTokens() {
+        // Given
+        String text = "Hello, world!";
+        when(tokenizationService.countTokens(text, true, false)).thenReturn(5);
+
+        // When
+        TokenizationController.TokenizationRequest request = new TokenizationController.TokenizationRequest();
+        request.setText(text);
+        request.setAddBos(true);
+
+        TokenizationController.TokenCountResult result = client.toBlocking()
+            .retrieve(HttpRequest.POST("/api/tokenize/count", request), TokenizationController.TokenCountResult.class);
+
+        // Then
+        assertNotNull(result);
+        assertEquals(5, result.getTokenCount());
+    }
+
     @Test
     public void testDetokenize() {
         // Given
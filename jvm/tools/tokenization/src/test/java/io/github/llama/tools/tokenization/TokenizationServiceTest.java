@@ -60,6 +60,21 @@ public class TokenizationServiceTest {
         verify(tokenizer).tokenize(inputText, addBos, addEos);
     }
 
+    @Test
+    public void testCountTokens() {
+        // Given
+        String inputText = "Hello, world!";
+        when(tokenizer.countTokens(inputText, true, false)).thenReturn(5);
+
+        // When
+        int count = tokenizationService.countTokens(inputText, true, false);
+
+        // Then
+        assertThat(count).isEqualTo(5);
+        verify(tokenizer).countTokens(inputText, true, false);
+        verify(tokenizer, never()).tokenize(inputText, true, false);
+    }
+
     @Test
     public void testDetokenize() {
         // Given